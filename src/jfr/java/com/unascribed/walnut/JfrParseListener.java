@@ -0,0 +1,101 @@
+package com.unascribed.walnut;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A {@link ParseListener} that records each parse as a JDK Flight Recorder
+ * event, named {@code com.unascribed.walnut.Parse}.
+ * <p>
+ * Requires a JVM with the {@code jdk.jfr} API (OpenJDK 8u262 or later). The
+ * event is only committed if it is enabled in the running recording.
+ * <p>
+ * The {@code jdk.jfr} API is not part of the Java 8 platform, so this class
+ * is kept out of the main sources, which must build with {@code --release 8}.
+ * It is compiled against the JDK doing the build and packaged into the same
+ * jar; nothing else refers to it, so it is only loaded if it is used.
+ *
+ * @since 0.0.1
+ */
+public final class JfrParseListener implements ParseListener {
+	@Name("com.unascribed.walnut.Parse")
+	@Label("Walnut Config Parse")
+	@Category("Walnut")
+	@Description("A Walnut config was parsed")
+	static final class ParseEvent extends Event {
+		@Label("Source")
+		String source;
+		@Label("Successful")
+		boolean successful;
+		@Label("Bytes Read")
+		@DataAmount
+		long bytesRead;
+		@Label("Code Points Read")
+		long codePointsRead;
+		@Label("Keys")
+		int keys;
+		@Label("Sections")
+		int sections;
+		@Label("Arrays")
+		int arrays;
+		@Label("Comments")
+		int comments;
+		@Label("I/O Time")
+		@Timespan
+		long ioTime;
+		@Label("Lexing Time")
+		@Timespan
+		long lexTime;
+		@Label("Value Construction Time")
+		@Timespan
+		long valueTime;
+		@Label("Allocated")
+		@DataAmount
+		long allocated;
+	}
+	
+	private final ThreadLocal<ParseEvent> current = new ThreadLocal<ParseEvent>();
+	
+	@Override
+	public void parseStarted(String source) {
+		ParseEvent event = new ParseEvent();
+		event.begin();
+		current.set(event);
+	}
+	
+	@Override
+	public void parseFinished(String source, ConfigMetrics metrics) {
+		commit(source, metrics, true);
+	}
+	
+	@Override
+	public void parseFailed(String source, ConfigMetrics metrics, Exception cause) {
+		commit(source, metrics, false);
+	}
+	
+	private void commit(String source, ConfigMetrics metrics, boolean successful) {
+		ParseEvent event = current.get();
+		current.remove();
+		if (event == null) return;
+		event.end();
+		if (!event.shouldCommit()) return;
+		event.source = source;
+		event.successful = successful;
+		event.bytesRead = metrics.getBytesRead();
+		event.codePointsRead = metrics.getCodePointsRead();
+		event.keys = metrics.getKeys();
+		event.sections = metrics.getSections();
+		event.arrays = metrics.getArrays();
+		event.comments = metrics.getComments();
+		event.ioTime = metrics.getIoNanos();
+		event.lexTime = metrics.getLexNanos();
+		event.valueTime = metrics.getValueNanos();
+		event.allocated = metrics.getAllocatedBytes();
+		event.commit();
+	}
+}
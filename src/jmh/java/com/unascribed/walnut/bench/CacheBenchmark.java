@@ -0,0 +1,75 @@
+package com.unascribed.walnut.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unascribed.walnut.ConfigCache;
+import com.unascribed.walnut.WalnutConfig;
+import com.unascribed.walnut.bench.CorpusGenerator.Shape;
+
+/**
+ * Loading a file from disk, with and without the binary cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+	@Param({"WIDE", "STRING_HEAVY", "COMMENT_HEAVY"})
+	public Shape shape;
+	
+	@Param({"65536"})
+	public int size;
+	
+	private File dir;
+	private File file;
+	private ConfigCache cache;
+	
+	@Setup
+	public void setup() throws IOException {
+		dir = Files.createTempDirectory("walnut-bench").toFile();
+		file = new File(dir, "bench.wlnt");
+		try (OutputStream out = new FileOutputStream(file)) {
+			out.write(CorpusGenerator.generate(shape, size, 1).getBytes(StandardCharsets.UTF_8));
+		}
+		cache = new ConfigCache(new File(dir, "cache"), ConfigCache.DEFAULT_MAX_SIZE);
+	}
+	
+	@TearDown
+	public void tearDown() {
+		for (File f : new File(dir, "cache").listFiles()) f.delete();
+		new File(dir, "cache").delete();
+		file.delete();
+		dir.delete();
+	}
+	
+	@Benchmark
+	public WalnutConfig uncached() throws Exception {
+		return WalnutConfig.fromFile(file);
+	}
+	
+	@Benchmark
+	public WalnutConfig cached() throws Exception {
+		return cache.load(file);
+	}
+}
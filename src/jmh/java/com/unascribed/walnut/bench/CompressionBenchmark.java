@@ -0,0 +1,70 @@
+package com.unascribed.walnut.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unascribed.walnut.Compression;
+import com.unascribed.walnut.SerializationStyle;
+import com.unascribed.walnut.WalnutConfig;
+import com.unascribed.walnut.bench.CorpusGenerator.Shape;
+
+/**
+ * Loading a file from disk, plain and compressed. The file stays in the page
+ * cache between invocations, so this measures the CPU cost of inflating; to
+ * compare cold loads, where the smaller file can win, drop the page cache
+ * between iterations, e.g. with {@code echo 3 > /proc/sys/vm/drop_caches}
+ * as root, and run with {@code -bm ss}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+	@Param({"WIDE", "STRING_HEAVY", "COMMENT_HEAVY"})
+	public Shape shape;
+
+	@Param({"65536", "4194304"})
+	public int size;
+
+	@Param({"NONE", "GZIP", "DEFLATE"})
+	public Compression compression;
+
+	private File dir;
+	private File file;
+
+	@Setup
+	public void setup() throws IOException, ParseException {
+		dir = Files.createTempDirectory("walnut-bench").toFile();
+		file = new File(dir, "bench.wlnt");
+		WalnutConfig.fromString(CorpusGenerator.generate(shape, size, 1)).save(file, SerializationStyle.COLONS_TABS, compression);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+		dir.delete();
+	}
+
+	@Benchmark
+	public WalnutConfig load() throws Exception {
+		return WalnutConfig.fromFile(file);
+	}
+}
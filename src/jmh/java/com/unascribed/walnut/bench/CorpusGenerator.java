@@ -0,0 +1,188 @@
+package com.unascribed.walnut.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Deterministically generates synthetic Walnut configs of various shapes, for
+ * benchmarking. The same shape, size and seed always produce the same text.
+ */
+public final class CorpusGenerator {
+	public enum Shape {
+		/**
+		 * Many top-level pairs with scalar values.
+		 */
+		WIDE,
+		/**
+		 * Chains of sections nested {@link CorpusGenerator#DEPTH} deep.
+		 */
+		DEEP,
+		/**
+		 * Arrays of numbers, strings and nested arrays.
+		 */
+		ARRAY_HEAVY,
+		/**
+		 * Long quoted strings with escapes, and spanning strings.
+		 */
+		STRING_HEAVY,
+		/**
+		 * Heavily indented pairs surrounded by line, block and documentation comments.
+		 */
+		COMMENT_HEAVY,
+	}
+
+	public static final int DEPTH = 24;
+
+	private static final String WORDS = "walnut config format keep it simple stupid section array value "
+			+ "string number boolean spanning documentation comment whitespace key pair mango potato";
+
+	private CorpusGenerator() {}
+
+	/**
+	 * @return the path to the deepest value of the given chain in a {@link Shape#DEEP} config
+	 */
+	public static String deepPath(int chain) {
+		StringBuilder sb = new StringBuilder("chain-").append(chain);
+		for (int i = 1; i < DEPTH; i++) {
+			sb.append(".level-").append(i);
+		}
+		return sb.append(".value").toString();
+	}
+
+	/**
+	 * @param shape the kind of config to generate
+	 * @param size the approximate length of the result, in chars
+	 * @param seed the random seed
+	 */
+	public static String generate(Shape shape, int size, long seed) {
+		Random r = new Random(seed);
+		StringBuilder sb = new StringBuilder(size+256);
+		for (int i = 0; sb.length() < size; i++) {
+			switch (shape) {
+				case WIDE:
+					sb.append("key-").append(i).append(": ");
+					scalar(sb, r);
+					sb.append('\n');
+					break;
+				case DEEP:
+					sb.append("chain-").append(i).append(" {\n");
+					for (int d = 1; d < DEPTH; d++) {
+						indent(sb, d);
+						sb.append("level-").append(d).append(" {\n");
+					}
+					indent(sb, DEPTH);
+					sb.append("value: ").append(r.nextInt()).append('\n');
+					for (int d = DEPTH-1; d >= 0; d--) {
+						indent(sb, d);
+						sb.append("}\n");
+					}
+					break;
+				case ARRAY_HEAVY:
+					sb.append("array-").append(i).append(": [");
+					int len = 4+r.nextInt(28);
+					for (int j = 0; j < len; j++) {
+						if (j > 0) sb.append(", ");
+						if (r.nextInt(8) == 0) {
+							sb.append("[");
+							for (int k = 0; k < 4; k++) {
+								if (k > 0) sb.append(", ");
+								sb.append(1+r.nextInt(999));
+							}
+							sb.append("]");
+						} else {
+							scalar(sb, r);
+						}
+					}
+					sb.append("]\n");
+					break;
+				case STRING_HEAVY:
+					sb.append("string-").append(i).append(": ");
+					if (r.nextBoolean()) {
+						sb.append("(\n");
+						int lines = 2+r.nextInt(6);
+						for (int j = 0; j < lines; j++) {
+							sb.append('\t');
+							words(sb, r, 4+r.nextInt(12));
+							sb.append('\n');
+						}
+						sb.append(")\n");
+					} else {
+						sb.append('"');
+						words(sb, r, 8+r.nextInt(24));
+						sb.append(" \\\"quoted\\\" \\u00e4\\x41\\\\\"\n");
+					}
+					break;
+				case COMMENT_HEAVY:
+					sb.append("/**\n");
+					int lines = 1+r.nextInt(4);
+					for (int j = 0; j < lines; j++) {
+						sb.append(" * ");
+						words(sb, r, 6+r.nextInt(8));
+						sb.append('\n');
+					}
+					sb.append(" */\n");
+					sb.append("section-").append(i).append(" {\n");
+					for (int j = 0; j < 4; j++) {
+						indent(sb, 2);
+						sb.append("// ");
+						words(sb, r, 4+r.nextInt(8));
+						sb.append('\n');
+						indent(sb, 2);
+						sb.append("key-").append(j).append(": ");
+						scalar(sb, r);
+						sb.append(" /* ");
+						words(sb, r, 3);
+						sb.append(" */\n");
+					}
+					sb.append("}\n");
+					break;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void scalar(StringBuilder sb, Random r) {
+		switch (r.nextInt(6)) {
+			case 0: sb.append(r.nextInt()); break;
+			case 1: sb.append(r.nextLong()); break;
+			case 2: sb.append(r.nextDouble()*1000); break;
+			case 3: sb.append(r.nextBoolean() ? "on" : "off"); break;
+			case 4: sb.append("0x").append(Integer.toHexString(r.nextInt(0x7FFFFFFF)).toUpperCase(Locale.ROOT)); break;
+			default: sb.append('"'); words(sb, r, 1+r.nextInt(4)); sb.append('"'); break;
+		}
+	}
+
+	private static void words(StringBuilder sb, Random r, int count) {
+		String[] words = WORDS.split(" ");
+		for (int i = 0; i < count; i++) {
+			if (i > 0) sb.append(' ');
+			sb.append(words[r.nextInt(words.length)]);
+		}
+	}
+
+	private static void indent(StringBuilder sb, int depth) {
+		for (int i = 0; i < depth; i++) {
+			sb.append('\t');
+		}
+	}
+
+	/**
+	 * Writes a 4MB config of every shape into the given directory.
+	 */
+	public static void main(String[] args) throws IOException {
+		File dir = new File(args.length > 0 ? args[0] : "corpus");
+		dir.mkdirs();
+		for (Shape shape : Shape.values()) {
+			File f = new File(dir, shape.name().toLowerCase(Locale.ROOT).replace('_', '-')+".wlnt");
+			try (OutputStream out = new FileOutputStream(f)) {
+				out.write(generate(shape, 4*1024*1024, 1).getBytes(StandardCharsets.UTF_8));
+			}
+			System.out.println("Wrote "+f);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package com.unascribed.walnut.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.unascribed.walnut.PathSet;
+import com.unascribed.walnut.Setting.IntSetting;
+import com.unascribed.walnut.WalnutConfig;
+import com.unascribed.walnut.bench.CorpusGenerator.Shape;
+import com.unascribed.walnut.value.Value;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LookupBenchmark {
+	private WalnutConfig wide;
+	private WalnutConfig deep;
+	private String deepPath;
+	private WalnutConfig overlay;
+	private String[] bulkPaths;
+	private PathSet bulkSet;
+	private IntSetting deepSetting;
+	
+	@Setup
+	public void setup() throws Exception {
+		wide = WalnutConfig.fromString(CorpusGenerator.generate(Shape.WIDE, 65536, 1));
+		wide.putInt("shallow-int", 42);
+		deep = WalnutConfig.fromString(CorpusGenerator.generate(Shape.DEEP, 65536, 1));
+		deepPath = CorpusGenerator.deepPath(3);
+		overlay = WalnutConfig.overlay(wide);
+		overlay.putInt("overridden-int", 7);
+		// many keys read from the same deep section, as at startup
+		String section = deepPath.substring(0, deepPath.lastIndexOf('.'));
+		bulkPaths = new String[64];
+		for (int i = 0; i < bulkPaths.length; i++) {
+			bulkPaths[i] = section+".setting-"+i;
+			deep.putInt(bulkPaths[i], i);
+		}
+		bulkSet = PathSet.of(bulkPaths);
+		deepSetting = deep.intSetting(deepPath, 0);
+	}
+	
+	@Benchmark
+	public Value getShallow() {
+		return wide.get("key-100");
+	}
+	
+	@Benchmark
+	public int getIntShallow() {
+		return wide.getInt("shallow-int");
+	}
+	
+	@Benchmark
+	public Value getDeep() {
+		return deep.get(deepPath);
+	}
+	
+	@Benchmark
+	public int getIntDeep() {
+		return deep.getInt(deepPath);
+	}
+	
+	@Benchmark
+	public int getIntDeepSetting() {
+		return deepSetting.get();
+	}
+	
+	@Benchmark
+	public void getEachDeep(Blackhole bh) {
+		for (String path : bulkPaths) {
+			bh.consume(deep.get(path));
+		}
+	}
+	
+	@Benchmark
+	public Value[] getAllDeep() {
+		return deep.getAll(bulkSet);
+	}
+	
+	@Benchmark
+	public int getIntOverlayHit() {
+		return overlay.getInt("overridden-int");
+	}
+	
+	@Benchmark
+	public int getIntOverlayFallthrough() {
+		return overlay.getInt("shallow-int");
+	}
+	
+	@Benchmark
+	public WalnutConfig createOverlay() {
+		return WalnutConfig.overlay(wide);
+	}
+	
+	@Benchmark
+	public boolean containsKeyMissing() {
+		return wide.containsKey("no-such-key");
+	}
+}
@@ -0,0 +1,74 @@
+package com.unascribed.walnut.bench;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unascribed.walnut.ConfigParser;
+import com.unascribed.walnut.ParseResult;
+import com.unascribed.walnut.WalnutConfig;
+import com.unascribed.walnut.bench.CorpusGenerator.Shape;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+	@Param({"WIDE", "DEEP", "ARRAY_HEAVY", "STRING_HEAVY", "COMMENT_HEAVY"})
+	public Shape shape;
+	
+	@Param({"1024", "65536", "1048576"})
+	public int size;
+	
+	private String text;
+	private char[] chars;
+	
+	@Setup
+	public void setup() {
+		text = CorpusGenerator.generate(shape, size, 1);
+		chars = text.toCharArray();
+	}
+	
+	@Benchmark
+	public WalnutConfig parse() throws Exception {
+		return new ConfigParser(new StringReader(text)).prepare().parse();
+	}
+	
+	@Benchmark
+	public WalnutConfig parsePooled() throws Exception {
+		ConfigParser p = ConfigParser.obtain(new StringReader(text), null, null);
+		try {
+			return p.prepare().parse();
+		} finally {
+			p.release();
+		}
+	}
+	
+	@Benchmark
+	public WalnutConfig fromString() throws Exception {
+		return WalnutConfig.fromString(text);
+	}
+	
+	@Benchmark
+	public WalnutConfig fromChars() throws Exception {
+		return WalnutConfig.fromChars(chars, 0, chars.length);
+	}
+	
+	@Benchmark
+	public ParseResult parseRecovering() throws Exception {
+		return WalnutConfig.parseRecovering(text);
+	}
+}
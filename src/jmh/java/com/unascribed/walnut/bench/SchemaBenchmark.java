@@ -0,0 +1,66 @@
+package com.unascribed.walnut.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unascribed.walnut.Schema;
+import com.unascribed.walnut.Schema.Rule;
+import com.unascribed.walnut.Schema.Type;
+import com.unascribed.walnut.Validator;
+import com.unascribed.walnut.Violation;
+import com.unascribed.walnut.WalnutConfig;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SchemaBenchmark {
+	private WalnutConfig conf;
+	private Schema schema;
+	private Validator validator;
+	
+	@Setup
+	public void setup() throws Exception {
+		// a typical application config: a few dozen settings over a handful of sections
+		StringBuilder sb = new StringBuilder();
+		Schema.Builder root = Schema.builder().allowUnknownKeys(false);
+		for (int s = 0; s < 8; s++) {
+			Schema.Builder section = Schema.builder().allowUnknownKeys(false);
+			sb.append("section-").append(s).append(" {\n");
+			for (int i = 0; i < 8; i++) {
+				sb.append("\tint-").append(i).append(": ").append(i*100).append("\n");
+				sb.append("\tname-").append(i).append(": \"value-").append(i).append("\"\n");
+				section.key("int-"+i, Rule.of(Type.INT).withRequired(true).withRange(0, 1000));
+				section.key("name-"+i, Rule.of(Type.STRING).withPattern("[a-z0-9-]+"));
+			}
+			sb.append("}\n");
+			root.key("section-"+s, Rule.section(section.build()).withRequired(true));
+		}
+		conf = WalnutConfig.fromString(sb.toString());
+		schema = root.build();
+		validator = schema.compile();
+	}
+	
+	@Benchmark
+	public List<Violation> validate() {
+		return validator.validate(conf);
+	}
+	
+	@Benchmark
+	public Validator compile() {
+		return schema.compile();
+	}
+}
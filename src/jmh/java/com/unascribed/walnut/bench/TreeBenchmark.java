@@ -0,0 +1,66 @@
+package com.unascribed.walnut.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unascribed.walnut.SerializationStyle;
+import com.unascribed.walnut.WalnutConfig;
+import com.unascribed.walnut.bench.CorpusGenerator.Shape;
+
+/**
+ * Whole-tree operations: copying, comparison and serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmark {
+	@Param({"WIDE", "DEEP", "ARRAY_HEAVY"})
+	public Shape shape;
+	
+	@Param({"65536"})
+	public int size;
+	
+	private WalnutConfig conf;
+	private WalnutConfig copy;
+	
+	@Setup
+	public void setup() throws Exception {
+		String text = CorpusGenerator.generate(shape, size, 1);
+		conf = WalnutConfig.fromString(text);
+		copy = WalnutConfig.fromString(text);
+	}
+	
+	@Benchmark
+	public WalnutConfig cloneTree() {
+		return conf.clone();
+	}
+	
+	@Benchmark
+	public boolean equalsTree() {
+		return conf.equals(copy);
+	}
+	
+	@Benchmark
+	public int hashCodeTree() {
+		return conf.hashCode();
+	}
+	
+	@Benchmark
+	public String serialize() {
+		return conf.toString(SerializationStyle.COLONS_TABS);
+	}
+}
@@ -0,0 +1,81 @@
+package com.unascribed.walnut.bench;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.unascribed.walnut.ConfigParser;
+import com.unascribed.walnut.WalnutConfig;
+
+/**
+ * Measures skipping indentation and comments, which make up most of a
+ * generated config; on its own, and as part of parsing the shapes that are
+ * mostly made of it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WhitespaceBenchmark {
+	@Param({"65536", "1048576"})
+	public int size;
+	
+	/**
+	 * Indentation, line, block and documentation comments, and nothing
+	 * else until a single pair at the end.
+	 */
+	private String filler;
+	private char[] fillerChars;
+	private String deep;
+	private String comments;
+	
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder(size+64);
+		while (sb.length() < size) {
+			sb.append("\t\t\t\t// a line comment about the next key\n");
+			sb.append("        /* a block comment */\n");
+			sb.append("\t/**\n\t * a documentation comment\n\t */\n");
+			sb.append("\n\n");
+		}
+		filler = sb.append("end: 1").toString();
+		fillerChars = filler.toCharArray();
+		deep = CorpusGenerator.generate(CorpusGenerator.Shape.DEEP, size, 1);
+		comments = CorpusGenerator.generate(CorpusGenerator.Shape.COMMENT_HEAVY, size, 1);
+	}
+	
+	@Benchmark
+	public int skipReader() throws Exception {
+		ConfigParser p = new ConfigParser(new StringReader(filler)).prepare();
+		p.skipWhitespace();
+		return p.getPosition();
+	}
+	
+	@Benchmark
+	public WalnutConfig skipChars() throws Exception {
+		return WalnutConfig.fromChars(fillerChars, 0, fillerChars.length);
+	}
+	
+	@Benchmark
+	public WalnutConfig parseDeep() throws Exception {
+		return new ConfigParser(new StringReader(deep)).prepare().parse();
+	}
+	
+	@Benchmark
+	public WalnutConfig parseComments() throws Exception {
+		return new ConfigParser(new StringReader(comments)).prepare().parse();
+	}
+}
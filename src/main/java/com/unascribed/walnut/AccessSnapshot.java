@@ -0,0 +1,176 @@
+package com.unascribed.walnut;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * An immutable snapshot of the counts gathered by an {@link AccessTracker}.
+ *
+ * @since 0.0.1
+ */
+public final class AccessSnapshot {
+	public static final class Entry {
+		private final String path;
+		private final long hits;
+		private final long defaultHits;
+		private final long misses;
+		
+		Entry(String path, long hits, long defaultHits, long misses) {
+			this.path = path;
+			this.hits = hits;
+			this.defaultHits = defaultHits;
+			this.misses = misses;
+		}
+		
+		public String getPath() {
+			return path;
+		}
+		
+		/**
+		 * @return the number of lookups that found this path in the config itself
+		 */
+		public long getHits() {
+			return hits;
+		}
+		
+		/**
+		 * @return the number of lookups that only found this path in the config's defaults
+		 */
+		public long getDefaultHits() {
+			return defaultHits;
+		}
+		
+		/**
+		 * @return the number of lookups that did not find this path at all
+		 */
+		public long getMisses() {
+			return misses;
+		}
+		
+		public long getTotal() {
+			return hits+defaultHits+misses;
+		}
+		
+		@Override
+		public String toString() {
+			return path+"[hits="+hits+", defaultHits="+defaultHits+", misses="+misses+"]";
+		}
+	}
+	
+	private final List<Entry> entries;
+	private final Map<String, Entry> byPath;
+	
+	AccessSnapshot(List<Entry> entries) {
+		Collections.sort(entries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return a.path.compareTo(b.path);
+			}
+		});
+		this.entries = Collections.unmodifiableList(entries);
+		this.byPath = new HashMap<String, Entry>(entries.size()*2);
+		for (Entry e : entries) {
+			byPath.put(e.path, e);
+		}
+	}
+	
+	/**
+	 * @return every path that was looked up, sorted by path
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+	
+	/**
+	 * @return the counts for the given path, or null if it was never looked up
+	 */
+	public Entry get(String path) {
+		return byPath.get(path);
+	}
+	
+	/**
+	 * @param count the maximum number of entries to return
+	 * @return the most frequently looked up paths, most frequent first
+	 */
+	public List<Entry> getHottest(int count) {
+		List<Entry> li = new ArrayList<Entry>(entries);
+		Collections.sort(li, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry a, Entry b) {
+				return Long.compare(b.getTotal(), a.getTotal());
+			}
+		});
+		return li.subList(0, Math.min(count, li.size()));
+	}
+	
+	/**
+	 * Find the pairs in a config that were never looked up. Pairs within a
+	 * section count as read if the section itself was looked up, as the caller
+	 * may have then read from the section directly.
+	 * 
+	 * @param conf the config to check, usually the one being tracked
+	 * @return the paths of every pair in the config that was never looked up,
+	 * 				in no particular order
+	 */
+	public List<String> getNeverRead(WalnutConfig conf) {
+		List<String> li = new ArrayList<String>();
+		Deque<Object[]> stack = new ArrayDeque<Object[]>();
+		stack.push(new Object[] { "", conf });
+		while (!stack.isEmpty()) {
+			Object[] top = stack.pop();
+			String prefix = (String)top[0];
+			for (Map.Entry<Key, Value> en : ((WalnutConfig)top[1]).contents().entrySet()) {
+				String path = prefix+en.getKey().getKey();
+				Entry e = byPath.get(path);
+				if (e != null && e.hits > 0) continue;
+				if (en.getValue() instanceof WalnutConfig) {
+					stack.push(new Object[] { path+".", en.getValue() });
+				} else {
+					li.add(path);
+				}
+			}
+		}
+		return li;
+	}
+	
+	/**
+	 * Write this snapshot as tab-separated values, with a header line followed
+	 * by one line per path, sorted by path.
+	 * <pre>
+	 * path	hits	default-hits	misses
+	 * limits.max-conn	1200	0	0
+	 * </pre>
+	 * 
+	 * @param out the destination to write to
+	 * @throws IOException if {@code out} throws one
+	 */
+	public void writeTo(Appendable out) throws IOException {
+		out.append("path\thits\tdefault-hits\tmisses\n");
+		for (Entry e : entries) {
+			out.append(e.path).append('\t')
+				.append(Long.toString(e.hits)).append('\t')
+				.append(Long.toString(e.defaultHits)).append('\t')
+				.append(Long.toString(e.misses)).append('\n');
+		}
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		try {
+			writeTo(sb);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return sb.toString();
+	}
+}
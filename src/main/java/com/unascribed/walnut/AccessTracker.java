@@ -0,0 +1,74 @@
+package com.unascribed.walnut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts lookups made through the get* methods of a {@link WalnutConfig}, by
+ * path.
+ * <p>
+ * Each lookup is counted as a hit if the path was found in the config itself,
+ * a default hit if it was only found in the config's defaults, or a miss if it
+ * was not found at all. Counters are {@link LongAdder}s, so tracking does not
+ * become a point of contention when many threads read the same keys.
+ *
+ * @see WalnutConfig#enableAccessTracking()
+ * @since 0.0.1
+ */
+public final class AccessTracker {
+	static final int HIT = 0;
+	static final int DEFAULT_HIT = 1;
+	static final int MISS = 2;
+	
+	private static final class Counters {
+		final LongAdder hits = new LongAdder();
+		final LongAdder defaultHits = new LongAdder();
+		final LongAdder misses = new LongAdder();
+	}
+	
+	private final ConcurrentHashMap<String, Counters> counters = new ConcurrentHashMap<String, Counters>();
+	
+	AccessTracker() {}
+	
+	void record(String path, int kind) {
+		Counters c = counters.get(path);
+		if (c == null) {
+			Counters nw = new Counters();
+			c = counters.putIfAbsent(path, nw);
+			if (c == null) c = nw;
+		}
+		switch (kind) {
+			case HIT: c.hits.increment(); break;
+			case DEFAULT_HIT: c.defaultHits.increment(); break;
+			default: c.misses.increment(); break;
+		}
+	}
+	
+	/**
+	 * Take a snapshot of the current counts. Lookups that happen while the
+	 * snapshot is being taken may or may not be included.
+	 * 
+	 * @return a snapshot of every path looked up so far
+	 * @since 0.0.1
+	 */
+	public AccessSnapshot snapshot() {
+		List<AccessSnapshot.Entry> li = new ArrayList<AccessSnapshot.Entry>(counters.size());
+		for (Map.Entry<String, Counters> en : counters.entrySet()) {
+			Counters c = en.getValue();
+			li.add(new AccessSnapshot.Entry(en.getKey(), c.hits.sum(), c.defaultHits.sum(), c.misses.sum()));
+		}
+		return new AccessSnapshot(li);
+	}
+	
+	/**
+	 * Forget all counts.
+	 * 
+	 * @since 0.0.1
+	 */
+	public void reset() {
+		counters.clear();
+	}
+}
@@ -0,0 +1,234 @@
+package com.unascribed.walnut;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads a config in two stages that run at the same time: one reads and
+ * decodes the text in chunks, and the other parses each chunk as it
+ * arrives, so waiting on I/O overlaps with parsing.
+ * <p>
+ * Chunks are handed over through a queue, which blocks on a lock rather
+ * than a monitor, so waiting for a chunk doesn't pin a virtual thread. The
+ * queue is unbounded, so reading never waits on parsing; the text held in
+ * it is never larger than the config parsed from it. That also means the
+ * stages can't deadlock, even on an executor that runs one task at a time.
+ * If parsing starts before reading does, it reads the text itself instead.
+ */
+final class AsyncLoader {
+	interface Source {
+		InputStream open() throws IOException;
+	}
+
+	private static final int CHUNK_CHARS = 8192;
+	private static final Object EOF = new Object();
+
+	private AsyncLoader() {}
+
+	static CompletableFuture<WalnutConfig> load(Source source, boolean close, String name, WalnutConfig defaults, Executor executor) {
+		CompletableFuture<WalnutConfig> future = new CompletableFuture<WalnutConfig>();
+		ParseListener listener = WalnutConfig.getParseListener();
+		Pipe pipe = new Pipe(source, close, name, listener != null);
+		try {
+			executor.execute(pipe::fill);
+			executor.execute(() -> {
+				ConfigParser p = ConfigParser.obtain().reset(pipe, listener, name, pipe.meter);
+				try {
+					WalnutConfig conf = p.prepare().parse();
+					conf.setDefaults(defaults);
+					future.complete(conf);
+				} catch (Throwable t) {
+					future.completeExceptionally(t);
+					if (t instanceof Error) throw (Error)t;
+				} finally {
+					p.release();
+					pipe.close();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pipe.abandon();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Opens its source when first read, so that opening happens in
+	 * whichever stage reads.
+	 */
+	private static final class OpenOnRead extends InputStream {
+		private final Source source;
+		private InputStream in;
+
+		OpenOnRead(Source source) {
+			this.source = source;
+		}
+
+		private InputStream in() throws IOException {
+			if (in == null) in = source.open();
+			return in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return in().read();
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return in().read(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (in != null) in.close();
+		}
+	}
+
+	/**
+	 * The text of a config, as read on one task and parsed on another.
+	 */
+	private static final class Pipe extends Reader {
+		private final boolean close;
+		private final String name;
+		private final InputStream in;
+		final MeteredInputStream meter;
+		/**
+		 * Set by whichever stage starts reading first.
+		 */
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		/**
+		 * Chunks of text, followed by either EOF or the exception reading
+		 * failed with.
+		 */
+		private final LinkedBlockingQueue<Object> chunks = new LinkedBlockingQueue<Object>();
+		private volatile boolean closed;
+		/**
+		 * The decompressed source, once whichever stage reads has opened it.
+		 */
+		private InputStream text;
+
+		// only touched by the parsing stage
+		private char[] chunk;
+		private int pos;
+		private boolean eof;
+		/**
+		 * The text, if parsing started before reading did, and so is
+		 * reading it itself.
+		 */
+		private Reader direct;
+
+		Pipe(Source source, boolean close, String name, boolean metered) {
+			this.close = close;
+			this.name = name;
+			InputStream in = new OpenOnRead(source);
+			this.meter = metered ? new MeteredInputStream(in) : null;
+			this.in = metered ? meter : in;
+		}
+
+		/**
+		 * The reading stage.
+		 */
+		void fill() {
+			if (!claimed.compareAndSet(false, true)) return;
+			try {
+				Reader r = open();
+				char[] buf = new char[CHUNK_CHARS];
+				while (!closed) {
+					int n = r.read(buf);
+					if (n == -1) break;
+					if (n > 0) chunks.add(Arrays.copyOf(buf, n));
+				}
+				chunks.add(EOF);
+			} catch (Throwable t) {
+				chunks.add(t);
+				if (t instanceof Error) throw (Error)t;
+			} finally {
+				closeSource();
+			}
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			if (direct != null) return direct.read(cbuf, off, len);
+			while (chunk == null || pos == chunk.length) {
+				if (eof) return -1;
+				Object next = chunks.poll();
+				if (next == null) {
+					if (claimed.compareAndSet(false, true)) {
+						direct = open();
+						return direct.read(cbuf, off, len);
+					}
+					try {
+						next = chunks.take();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new InterruptedIOException();
+					}
+				}
+				if (next == EOF) {
+					eof = true;
+					return -1;
+				} else if (next instanceof IOException) {
+					throw (IOException)next;
+				} else if (next instanceof RuntimeException) {
+					throw (RuntimeException)next;
+				} else if (next instanceof Error) {
+					throw (Error)next;
+				}
+				chunk = (char[])next;
+				pos = 0;
+			}
+			int n = Math.min(len, chunk.length-pos);
+			System.arraycopy(chunk, pos, cbuf, off, n);
+			pos += n;
+			return n;
+		}
+
+		/**
+		 * Called by whichever stage claims the read.
+		 */
+		private Reader open() throws IOException {
+			text = Compression.decompress(in, name);
+			return new InputStreamReader(text, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Stop reading, if parsing is done with the text early.
+		 */
+		@Override
+		public void close() {
+			closed = true;
+			if (direct != null) closeSource();
+		}
+
+		/**
+		 * Close the source if neither stage is going to read it.
+		 */
+		void abandon() {
+			closed = true;
+			if (claimed.compareAndSet(false, true)) closeSource();
+		}
+
+		private void closeSource() {
+			if (!close) return;
+			try {
+				// closing the decompressor frees its inflater too
+				(text == null ? in : text).close();
+			} catch (IOException e) {
+				// nothing more to read from it anyway
+			}
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package com.unascribed.walnut;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Replaces files by writing a temporary file next to them and renaming it
+ * into place, so readers see either the old contents or the new, and never
+ * a partly written file.
+ */
+final class AtomicFile {
+	interface Contents {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+	private AtomicFile() {}
+
+	/**
+	 * @param sync whether to force the new contents to disk before renaming,
+	 * 				so that a crash can't leave an empty or partial file in
+	 * 				place of the old one
+	 */
+	static void write(File target, boolean sync, Contents contents) throws IOException {
+		File dir = target.getAbsoluteFile().getParentFile();
+		File tmp = File.createTempFile("."+target.getName()+".", ".tmp", dir);
+		try {
+			try (FileOutputStream fos = new FileOutputStream(tmp)) {
+				OutputStream out = new BufferedOutputStream(fos);
+				contents.writeTo(out);
+				out.flush();
+				if (sync) fos.getFD().sync();
+			}
+			try {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			if (sync) {
+				// the rename itself is only durable once the directory is synced
+				try (FileChannel ch = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+					ch.force(true);
+				} catch (IOException e) {
+					// not every platform can open a directory, e.g. Windows
+				}
+			}
+		} finally {
+			tmp.delete();
+		}
+	}
+}
@@ -0,0 +1,192 @@
+package com.unascribed.walnut;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import com.unascribed.walnut.value.ArrayValue;
+import com.unascribed.walnut.value.BooleanValue;
+import com.unascribed.walnut.value.DoubleValue;
+import com.unascribed.walnut.value.IntValue;
+import com.unascribed.walnut.value.LongValue;
+import com.unascribed.walnut.value.NullValue;
+import com.unascribed.walnut.value.StringValue;
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Compact binary form of a {@link WalnutConfig}, used by {@link ConfigCache}.
+ * <p>
+ * Raw values are only written when they can't be rebuilt from the value
+ * itself, so a config made of plain numbers and unescaped strings is stored
+ * as little more than its keys and values. Defaults are not written.
+ */
+final class BinaryCodec {
+	private static final int TAG_SECTION = 0;
+	private static final int TAG_STRING = 1;
+	private static final int TAG_INT = 2;
+	private static final int TAG_LONG = 3;
+	private static final int TAG_DOUBLE = 4;
+	private static final int TAG_BOOLEAN = 5;
+	private static final int TAG_NULL = 6;
+	private static final int TAG_ARRAY = 7;
+
+	/**
+	 * Set on a tag if the raw value was omitted because it is the canonical
+	 * representation of the value.
+	 */
+	private static final int FLAG_CANONICAL = 0x80;
+
+	private BinaryCodec() {}
+
+	public static void write(DataOutput out, WalnutConfig conf) throws IOException {
+		writeVarInt(out, conf.map.size());
+		for (Map.Entry<Key, Value> en : conf.map.entrySet()) {
+			writeString(out, en.getKey().getKey());
+			writeString(out, en.getKey().getDocumentation());
+			writeValue(out, en.getValue());
+		}
+	}
+
+	public static WalnutConfig read(DataInput in) throws IOException {
+		WalnutConfig conf = new WalnutConfig();
+		int size = readVarInt(in);
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			String doc = readString(in);
+			conf.map.put(new Key(key, doc), readValue(in));
+		}
+		return conf;
+	}
+
+	private static void writeValue(DataOutput out, Value v) throws IOException {
+		if (v instanceof WalnutConfig) {
+			out.writeByte(TAG_SECTION);
+			write(out, (WalnutConfig)v);
+		} else if (v instanceof StringValue) {
+			String value = ((StringValue)v).value;
+			writeTag(out, TAG_STRING, v, "\""+value+"\"");
+			writeString(out, value);
+		} else if (v instanceof IntValue) {
+			int value = ((IntValue)v).value;
+			writeTag(out, TAG_INT, v, Integer.toString(value));
+			out.writeInt(value);
+		} else if (v instanceof LongValue) {
+			long value = ((LongValue)v).value;
+			writeTag(out, TAG_LONG, v, Long.toString(value));
+			out.writeLong(value);
+		} else if (v instanceof DoubleValue) {
+			double value = ((DoubleValue)v).value;
+			writeTag(out, TAG_DOUBLE, v, Double.toString(value));
+			out.writeDouble(value);
+		} else if (v instanceof BooleanValue) {
+			boolean value = ((BooleanValue)v).value;
+			writeTag(out, TAG_BOOLEAN, v, Boolean.toString(value));
+			out.writeBoolean(value);
+		} else if (v instanceof NullValue) {
+			writeTag(out, TAG_NULL, v, "null");
+		} else if (v instanceof ArrayValue) {
+			Value[] values = ((ArrayValue)v).get();
+			writeTag(out, TAG_ARRAY, v, null);
+			writeVarInt(out, values.length);
+			for (Value e : values) {
+				writeValue(out, e);
+			}
+		} else {
+			throw new IOException("Cannot encode value of type "+v.getClass().getName());
+		}
+	}
+
+	private static void writeTag(DataOutput out, int tag, Value v, String canonical) throws IOException {
+		String raw = v.getRawValue();
+		if (canonical != null && canonical.equals(raw)) {
+			out.writeByte(tag | FLAG_CANONICAL);
+		} else {
+			out.writeByte(tag);
+			writeString(out, raw);
+		}
+	}
+
+	private static Value readValue(DataInput in) throws IOException {
+		int tag = in.readUnsignedByte();
+		if (tag == TAG_SECTION) {
+			return read(in);
+		}
+		String raw = ((tag & FLAG_CANONICAL) != 0) ? null : readString(in);
+		switch (tag & ~FLAG_CANONICAL) {
+			case TAG_STRING: {
+				String value = readString(in);
+				return new StringValue(raw == null ? "\""+value+"\"" : raw, value);
+			}
+			case TAG_INT: {
+				int value = in.readInt();
+				return new IntValue(raw == null ? Integer.toString(value) : raw, value);
+			}
+			case TAG_LONG: {
+				long value = in.readLong();
+				return new LongValue(raw == null ? Long.toString(value) : raw, value);
+			}
+			case TAG_DOUBLE: {
+				double value = in.readDouble();
+				return new DoubleValue(raw == null ? Double.toString(value) : raw, value);
+			}
+			case TAG_BOOLEAN: {
+				boolean value = in.readBoolean();
+				return new BooleanValue(raw == null ? Boolean.toString(value) : raw, value);
+			}
+			case TAG_NULL:
+				return new NullValue(raw == null ? "null" : raw);
+			case TAG_ARRAY: {
+				Value[] values = new Value[readVarInt(in)];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = readValue(in);
+				}
+				return new ArrayValue(raw, values);
+			}
+			default:
+				throw new IOException("Unknown value tag "+tag);
+		}
+	}
+
+	/**
+	 * Strings are written as their UTF-8 length plus one (zero meaning null),
+	 * followed by the UTF-8 bytes. Unlike writeUTF, this has no 64K limit.
+	 */
+	private static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			writeVarInt(out, 0);
+			return;
+		}
+		byte[] bys = s.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(out, bys.length+1);
+		out.write(bys);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		int len = readVarInt(in);
+		if (len == 0) return null;
+		byte[] bys = new byte[len-1];
+		in.readFully(bys);
+		return new String(bys, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarInt(DataOutput out, int i) throws IOException {
+		while ((i & ~0x7F) != 0) {
+			out.writeByte((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		out.writeByte(i);
+	}
+
+	private static int readVarInt(DataInput in) throws IOException {
+		int i = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			i |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) return i;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+}
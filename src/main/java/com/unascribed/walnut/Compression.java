@@ -0,0 +1,150 @@
+package com.unascribed.walnut;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * How a config file is compressed.
+ * <p>
+ * Configs are decompressed transparently when loaded from a file, stream,
+ * URL, or the classpath. Gzip is recognized by its magic bytes. Zlib
+ * (deflate) is recognized by its header, unless the header could also be
+ * the start of a config such as {@code x^ = 1}, in which case it is only
+ * used if the name ends in {@code .zz} or {@code .deflate}. The text is
+ * inflated as it is parsed, and never held in memory uncompressed.
+ *
+ * @see WalnutConfig#save(File, SerializationStyle, Compression)
+ * @since 0.0.1
+ */
+public enum Compression {
+	/**
+	 * Plain UTF-8 text.
+	 */
+	NONE,
+	/**
+	 * Gzip, as written by gzip(1); files usually end in {@code .gz}.
+	 */
+	GZIP,
+	/**
+	 * Zlib-wrapped deflate, as in RFC 1950; files usually end in {@code .zz}.
+	 */
+	DEFLATE,
+	;
+
+	/**
+	 * The size of the buffer compressed bytes are read into or written from.
+	 * The defaults in java.util.zip are 512 bytes, which makes a native
+	 * call into zlib for every half a kilobyte.
+	 */
+	private static final int BUFFER_SIZE = 64*1024;
+
+	/**
+	 * @return the compression implied by the extension of a file name, or
+	 * 				NONE if it has none of {@code .gz}, {@code .zz}, or
+	 * 				{@code .deflate}
+	 */
+	static Compression forName(String name) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		if (lower.endsWith(".gz")) return GZIP;
+		if (lower.endsWith(".zz") || lower.endsWith(".deflate")) return DEFLATE;
+		return NONE;
+	}
+
+	/**
+	 * @param in the raw bytes of a config
+	 * @param name the name of the source, whose extension is used if the
+	 * 				magic bytes are ambiguous
+	 * @return a stream of the config's text, decompressed if it was compressed
+	 */
+	static InputStream decompress(InputStream in, String name) throws IOException {
+		PushbackInputStream pin = new PushbackInputStream(in, 2);
+		byte[] magic = new byte[2];
+		int n = 0;
+		while (n < 2) {
+			int r = pin.read(magic, n, 2-n);
+			if (r == -1) break;
+			n += r;
+		}
+		pin.unread(magic, 0, n);
+		if (n < 2) return pin;
+		int b0 = magic[0]&0xFF;
+		int b1 = magic[1]&0xFF;
+		if (b0 == 0x1F && b1 == 0x8B) {
+			return new GZIPInputStream(pin, BUFFER_SIZE);
+		}
+		// CM = 8 (deflate), a window of at most 32K, a valid check, and no preset dictionary
+		boolean zlib = (b0 & 0x0F) == 8 && (b0 >> 4) <= 7 && ((b0 << 8) | b1) % 31 == 0 && (b1 & 0x20) == 0;
+		if (zlib && (!couldBeText(b1) || forName(name) == DEFLATE)) {
+			Inflater inf = new Inflater();
+			return new InflaterInputStream(pin, inf, BUFFER_SIZE) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						inf.end();
+					}
+				}
+			};
+		}
+		return pin;
+	}
+
+	/**
+	 * @return true if a byte could follow a printable character at the
+	 * 				start of a UTF-8 config
+	 */
+	private static boolean couldBeText(int b) {
+		return (b >= 0x20 && b < 0x7F) || b == '\t' || b == '\n' || b == '\r' || (b >= 0xC2 && b <= 0xF4);
+	}
+
+	/**
+	 * Write contents to a stream, compressed with this compression. The
+	 * stream is not closed.
+	 */
+	void write(OutputStream out, AtomicFile.Contents contents) throws IOException {
+		if (this == NONE) {
+			contents.writeTo(out);
+			return;
+		}
+		Deflater def = this == DEFLATE ? new Deflater() : null;
+		try (DeflaterOutputStream z = def == null ? new GZIPOutputStream(new Unclosed(out), BUFFER_SIZE)
+				: new DeflaterOutputStream(new Unclosed(out), def, BUFFER_SIZE)) {
+			contents.writeTo(z);
+		} finally {
+			if (def != null) def.end();
+		}
+	}
+
+	/**
+	 * Lets a compressing stream be closed, to finish it and free its
+	 * deflater, without closing the stream it writes to.
+	 */
+	private static final class Unclosed extends FilterOutputStream {
+		Unclosed(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.flush();
+		}
+	}
+
+}
@@ -0,0 +1,226 @@
+package com.unascribed.walnut;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * An on-disk cache of parsed configs, to avoid reparsing files that have not
+ * changed since they were last loaded.
+ * <p>
+ * Entries are keyed by the canonical path of the source file, and are only
+ * used if the size, modification time and SHA-1 hash of the file all match
+ * what was recorded when the entry was written. Entries are written to a
+ * temporary file and atomically renamed into place, so any number of
+ * processes may share one cache directory. When the directory grows past its
+ * maximum size, the least recently used entries are deleted.
+ * <p>
+ * A default cache, used by {@link WalnutConfig#fromFile(File, WalnutConfig, boolean)},
+ * can be set with {@link #setDefault(ConfigCache)} or by setting the
+ * {@code walnut.cache.dir} (and optionally {@code walnut.cache.maxSize})
+ * system properties.
+ *
+ * @since 0.0.1
+ */
+public final class ConfigCache {
+	private static final int MAGIC = 0x574C4E43; // WLNC
+	private static final int FORMAT_VERSION = 1;
+	private static final String SUFFIX = ".wcache";
+
+	public static final long DEFAULT_MAX_SIZE = 64L*1024L*1024L;
+
+	private static volatile ConfigCache defaultCache;
+
+	static {
+		String dir = System.getProperty("walnut.cache.dir");
+		if (dir != null) {
+			defaultCache = new ConfigCache(new File(dir), Long.getLong("walnut.cache.maxSize", DEFAULT_MAX_SIZE));
+		}
+	}
+
+	private final File dir;
+	private final long maxSize;
+
+	/**
+	 * @param dir the directory to store cache entries in; created if it does not exist
+	 * @param maxSize the maximum total size of the cache entries, in bytes
+	 * @since 0.0.1
+	 */
+	public ConfigCache(File dir, long maxSize) {
+		if (dir == null) throw new IllegalArgumentException("dir cannot be null");
+		if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+		this.dir = dir;
+		this.maxSize = maxSize;
+	}
+
+	public File getDirectory() {
+		return dir;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Loads a config from a file, using a cached copy if the file is unchanged,
+	 * and otherwise parsing it and caching the result.
+	 * <p>
+	 * Failures to read or write the cache are not fatal; the file is simply
+	 * parsed as if there was no cache.
+	 *
+	 * @param file a path to a file, whose contents are a properly formatted UTF-8 Walnut config
+	 * @return a newly created config as represented by the contents of the given File
+	 * @throws IOException if an IO error occurs reading the source file
+	 * @throws ParseException if the contents of the file are not syntatically correct Walnut
+	 * @since 0.0.1
+	 */
+	public WalnutConfig load(File file) throws IOException, ParseException {
+		String path = file.getCanonicalPath();
+		long size = file.length();
+		long mtime = file.lastModified();
+		byte[] content = Files.readAllBytes(file.toPath());
+		byte[] hash = sha1(content);
+		File entry = new File(dir, hex(sha1(path.getBytes(StandardCharsets.UTF_8)))+SUFFIX);
+		if (entry.isFile()) {
+			try {
+				WalnutConfig conf = readEntry(entry, path, size, mtime, hash);
+				if (conf != null) {
+					// bump for LRU eviction
+					entry.setLastModified(System.currentTimeMillis());
+					return conf;
+				}
+			} catch (IOException e) {
+				// corrupt or concurrently evicted; fall through and reparse
+			}
+		}
+		ParseListener listener = WalnutConfig.getParseListener();
+		InputStream in = new ByteArrayInputStream(content);
+		MeteredInputStream meter = null;
+		if (listener != null) {
+			in = meter = new MeteredInputStream(in);
+		}
+		WalnutConfig conf;
+		ConfigParser p = ConfigParser.obtain().reset(new InputStreamReader(Compression.decompress(in, path), StandardCharsets.UTF_8), listener, path, meter);
+		try {
+			conf = p.prepare().parse();
+		} finally {
+			p.release();
+		}
+		try {
+			writeEntry(entry, path, size, mtime, hash, conf);
+			evict();
+		} catch (IOException e) {
+			// the cache is best-effort
+		}
+		return conf;
+	}
+
+	private WalnutConfig readEntry(File entry, String path, long size, long mtime, byte[] hash) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+			if (in.readInt() != MAGIC) return null;
+			if (in.readUnsignedByte() != FORMAT_VERSION) return null;
+			if (!path.equals(in.readUTF())) return null;
+			if (in.readLong() != size) return null;
+			if (in.readLong() != mtime) return null;
+			byte[] entryHash = new byte[hash.length];
+			in.readFully(entryHash);
+			if (!Arrays.equals(hash, entryHash)) return null;
+			return BinaryCodec.read(in);
+		}
+	}
+
+	private void writeEntry(File entry, String path, long size, long mtime, byte[] hash, WalnutConfig conf) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Could not create cache directory "+dir);
+		}
+		// a cache entry can always be rebuilt, so isn't worth syncing
+		AtomicFile.write(entry, false, os -> {
+			DataOutputStream out = new DataOutputStream(os);
+			out.writeInt(MAGIC);
+			out.writeByte(FORMAT_VERSION);
+			out.writeUTF(path);
+			out.writeLong(size);
+			out.writeLong(mtime);
+			out.write(hash);
+			BinaryCodec.write(out, conf);
+			out.flush();
+		});
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache is no larger than
+	 * its maximum size.
+	 */
+	private void evict() {
+		File[] entries = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+		if (entries == null) return;
+		long total = 0;
+		final long[] lastModified = new long[entries.length];
+		Integer[] order = new Integer[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			total += entries[i].length();
+			lastModified[i] = entries[i].lastModified();
+			order[i] = i;
+		}
+		if (total <= maxSize) return;
+		Arrays.sort(order, Comparator.comparingLong(i -> lastModified[i]));
+		for (int i = 0; i < order.length && total > maxSize; i++) {
+			File f = entries[order[i]];
+			long len = f.length();
+			if (f.delete()) {
+				total -= len;
+			}
+		}
+	}
+
+	private static byte[] sha1(byte[] data) {
+		try {
+			return MessageDigest.getInstance("SHA-1").digest(data);
+		} catch (NoSuchAlgorithmException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	private static String hex(byte[] bys) {
+		StringBuilder sb = new StringBuilder(bys.length*2);
+		for (byte b : bys) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+			sb.append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+
+	/////////// STATIC
+
+	/**
+	 * @return the cache used by {@link WalnutConfig#fromFile(File, WalnutConfig, boolean)},
+	 * 				or null if there is none
+	 * @since 0.0.1
+	 */
+	public static ConfigCache getDefault() {
+		return defaultCache;
+	}
+
+	/**
+	 * @param cache the cache to be used by {@link WalnutConfig#fromFile(File, WalnutConfig, boolean)},
+	 * 				or null to disable caching
+	 * @since 0.0.1
+	 */
+	public static void setDefault(ConfigCache cache) {
+		defaultCache = cache;
+	}
+
+}
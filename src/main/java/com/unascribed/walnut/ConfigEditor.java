@@ -0,0 +1,484 @@
+package com.unascribed.walnut;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Edits a Walnut document in place, keeping everything that wasn't edited
+ * exactly as it was written, including normal comments, blank lines, and
+ * the formatting of untouched values.
+ * <p>
+ * The document is parsed once, recording where each pair is. Puts and
+ * removes are applied to a copy of the config, and the paths they touch are
+ * remembered; the text is only produced when asked for, by copying the
+ * original and patching just those pairs. Replaced values are rewritten
+ * where they are, removed pairs are cut out along with their documentation
+ * comment, and new pairs are added at the end of the section they belong
+ * in. So after parsing, the cost of editing depends on the number of edits
+ * rather than the size of the document.
+ * <p>
+ * New text is written in the style the document already uses, as far as it
+ * can be told, unless another is set with {@link #setStyle(SerializationStyle)},
+ * and with the same line endings, LF or CRLF.
+ * <p>
+ * An editor is not thread-safe.
+ *
+ * @since 0.0.1
+ */
+public final class ConfigEditor {
+	/**
+	 * A replacement of part of the original text.
+	 */
+	private static final class Patch {
+		final int start;
+		final int end;
+		final String text;
+
+		Patch(int start, int end, String text) {
+			this.start = start;
+			this.end = end;
+			this.text = text;
+		}
+	}
+
+	private static final Comparator<Patch> BY_START = new Comparator<Patch>() {
+		@Override
+		public int compare(Patch a, Patch b) {
+			return Integer.compare(a.start, b.start);
+		}
+	};
+
+	private static final Comparator<Map.Entry<String, Key>> BY_POSITION = new Comparator<Map.Entry<String, Key>>() {
+		@Override
+		public int compare(Map.Entry<String, Key> a, Map.Entry<String, Key> b) {
+			return Integer.compare(a.getValue().getSpan().getStartOffset(), b.getValue().getSpan().getStartOffset());
+		}
+	};
+
+	private final String text;
+	private final File file;
+	private final WalnutConfig original;
+	private final WalnutConfig config;
+	/**
+	 * The key of every pair in the original document, with its spans, by path.
+	 */
+	private final Map<String, Key> keys = new HashMap<String, Key>();
+	/**
+	 * Paths that have been put or removed, in the order they were first
+	 * touched. The whole value at each is written out from config.
+	 */
+	private final Set<String> changed = new LinkedHashSet<String>();
+	/**
+	 * The line ending the document uses, going by its first line.
+	 */
+	private final String newline;
+	private SerializationStyle style;
+
+	/**
+	 * @param text a Walnut document to edit
+	 * @throws ParseException if the document is not syntactically correct Walnut
+	 */
+	public ConfigEditor(CharSequence text) throws ParseException {
+		this(text.toString(), null);
+	}
+
+	private ConfigEditor(String text, File file) throws ParseException {
+		this.text = text;
+		this.file = file;
+		ConfigParser p = ConfigParser.obtain().reset(text, null, file == null ? "<editor>" : file.getPath());
+		try {
+			original = p.trackSpans(true).prepare().parse();
+		} catch (IOException e) {
+			throw (ParseException)new ParseException("Unexpected IOException while parsing text", 0).initCause(e);
+		} finally {
+			p.release();
+		}
+		config = original.clone();
+		int nl = text.indexOf('\n');
+		newline = nl > 0 && text.charAt(nl-1) == '\r' ? "\r\n" : "\n";
+		index();
+		style = detectStyle();
+	}
+
+	/**
+	 * Reads a UTF-8 Walnut document from a file to edit, which
+	 * {@link #save()} will write back to.
+	 *
+	 * @throws IOException if the file can't be read
+	 * @throws ParseException if the file is not syntactically correct Walnut
+	 */
+	public static ConfigEditor open(File file) throws IOException, ParseException {
+		return new ConfigEditor(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), file);
+	}
+
+	private void index() {
+		ArrayDeque<String> prefixes = new ArrayDeque<String>();
+		ArrayDeque<WalnutConfig> sections = new ArrayDeque<WalnutConfig>();
+		prefixes.push("");
+		sections.push(original);
+		while (!sections.isEmpty()) {
+			String prefix = prefixes.pop();
+			for (Map.Entry<Key, Value> en : sections.pop().contents().entrySet()) {
+				String path = prefix+en.getKey().getKey();
+				keys.put(path, en.getKey());
+				if (en.getValue() instanceof WalnutConfig) {
+					prefixes.push(path+".");
+					sections.push((WalnutConfig)en.getValue());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Guess the style of the document from its first pairs that show each
+	 * part of it.
+	 */
+	private SerializationStyle detectStyle() {
+		Boolean colons = null;
+		Boolean omit = null;
+		String indentation = null;
+		List<Map.Entry<String, Key>> pairs = new ArrayList<Map.Entry<String, Key>>(keys.entrySet());
+		Collections.sort(pairs, BY_POSITION);
+		for (Map.Entry<String, Key> en : pairs) {
+			Key k = en.getValue();
+			String between = text.substring(k.getSpan().getEndOffset(), k.getValueSpan().getStartOffset()).trim();
+			boolean section = text.charAt(k.getValueSpan().getStartOffset()) == '{';
+			if (colons == null && (between.equals(":") || between.equals("="))) {
+				colons = between.equals(":");
+			}
+			if (omit == null && section) {
+				omit = between.isEmpty();
+			}
+			if (indentation == null && en.getKey().indexOf('.') != -1 && en.getKey().indexOf('.') == en.getKey().lastIndexOf('.')) {
+				Key pk = keys.get(en.getKey().substring(0, en.getKey().indexOf('.')));
+				String indent = indentOf(k.getSpan().getStartOffset());
+				String parent = pk == null ? null : indentOf(pk.getSpan().getStartOffset());
+				if (parent != null && indent.length() > parent.length() && indent.startsWith(parent)) {
+					indentation = indent.substring(parent.length());
+				}
+			}
+		}
+		return SerializationStyle.builder()
+				.indentation(indentation == null ? "\t" : indentation)
+				.useColons(colons == null || colons)
+				.omitSeparatorsForSections(omit == null || omit)
+				.build();
+	}
+
+	/**
+	 * @return the style new text is written in
+	 */
+	public SerializationStyle getStyle() {
+		return style;
+	}
+
+	/**
+	 * Sets the style new text is written in. Text that isn't edited keeps its
+	 * own style.
+	 */
+	public void setStyle(SerializationStyle style) {
+		if (style == null) throw new IllegalArgumentException("style cannot be null");
+		this.style = style;
+	}
+
+	/**
+	 * @return a copy of the config as edited so far
+	 */
+	public WalnutConfig getConfig() {
+		return config.clone();
+	}
+
+	public void putString(String key, String value) { check(key); config.putString(key, value); changed.add(key); }
+	public void putInt(String key, int value) { check(key); config.putInt(key, value); changed.add(key); }
+	public void putLong(String key, long value) { check(key); config.putLong(key, value); changed.add(key); }
+	public void putDouble(String key, double value) { check(key); config.putDouble(key, value); changed.add(key); }
+	public void putBoolean(String key, boolean value) { check(key); config.putBoolean(key, value); changed.add(key); }
+	public void putNull(String key) { check(key); config.putNull(key); changed.add(key); }
+
+	/**
+	 * Puts any value at a dotted path, including arrays and sections.
+	 * Sections are copied, so later changes to them don't affect the editor.
+	 */
+	public void put(String key, Value value) {
+		if (value instanceof OverlayConfig) {
+			throw new IllegalArgumentException("An overlay cannot be put into a config");
+		}
+		if (value == null) throw new IllegalArgumentException("value cannot be null");
+		check(key);
+		config._put(key, value instanceof WalnutConfig ? ((WalnutConfig)value).clone() : value);
+		changed.add(key);
+	}
+
+	/**
+	 * Removes the pair at a dotted path, along with its documentation comment.
+	 *
+	 * @return true if there was a pair to remove
+	 */
+	public boolean remove(String key) {
+		if (config.remove(key) == null) return false;
+		changed.add(key);
+		return true;
+	}
+
+	private static void check(String key) {
+		for (String s : key.split("\\.")) {
+			Serializer.checkKey(s);
+		}
+	}
+
+	/**
+	 * @return the document with every edit so far applied
+	 */
+	@Override
+	public String toString() {
+		List<Patch> patches = patches();
+		int size = text.length();
+		for (Patch p : patches) {
+			size += p.text.length();
+		}
+		StringBuilder sb = new StringBuilder(size);
+		int pos = 0;
+		for (Patch p : patches) {
+			// a removal can run up to a closing brace that new pairs are trimmed back from
+			if (p.start > pos) sb.append(text, pos, p.start);
+			sb.append(p.text);
+			pos = Math.max(pos, p.end);
+		}
+		return sb.append(text, pos, text.length()).toString();
+	}
+
+	/**
+	 * Atomically writes the edited document back to the file it was opened
+	 * from.
+	 *
+	 * @throws IllegalStateException if this editor wasn't opened from a file
+	 * @see #save(File)
+	 */
+	public void save() throws IOException {
+		if (file == null) throw new IllegalStateException("This editor was not opened from a file");
+		save(file);
+	}
+
+	/**
+	 * Writes the edited document to a file as UTF-8. The document is written
+	 * to a temporary file in the same directory, forced to disk, and then
+	 * renamed over the target, so the target is never left partly written.
+	 */
+	public void save(File target) throws IOException {
+		final byte[] bytes = toString().getBytes(StandardCharsets.UTF_8);
+		AtomicFile.write(target, true, out -> out.write(bytes));
+	}
+
+	private List<Patch> patches() {
+		List<Patch> patches = new ArrayList<Patch>();
+		// new pairs, by the path of the section in the original they go in
+		Map<String, List<String>> inserts = new LinkedHashMap<String, List<String>>();
+		Set<String> inserted = new HashSet<String>();
+		for (String path : changed) {
+			if (hasChangedParent(path)) continue;
+			Key k = keys.get(path);
+			if (k != null) {
+				Value v = config.lookup(path);
+				if (v == null) {
+					patches.add(removal(k));
+				} else {
+					patches.add(replacement(k, v));
+				}
+			} else {
+				// everything from the first section that isn't in the original is written out as one
+				int dot = path.indexOf('.');
+				while (dot != -1 && keys.containsKey(path.substring(0, dot))) {
+					dot = path.indexOf('.', dot+1);
+				}
+				String top = dot == -1 ? path : path.substring(0, dot);
+				if (!inserted.add(top) || config.lookup(top) == null) continue;
+				int last = top.lastIndexOf('.');
+				String parent = last == -1 ? "" : top.substring(0, last);
+				List<String> names = inserts.get(parent);
+				if (names == null) inserts.put(parent, names = new ArrayList<String>());
+				names.add(top);
+			}
+		}
+		for (Map.Entry<String, List<String>> en : inserts.entrySet()) {
+			patches.add(insertion(en.getKey(), en.getValue()));
+		}
+		// stable, so new pairs go after a removal that ends where they start
+		Collections.sort(patches, BY_START);
+		return patches;
+	}
+
+	private boolean hasChangedParent(String path) {
+		for (int i = path.indexOf('.'); i != -1; i = path.indexOf('.', i+1)) {
+			if (changed.contains(path.substring(0, i))) return true;
+		}
+		return false;
+	}
+
+	private Patch replacement(Key k, Value v) {
+		SourceSpan ks = k.getSpan();
+		SourceSpan vs = k.getValueSpan();
+		StringBuilder sb = new StringBuilder();
+		try {
+			Serializer.writeValue(v, style, indentOf(ks.getStartOffset()), sb);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		String between = text.substring(ks.getEndOffset(), vs.getStartOffset());
+		char first = sb.length() == 0 ? ' ' : sb.charAt(0);
+		if (between.indexOf(':') == -1 && between.indexOf('=') == -1 && first != '{' && first != '[' && first != '(') {
+			// the separator can only be left out before sections, arrays and spanning strings
+			return new Patch(ks.getEndOffset(), vs.getEndOffset(), lineEndings((style.usesColons() ? ": " : " = ")+sb));
+		}
+		return new Patch(vs.getStartOffset(), vs.getEndOffset(), lineEndings(sb));
+	}
+
+	private Patch removal(Key k) {
+		int start = k.getSpan().getStartOffset();
+		int end = k.getValueSpan().getEndOffset();
+		if (k.getDocumentation() != null) {
+			int close = start;
+			while (close > 0 && Character.isWhitespace(text.charAt(close-1))) close--;
+			if (close >= 5 && text.startsWith("*/", close-2)) {
+				int open = text.lastIndexOf("/**", close-4);
+				if (open != -1 && text.substring(open+3, close-2).equals(k.getDocumentation())) {
+					start = open;
+				}
+			}
+		}
+		// take anything trailing the value on its line, such as a comment
+		int after = end;
+		while (after < text.length() && (text.charAt(after) == ' ' || text.charAt(after) == '\t')) after++;
+		if (text.startsWith("//", after)) {
+			int nl = text.indexOf('\n', after);
+			after = nl == -1 ? text.length() : nl;
+			if (after > 0 && text.charAt(after-1) == '\r') after--;
+		}
+		int lineStart = lineStart(start);
+		int eol = lineEnd(after);
+		if (isBlank(lineStart, start) && eol != -1) {
+			// the pair had its lines to itself, so remove them entirely
+			return new Patch(lineStart, eol, "");
+		}
+		return new Patch(start, after, "");
+	}
+
+	private Patch insertion(String parent, List<String> paths) {
+		String indent;
+		int pos;
+		int end;
+		String before = "";
+		String after = "";
+		if (parent.isEmpty()) {
+			indent = "";
+			pos = end = text.length();
+			if (pos > 0 && text.charAt(pos-1) != '\n') before = newline;
+		} else {
+			Key pk = keys.get(parent);
+			int brace = pk.getValueSpan().getEndOffset()-1;
+			String parentIndent = indentOf(pk.getSpan().getStartOffset());
+			indent = childIndent(parent, parentIndent);
+			int lineStart = lineStart(brace);
+			if (isBlank(lineStart, brace)) {
+				pos = end = lineStart;
+			} else {
+				// the section is closed on a line with something else on it
+				end = brace;
+				pos = brace;
+				while (text.charAt(pos-1) == ' ' || text.charAt(pos-1) == '\t') pos--;
+				before = newline;
+				after = parentIndent;
+			}
+		}
+		StringBuilder sb = new StringBuilder(before);
+		try {
+			for (String path : paths) {
+				Value v = config.lookup(path);
+				String name = path.substring(path.lastIndexOf('.')+1);
+				Serializer.writeKey(new Key(name, null), v, style, indent, 0, sb);
+				Serializer.writeValue(v, style, indent, sb);
+				sb.append('\n');
+			}
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return new Patch(pos, end, lineEndings(sb.append(after)));
+	}
+
+	/**
+	 * @return the indentation of the pairs already in a section, or one more
+	 * 				level than the section's own if it has none to go by
+	 */
+	private String childIndent(String parent, String parentIndent) {
+		Value v = original.lookup(parent);
+		int first = -1;
+		if (v instanceof WalnutConfig) {
+			// the first such pair in the document, not in hash order
+			for (Key k : ((WalnutConfig)v).contents().keySet()) {
+				int start = k.getSpan().getStartOffset();
+				if ((first == -1 || start < first) && isBlank(lineStart(start), start)) first = start;
+			}
+		}
+		if (first != -1) return text.substring(lineStart(first), first);
+		return parentIndent+style.getIndentation();
+	}
+
+	/**
+	 * @return the position just past the line break at pos, the end of the
+	 * 				text if pos is there, or -1 if there is no line break at pos
+	 */
+	private int lineEnd(int pos) {
+		if (pos == text.length()) return pos;
+		if (text.charAt(pos) == '\n') return pos+1;
+		if (text.startsWith("\r\n", pos)) return pos+2;
+		return -1;
+	}
+
+	/**
+	 * @return new text, with its line breaks changed to the document's own
+	 */
+	private String lineEndings(CharSequence s) {
+		if (newline.equals("\n")) return s.toString();
+		StringBuilder sb = new StringBuilder(s.length()+16);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			// text copied from the document already has its line endings
+			if (c == '\n' && (i == 0 || s.charAt(i-1) != '\r')) sb.append('\r');
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private int lineStart(int pos) {
+		return text.lastIndexOf('\n', pos-1)+1;
+	}
+
+	private String indentOf(int pos) {
+		int start = lineStart(pos);
+		int end = start;
+		while (end < pos && (text.charAt(end) == ' ' || text.charAt(end) == '\t')) end++;
+		return text.substring(start, end);
+	}
+
+	private boolean isBlank(int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(text.charAt(i))) return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,78 @@
+package com.unascribed.walnut;
+
+import java.io.File;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Deep-merges config fragments into one config, in the order they are given,
+ * resolving conflicts with a {@link MergePolicy}.
+ * <p>
+ * Fragments are merged destructively; sections of the first fragment to set
+ * them become part of the result, and later fragments are merged into them.
+ */
+final class ConfigMerger {
+	private final MergePolicy policy;
+	private final WalnutConfig result = new WalnutConfig();
+	/**
+	 * The fragment each path was first set by, when conflicts need reporting.
+	 * Paths within a section that was set whole are not recorded separately.
+	 */
+	private final Map<String, File> origins;
+	
+	public ConfigMerger(MergePolicy policy) {
+		if (policy == null) throw new IllegalArgumentException("policy cannot be null");
+		this.policy = policy;
+		this.origins = policy == MergePolicy.FAIL ? new HashMap<String, File>() : null;
+	}
+	
+	public void merge(WalnutConfig conf, File source) throws ParseException {
+		merge(result, conf, "", source);
+	}
+	
+	public WalnutConfig getResult() {
+		return result;
+	}
+	
+	private void merge(WalnutConfig into, WalnutConfig from, String prefix, File source) throws ParseException {
+		for (Map.Entry<Key, Value> en : from.map.entrySet()) {
+			Key k = en.getKey();
+			Value v = en.getValue();
+			String path = prefix+k.getKey();
+			Value existing = into.map.get(k);
+			if (existing == null) {
+				into.map.put(k, v);
+				if (origins != null) origins.put(path, source);
+			} else if (existing instanceof WalnutConfig && v instanceof WalnutConfig) {
+				// the section keeps the Key, and documentation, of the first fragment to set it
+				merge((WalnutConfig)existing, (WalnutConfig)v, path+".", source);
+			} else {
+				switch (policy) {
+					case OVERRIDE:
+						// replace the Key too, so the documentation goes with the value
+						into.map.remove(k);
+						into.map.put(k, v);
+						break;
+					case KEEP_FIRST:
+						break;
+					case FAIL:
+						throw new ParseException(path+" is set by both "+origin(path)+" and "+source, 0);
+				}
+			}
+		}
+	}
+	
+	private File origin(String path) {
+		while (true) {
+			File f = origins.get(path);
+			if (f != null) return f;
+			int dot = path.lastIndexOf('.');
+			if (dot == -1) return null;
+			path = path.substring(0, dot);
+		}
+	}
+	
+}
@@ -0,0 +1,134 @@
+package com.unascribed.walnut;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Information about a single parse, as given to a {@link ParseListener}.
+ * <p>
+ * Time is split into three phases: I/O, being time spent waiting on the
+ * underlying Reader (including decoding of UTF-8); value construction, being
+ * time spent converting tokens into numbers, booleans and so on; and lexing,
+ * being everything else.
+ *
+ * @since 0.0.1
+ */
+public final class ConfigMetrics {
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN;
+	
+	static {
+		com.sun.management.ThreadMXBean bean = null;
+		try {
+			ThreadMXBean tmx = ManagementFactory.getThreadMXBean();
+			if (tmx instanceof com.sun.management.ThreadMXBean) {
+				bean = (com.sun.management.ThreadMXBean)tmx;
+				if (!bean.isThreadAllocatedMemorySupported() || !bean.isThreadAllocatedMemoryEnabled()) {
+					bean = null;
+				}
+			}
+		} catch (LinkageError e) {
+			// not a HotSpot-derived JVM
+		}
+		THREAD_BEAN = bean;
+	}
+	
+	private final long bytesRead;
+	private final long codePointsRead;
+	private final int keys;
+	private final int sections;
+	private final int arrays;
+	private final int comments;
+	private final long ioNanos;
+	private final long valueNanos;
+	private final long totalNanos;
+	private final long allocatedBytes;
+	
+	ConfigMetrics(long bytesRead, long codePointsRead, int keys, int sections, int arrays, int comments,
+			long ioNanos, long valueNanos, long totalNanos, long allocatedBytes) {
+		this.bytesRead = bytesRead;
+		this.codePointsRead = codePointsRead;
+		this.keys = keys;
+		this.sections = sections;
+		this.arrays = arrays;
+		this.comments = comments;
+		this.ioNanos = ioNanos;
+		this.valueNanos = valueNanos;
+		this.totalNanos = totalNanos;
+		this.allocatedBytes = allocatedBytes;
+	}
+	
+	/**
+	 * @return the number of bytes read from the underlying stream, or -1 if the
+	 * 				source was not a stream
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+	
+	public long getCodePointsRead() {
+		return codePointsRead;
+	}
+	
+	/**
+	 * @return the number of pairs read, at any depth
+	 */
+	public int getKeys() {
+		return keys;
+	}
+	
+	public int getSections() {
+		return sections;
+	}
+	
+	public int getArrays() {
+		return arrays;
+	}
+	
+	/**
+	 * @return the number of comments skipped, including documentation comments
+	 */
+	public int getComments() {
+		return comments;
+	}
+	
+	public long getIoNanos() {
+		return ioNanos;
+	}
+	
+	public long getLexNanos() {
+		return Math.max(0, totalNanos-ioNanos-valueNanos);
+	}
+	
+	public long getValueNanos() {
+		return valueNanos;
+	}
+	
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+	
+	/**
+	 * @return an estimate of the number of bytes allocated by the parsing thread
+	 * 				during the parse, or -1 if the JVM can't measure it
+	 */
+	public long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+	
+	@Override
+	public String toString() {
+		return "ConfigMetrics[bytes="+bytesRead+", codePoints="+codePointsRead+", keys="+keys
+				+", sections="+sections+", arrays="+arrays+", comments="+comments
+				+", io="+ioNanos+"ns, lex="+getLexNanos()+"ns, value="+valueNanos+"ns, total="+totalNanos
+				+"ns, allocated="+allocatedBytes+"]";
+	}
+	
+	/**
+	 * @return the total number of bytes allocated by the current thread, or -1
+	 * 				if the JVM can't measure it
+	 */
+	static long currentThreadAllocatedBytes() {
+		if (THREAD_BEAN == null) return -1;
+		return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -1,11 +1,12 @@
 package com.unascribed.walnut;
 
-import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.Reader;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import com.unascribed.walnut.value.ArrayValue;
@@ -18,8 +19,159 @@ import com.unascribed.walnut.value.StringValue;
 import com.unascribed.walnut.value.Value;
 
 public class ConfigParser {
+	private static final int BUFFER_SIZE = 8192;
+	/**
+	 * Scratch builders that grow past this are dropped when a parser is
+	 * released, so one huge parse doesn't pin memory for the life of a thread.
+	 */
+	private static final int MAX_RETAINED_SCRATCH = 65536;
+	
+	private static final int[] KEY_END = { ':', '=', '{', '(', '[' };
+	private static final int[] TOKEN_END = { ',', '}', ']', '\n' };
+	
+	private static final ThreadLocal<ConfigParser> pool = new ThreadLocal<ConfigParser>();
+	
+	// the kinds of run skipRun can move over, as bits of RUN_TABLE
+	private static final int RUN_WHITESPACE = 1;
+	private static final int RUN_LINE_COMMENT = 2;
+	private static final int RUN_BLOCK_COMMENT = 4;
+	/**
+	 * For each ASCII char, which kinds of run it can be part of.
+	 */
+	private static final byte[] RUN_TABLE = new byte[128];
+	static {
+		for (int c = 0; c < 128; c++) {
+			int kinds = 0;
+			if (Character.isWhitespace(c)) kinds |= RUN_WHITESPACE;
+			if (c != '\n') kinds |= RUN_LINE_COMMENT;
+			if (c != '*') kinds |= RUN_BLOCK_COMMENT;
+			RUN_TABLE[c] = (byte)kinds;
+		}
+	}
+	
+	/**
+	 * The default for {@link #maxDepth(int)}.
+	 */
+	public static final int DEFAULT_MAX_DEPTH = 1000;
+	
+	/**
+	 * A section or array being read.
+	 */
+	private static final class Frame {
+		boolean section;
+		
+		WalnutConfig conf;
+		/**
+		 * The position of the opening brace, or ROOT.
+		 */
+		int open;
+		/**
+		 * Whether the section is an element of an array, whose raw value
+		 * includes the section's text as it was in the input.
+		 */
+		boolean element;
+		/**
+		 * Whether a key has been read and its value is being read, in which
+		 * case the fields below describe the pair.
+		 */
+		boolean pairPending;
+		String key;
+		String doc;
+		int keyStart;
+		int valueStart;
+		int pairDepth;
+		
+		final ArrayList<Value> values = new ArrayList<Value>();
+		final StringBuilder raw = new StringBuilder();
+	}
+	
+	private static final int ROOT = -1;
+	
+	// the states of read()
+	private static final int START_VALUE = 0;
+	private static final int DELIVER = 1;
+	private static final int NEXT_ELEMENT = 2;
+	private static final int NEXT_PAIR = 3;
+	
+	/**
+	 * Values of sliceStart when the current token is not a slice of the input.
+	 */
+	private static final int NOT_SLICED = -1;
+	private static final int EMPTY_SLICE = -2;
+	
 	private Reader src;
-	private int idx;
+	/**
+	 * Set instead of src when parsing text held in memory, which is then
+	 * indexed directly rather than copied through a buffer. Only one of text
+	 * and array is set.
+	 */
+	private CharSequence text;
+	private char[] array;
+	private int textPos;
+	private int textEnd;
+	/**
+	 * The position of each buffered code point, mirroring the buf fields.
+	 * When parsing text this is its index in the text, which allows tokens to
+	 * be sliced straight out of the input; when reading from a Reader,
+	 * textPos counts the chars read so far instead.
+	 */
+	private int posPrevious;
+	private int posCurrent;
+	private int posNext;
+	private int posNextNext;
+	/**
+	 * The bounds of the current token within the input, if it has been a
+	 * contiguous run of the input so far, in which case tokenScratch is not
+	 * used.
+	 */
+	private int sliceStart = NOT_SLICED;
+	private int sliceEnd;
+	private char[] chars;
+	private int charsPos;
+	private int charsLen;
+	/**
+	 * The position of the start of the input, which reported positions are
+	 * relative to.
+	 */
+	private int textStart;
+	/**
+	 * The position each line starts at, recorded as newlines are read.
+	 * Positions are only turned into lines and columns when an error or span
+	 * needs one, so this costs a comparison per char.
+	 */
+	private int[] lineStarts = new int[64];
+	private int lineCount;
+	/**
+	 * The chars read from a Reader since the outermost open section that is
+	 * an element of an array was opened, at captureStart, so its text can be
+	 * put in the array's raw value. Text that is parsed in place is sliced
+	 * instead.
+	 */
+	private final StringBuilder capture = new StringBuilder();
+	private int captureStart;
+	private int capturing;
+	private int keyStart;
+	private boolean trackSpans;
+	/**
+	 * How many sections and arrays are open.
+	 */
+	private int depth;
+	private int maxDepth = DEFAULT_MAX_DEPTH;
+	/**
+	 * The sections and arrays being read, innermost last, and below them all
+	 * the root config if a whole config is being read.
+	 */
+	private Frame[] stack = new Frame[16];
+	private int stackSize;
+	
+	private boolean recovering;
+	private List<Diagnostic> diagnostics;
+	private WalnutConfig partial;
+	
+	private StringBuilder tokenScratch = new StringBuilder();
+	private StringBuilder valueScratch = new StringBuilder();
+	private StringBuilder rawScratch = new StringBuilder();
+	private StringBuilder docScratch = new StringBuilder();
 
 	private int bufPrevious = -1;
 	private int bufCurrent = -1;
@@ -29,15 +181,263 @@ public class ConfigParser {
 	private boolean processComments = true;
 	private String lastDocumentationComment;
 	
+	private ParseListener listener;
+	private String source;
+	private MeteredReader ioMeter;
+	private MeteredInputStream byteMeter;
+	private long startNanos;
+	private long startAllocated;
+	private long valueNanos;
+	
+	private long codePoints;
+	private int keys;
+	private int sections;
+	private int arrays;
+	private int comments;
+	
 	public ConfigParser(Reader src) {
-		this.src = new BufferedReader(src);
+		this(src, null, null, null);
+	}
+	
+	/**
+	 * @param src the reader to parse from
+	 * @param listener a listener to notify about the parse, or null
+	 * @param source a human-readable description of the source, such as a
+	 * 				file path, to be passed to the listener
+	 */
+	public ConfigParser(Reader src, ParseListener listener, String source) {
+		this(src, listener, source, null);
+	}
+	
+	/**
+	 * @param byteMeter the stream src reads from, if any, to report bytes read
+	 */
+	ConfigParser(Reader src, ParseListener listener, String source, MeteredInputStream byteMeter) {
+		reset(src, listener, source, byteMeter);
+	}
+	
+	private ConfigParser() {}
+	
+	/**
+	 * Obtains a parser from a pool kept for the calling thread, and resets it
+	 * to parse from the given reader, as if by
+	 * {@link #ConfigParser(Reader, ParseListener, String)}.
+	 * <p>
+	 * A pooled parser reuses its read buffer and scratch space from one parse
+	 * to the next, so many small parses allocate little more than the configs
+	 * they return. Call {@link #release()} when done with it.
+	 * 
+	 * @param src the reader to parse from
+	 * @param listener a listener to notify about the parse, or null
+	 * @param source a human-readable description of the source, to be passed
+	 * 				to the listener
+	 * @return a parser ready to be prepared
+	 * @since 0.0.1
+	 */
+	public static ConfigParser obtain(Reader src, ParseListener listener, String source) {
+		return obtain().reset(src, listener, source, null);
+	}
+	
+	/**
+	 * Obtain a parser from the calling thread's pool, or a new one if the
+	 * pooled parser is in use, such as by a listener that parses.
+	 */
+	static ConfigParser obtain() {
+		ConfigParser p = pool.get();
+		if (p == null) return new ConfigParser();
+		pool.set(null);
+		return p;
+	}
+	
+	/**
+	 * Returns this parser to the calling thread's pool. It must not be used
+	 * again afterwards, except by obtaining it again.
+	 * 
+	 * @since 0.0.1
+	 */
+	public void release() {
+		reset(null, null, null, null);
+		if (tokenScratch.capacity() > MAX_RETAINED_SCRATCH) tokenScratch = new StringBuilder();
+		if (valueScratch.capacity() > MAX_RETAINED_SCRATCH) valueScratch = new StringBuilder();
+		if (rawScratch.capacity() > MAX_RETAINED_SCRATCH) rawScratch = new StringBuilder();
+		if (docScratch.capacity() > MAX_RETAINED_SCRATCH) docScratch = new StringBuilder();
+		if (lineStarts.length > MAX_RETAINED_SCRATCH) lineStarts = new int[64];
+		if (stack.length > 64) stack = new Frame[16];
+		for (int i = 0; i < stack.length; i++) {
+			if (stack[i] != null && stack[i].raw.capacity() > MAX_RETAINED_SCRATCH) stack[i] = null;
+		}
+		pool.set(this);
+	}
+	
+	/**
+	 * Resets this parser to parse from a new reader, as if it was newly
+	 * constructed with the given arguments. The read buffer and scratch space
+	 * are kept.
+	 * 
+	 * @param src the reader to parse from
+	 * @param listener a listener to notify about the parse, or null
+	 * @param source a human-readable description of the source, to be passed
+	 * 				to the listener
+	 * @return this parser
+	 * @since 0.0.1
+	 */
+	public ConfigParser reset(Reader src, ParseListener listener, String source) {
+		return reset(src, listener, source, null);
+	}
+	
+	ConfigParser reset(Reader src, ParseListener listener, String source, MeteredInputStream byteMeter) {
+		this.listener = listener;
+		this.source = source;
+		this.byteMeter = null;
+		this.ioMeter = null;
+		if (listener != null && src != null) {
+			this.byteMeter = byteMeter;
+			this.ioMeter = new MeteredReader(src);
+			src = ioMeter;
+		}
+		this.src = src;
+		this.text = null;
+		this.array = null;
+		this.textPos = 0;
+		this.textEnd = 0;
+		this.charsPos = 0;
+		this.charsLen = 0;
+		this.textStart = 0;
+		lineStarts[0] = 0;
+		lineCount = 1;
+		trackSpans = false;
+		depth = 0;
+		maxDepth = DEFAULT_MAX_DEPTH;
+		recovering = false;
+		diagnostics = null;
+		partial = null;
+		bufPrevious = bufCurrent = bufNext = bufNextNext = -1;
+		processComments = true;
+		lastDocumentationComment = null;
+		startNanos = 0;
+		startAllocated = 0;
+		valueNanos = 0;
+		codePoints = 0;
+		keys = sections = arrays = comments = 0;
+		return this;
 	}
 	
 	/**
-	 * Public to test units or something.
+	 * Resets this parser to parse a CharSequence, which is indexed directly
+	 * rather than read through a Reader.
+	 */
+	ConfigParser reset(CharSequence text, ParseListener listener, String source) {
+		return reset(text, 0, text.length(), listener, source);
+	}
+	
+	/**
+	 * Resets this parser to parse part of a CharSequence, from start
+	 * inclusive to end exclusive.
+	 */
+	ConfigParser reset(CharSequence text, int start, int end, ParseListener listener, String source) {
+		reset(null, listener, source, null);
+		this.text = text;
+		this.textPos = start;
+		this.textEnd = end;
+		this.textStart = start;
+		lineStarts[0] = start;
+		return this;
+	}
+	
+	/**
+	 * Resets this parser to parse a slice of a char array, which is indexed
+	 * directly rather than read through a Reader.
+	 */
+	ConfigParser reset(char[] array, int offset, int length, ParseListener listener, String source) {
+		if (offset < 0 || length < 0 || offset+length > array.length || offset+length < 0) {
+			throw new IndexOutOfBoundsException("offset "+offset+", length "+length+", array length "+array.length);
+		}
+		reset(null, listener, source, null);
+		this.array = array;
+		this.textPos = offset;
+		this.textEnd = offset+length;
+		this.textStart = offset;
+		lineStarts[0] = offset;
+		return this;
+	}
+	
+	/**
+	 * Enables or disables recording where each key and value was in the
+	 * input, as {@link Key#getSpan()} and {@link Key#getValueSpan()}. This is
+	 * off by default, and is turned off again by reset.
+	 * 
+	 * @return this parser
+	 * @since 0.0.1
+	 */
+	public ConfigParser trackSpans(boolean trackSpans) {
+		this.trackSpans = trackSpans;
+		return this;
+	}
+	
+	/**
+	 * Sets how deeply sections and arrays may be nested before parsing fails.
+	 * The parser doesn't recurse, so input of any depth can be parsed on any
+	 * thread; this only guards against input made to be absurdly deep. The
+	 * default is {@link #DEFAULT_MAX_DEPTH}, and is restored by reset.
+	 * 
+	 * @return this parser
+	 * @since 0.0.1
+	 */
+	public ConfigParser maxDepth(int maxDepth) {
+		if (maxDepth < 0) throw new IllegalArgumentException("maxDepth cannot be negative");
+		this.maxDepth = maxDepth;
+		return this;
+	}
+	
+	/**
+	 * @return the offset, in chars from the start of the input, just past the
+	 * 				last character read
 	 */
 	public int getPosition() {
-		return idx;
+		return posNext-textStart;
+	}
+	
+	/**
+	 * @return the 1-based line of {@link #getPosition()}
+	 */
+	public int getLine() {
+		return lineIndex(posNext)+1;
+	}
+	
+	/**
+	 * @return the 1-based column of {@link #getPosition()}, in chars
+	 */
+	public int getColumn() {
+		return posNext-lineStarts[lineIndex(posNext)]+1;
+	}
+	
+	private int lineIndex(int pos) {
+		int lo = 0;
+		int hi = lineCount-1;
+		while (lo < hi) {
+			int mid = (lo+hi+1) >>> 1;
+			if (lineStarts[mid] <= pos) {
+				lo = mid;
+			} else {
+				hi = mid-1;
+			}
+		}
+		return lo;
+	}
+	
+	private String location(int pos) {
+		int line = lineIndex(pos);
+		return "line "+(line+1)+", column "+(pos-lineStarts[line]+1);
+	}
+	
+	private ParseException error(String message, int pos) {
+		return new ParseException(message+" at "+location(pos), pos-textStart);
+	}
+	
+	private SourceSpan span(int start, int end) {
+		int startLine = lineIndex(start);
+		int endLine = lineIndex(end);
+		return new SourceSpan(start-textStart, end-textStart, startLine+1, start-lineStarts[startLine]+1, endLine+1, end-lineStarts[endLine]+1);
 	}
 	
 	/**
@@ -48,10 +448,38 @@ public class ConfigParser {
 	}
 	
 	public ConfigParser prepare() throws IOException, ParseException {
+		if (listener != null) {
+			startAllocated = ConfigMetrics.currentThreadAllocatedBytes();
+			startNanos = System.nanoTime();
+			listener.parseStarted(source);
+			try {
+				posNext = textPos;
+				bufNext = read();
+			} catch (IOException | ParseException | RuntimeException e) {
+				listener.parseFailed(source, getMetrics(), e);
+				throw e;
+			}
+			return this;
+		}
+		posNext = textPos;
 		bufNext = read();
 		return this;
 	}
 	
+	/**
+	 * @return metrics for everything parsed so far; timing and allocation
+	 * 				information is only available if a listener was passed
+	 * 				to the constructor
+	 */
+	public ConfigMetrics getMetrics() {
+		long allocated = -1;
+		if (listener != null && startAllocated != -1) {
+			allocated = ConfigMetrics.currentThreadAllocatedBytes()-startAllocated;
+		}
+		return new ConfigMetrics(byteMeter == null ? -1 : byteMeter.bytes, codePoints, keys, sections, arrays, comments,
+				ioMeter == null ? 0 : ioMeter.nanos, valueNanos, listener == null ? 0 : System.nanoTime()-startNanos, allocated);
+	}
+	
 	
 	/**
 	 * Parse the contents of a Reader into a WalnutConfig.
@@ -63,24 +491,428 @@ public class ConfigParser {
 	 * @throws ParseException if the reader does not contain a proper Walnut config
 	 */
 	public WalnutConfig parse() throws IOException, ParseException {
-		WalnutConfig conf = new WalnutConfig();
-		while (hasMore()) {
-			String k = readKey();
-			if (k == null) break;
-			conf.map.put(new Key(k, lastDocumentationComment), readValue());
-			lastDocumentationComment = null;
+		if (listener == null) return parsePairs();
+		WalnutConfig conf;
+		try {
+			conf = parsePairs();
+		} catch (IOException | ParseException | RuntimeException e) {
+			listener.parseFailed(source, getMetrics(), e);
+			throw e;
 		}
+		listener.parseFinished(source, getMetrics());
+		return conf;
+	}
+	
+	/**
+	 * Parse the contents of a Reader, recovering from errors rather than
+	 * stopping at the first one. Keys that are set more than once in a
+	 * section are also reported, as warnings.
+	 * <p>
+	 * When a value cannot be parsed, a diagnostic is recorded and the pair is
+	 * left out. Parsing then resumes at the end of the line, or at the end of
+	 * the enclosing section if that comes first; any strings, sections or
+	 * arrays the broken value opened are skipped as a whole. If the input
+	 * ends early, everything parsed up to that point is kept.
+	 * <p>
+	 * A file with no errors is parsed exactly as {@link #parse()} would, and
+	 * at much the same speed.
+	 * 
+	 * @return the config that could be parsed, and the problems found
+	 * @throws IOException if an underlying IO error occurs
+	 * @since 0.0.1
+	 */
+	public ParseResult parseRecovering() throws IOException {
+		return parseRecovering(false);
+	}
+	
+	/**
+	 * @param prepare true to prepare the parser first, so an error in the
+	 * 				first character is also recovered from
+	 */
+	ParseResult parseRecovering(boolean prepare) throws IOException {
+		recovering = true;
+		diagnostics = new ArrayList<Diagnostic>();
+		partial = null;
+		try {
+			WalnutConfig conf;
+			try {
+				if (prepare) prepare();
+				conf = parse();
+			} catch (ParseException e) {
+				// only errors outside of values, such as a bad surrogate in a key, get this far
+				diagnose(e.getMessage(), e.getErrorOffset()+textStart);
+				conf = partial == null ? new WalnutConfig() : partial;
+			}
+			return new ParseResult(conf, diagnostics);
+		} finally {
+			recovering = false;
+			diagnostics = null;
+			partial = null;
+		}
+	}
+	
+	private WalnutConfig parsePairs() throws IOException, ParseException {
+		WalnutConfig conf = new WalnutConfig();
+		if (recovering) partial = conf;
+		read(conf);
 		return conf;
 	}
 	
+	/**
+	 * Reads a single value or, given a root config, every pair up to the end
+	 * of the input into it.
+	 * <p>
+	 * Rather than recursing for each section and array, this keeps them on an
+	 * explicit stack of frames and moves between a handful of states, so the
+	 * depth of the input is limited only by maxDepth and never by the size of
+	 * the calling thread's stack.
+	 */
+	private Value read(WalnutConfig root) throws IOException, ParseException {
+		stackSize = 0;
+		int state;
+		if (root != null) {
+			Frame f = push();
+			f.section = true;
+			f.conf = root;
+			f.open = ROOT;
+			state = NEXT_PAIR;
+		} else {
+			state = START_VALUE;
+		}
+		Value v = null;
+		try {
+			while (true) {
+				try {
+					switch (state) {
+						case START_VALUE: {
+							skipWhitespace();
+							int first = advance();
+							if (first == '"' || first == '(') {
+								boolean spanning = (first == '(');
+								int endChar = (spanning ? ')' : '"');
+								v = readString(spanning, first, endChar);
+								state = DELIVER;
+							} else if (first == '[') {
+								arrays++;
+								Frame f = open(false);
+								f.raw.appendCodePoint(first);
+								state = NEXT_ELEMENT;
+							} else if (first == '{') {
+								sections++;
+								boolean element = stackSize > 0 && !stack[stackSize-1].section;
+								Frame f = open(true);
+								f.conf = new WalnutConfig();
+								f.open = posCurrent;
+								if (element) startCapture(f);
+								// the section's key has taken the documentation before it
+								lastDocumentationComment = null;
+								state = NEXT_PAIR;
+							} else {
+								v = readScalar(first);
+								state = DELIVER;
+							}
+							break;
+						}
+						case DELIVER: {
+							if (stackSize == 0) return v;
+							Frame f = stack[stackSize-1];
+							if (f.section) {
+								put(f, v);
+								state = NEXT_PAIR;
+								break;
+							}
+							f.values.add(v);
+							// a section's text was added to the raw value as it closed
+							if (!(v instanceof WalnutConfig)) f.raw.append(v.getRawValue());
+							appendWhitespace(f.raw);
+							int n = advance();
+							f.raw.appendCodePoint(n);
+							if (n == ']') {
+								// the array is itself delivered to whatever it is in
+								v = close(f);
+							} else if (n != ',') {
+								throw error("Expected comma, but was "+new String(Character.toChars(n)), posCurrent);
+							} else {
+								appendWhitespace(f.raw);
+								state = NEXT_ELEMENT;
+							}
+							break;
+						}
+						case NEXT_ELEMENT: {
+							Frame f = stack[stackSize-1];
+							int c = advance();
+							if (c == ']') {
+								f.raw.appendCodePoint(c);
+								v = close(f);
+								state = DELIVER;
+							} else {
+								withdraw();
+								state = START_VALUE;
+							}
+							break;
+						}
+						case NEXT_PAIR: {
+							Frame f = stack[stackSize-1];
+							String k;
+							if (f.open == ROOT) {
+								k = hasMore() ? readKey() : null;
+								if (k == null) {
+									pop();
+									return root;
+								}
+							} else {
+								skipWhitespace();
+								int c = recovering ? tryAdvance() : advance();
+								if (c == '}') {
+									v = close(f);
+									state = DELIVER;
+									break;
+								} else {
+									withdraw();
+								}
+								k = c == -1 ? null : readKey();
+								if (k == null) {
+									if (!recovering) throw new EOFException("section was not closed before EOF at "+location(posCurrent));
+									// keep what was in the section
+									diagnose("section was not closed before EOF", f.open);
+									v = close(f);
+									state = DELIVER;
+									break;
+								}
+							}
+							keys++;
+							f.pairPending = true;
+							f.key = k;
+							f.doc = lastDocumentationComment;
+							f.keyStart = keyStart;
+							f.pairDepth = depth;
+							if (trackSpans) {
+								skipWhitespace();
+								f.valueStart = posNext;
+							}
+							state = START_VALUE;
+							break;
+						}
+					}
+				} catch (ParseException | EOFException e) {
+					if (!recovering) throw e;
+					// give up on the innermost pair being read, and whatever its value had opened
+					while (stackSize > 0 && !stack[stackSize-1].pairPending) {
+						pop();
+					}
+					if (stackSize == 0) throw e;
+					Frame f = stack[stackSize-1];
+					if (e instanceof ParseException) {
+						ParseException pe = (ParseException)e;
+						diagnose(pe.getMessage(), pe.getErrorOffset()+textStart);
+						int open = depth-f.pairDepth;
+						depth = f.pairDepth;
+						resync(open, f.open != ROOT);
+					} else {
+						diagnose(e.getMessage(), posCurrent);
+						depth = f.pairDepth;
+					}
+					f.pairPending = false;
+					lastDocumentationComment = null;
+					state = NEXT_PAIR;
+				}
+			}
+		} finally {
+			// don't hold on to a failed parse from a pooled parser
+			while (stackSize > 0) {
+				pop();
+			}
+		}
+	}
+	
+	private Frame push() {
+		if (stackSize == stack.length) {
+			stack = Arrays.copyOf(stack, stackSize*2);
+		}
+		Frame f = stack[stackSize];
+		if (f == null) {
+			f = stack[stackSize] = new Frame();
+		}
+		stackSize++;
+		return f;
+	}
+	
+	private void pop() {
+		Frame f = stack[--stackSize];
+		f.conf = null;
+		f.key = null;
+		f.doc = null;
+		f.pairPending = false;
+		f.values.clear();
+		f.raw.setLength(0);
+		if (f.element) {
+			f.element = false;
+			if (--capturing == 0) capture.setLength(0);
+		}
+	}
+	
+	/**
+	 * Start keeping the text of a section that is an element of an array,
+	 * whose opening brace has just been read.
+	 */
+	private void startCapture(Frame f) {
+		f.element = true;
+		if (capturing++ == 0 && array == null && text == null) {
+			// the brace and the char after it have already been read
+			captureStart = posCurrent;
+			capture.appendCodePoint(bufCurrent);
+			if (bufNext != -1) capture.appendCodePoint(bufNext);
+		}
+	}
+	
+	/**
+	 * Append the input from start to end, which must be in a section whose
+	 * text is being kept if it is read from a Reader.
+	 */
+	private void appendSource(StringBuilder out, int start, int end) {
+		if (array != null) {
+			out.append(array, start, end-start);
+		} else if (text != null) {
+			out.append(text, start, end);
+		} else {
+			out.append(capture, start-captureStart, end-captureStart);
+		}
+	}
+	
+	/**
+	 * Push a frame for a section or array that has just been opened.
+	 */
+	private Frame open(boolean section) throws ParseException {
+		if (depth >= maxDepth) {
+			throw error("Sections and arrays are nested deeper than the maximum of "+maxDepth, posCurrent);
+		}
+		depth++;
+		Frame f = push();
+		f.section = section;
+		return f;
+	}
+	
+	/**
+	 * Pop the frame of a section or array that has been read to its end.
+	 */
+	private Value close(Frame f) {
+		Value v;
+		if (f.section) {
+			v = f.conf;
+			if (f.element) {
+				// a section closed by EOF ends at the end of the input
+				appendSource(stack[stackSize-2].raw, f.open, Math.min(posCurrent+1, textPos));
+			}
+		} else {
+			v = new ArrayValue(f.raw.toString(), f.values.toArray(new Value[f.values.size()]));
+		}
+		pop();
+		depth--;
+		return v;
+	}
+	
+	private void put(Frame f, Value v) {
+		String k = f.key;
+		if (trackSpans) {
+			Key key = new Key(k, f.doc, span(f.keyStart, f.keyStart+k.length()), span(f.valueStart, posNext));
+			if (f.conf.map.containsKey(key)) {
+				// the map keeps the first Key, and so its span, so replace it
+				// outright, but keep its documentation as a parse without spans
+				// does; duplicates are rare enough to look for it the slow way
+				for (Iterator<Key> iter = f.conf.map.keySet().iterator(); iter.hasNext();) {
+					Key first = iter.next();
+					if (first.equals(key)) {
+						key.documentation = first.documentation;
+						iter.remove();
+						break;
+					}
+				}
+				if (recovering) duplicate(k, f.keyStart);
+			}
+			f.conf.map.put(key, v);
+		} else if (f.conf.map.put(new Key(k, f.doc), v) != null && recovering) {
+			duplicate(k, f.keyStart);
+		}
+		f.pairPending = false;
+		f.key = null;
+		f.doc = null;
+		lastDocumentationComment = null;
+	}
+	
+	private void duplicate(String k, int pos) {
+		int line = lineIndex(pos);
+		diagnostics.add(new Diagnostic(Diagnostic.Severity.WARNING, source, "duplicate key "+k+"; only the last value is kept", pos-textStart, line+1, pos-lineStarts[line]+1));
+	}
+	
+	private void diagnose(String message, int pos) {
+		// the location is kept separately, rather than in the message
+		String suffix = " at "+location(pos);
+		if (message != null && message.endsWith(suffix)) message = message.substring(0, message.length()-suffix.length());
+		int line = lineIndex(pos);
+		diagnostics.add(new Diagnostic(source, message, pos-textStart, line+1, pos-lineStarts[line]+1));
+	}
+	
+	/**
+	 * Skip past the rest of a value that could not be parsed, stopping at the
+	 * end of the line or just before the brace that closes the enclosing
+	 * section.
+	 * 
+	 * @param open how many sections and arrays the value had opened
+	 * @param inSection whether the value is in a section, rather than at the
+	 * 				top level
+	 */
+	private void resync(int open, boolean inSection) throws IOException, ParseException {
+		if (open == 0 && bufCurrent == '\n') return;
+		boolean inString = false;
+		while (true) {
+			int c = tryAdvance();
+			if (c == -1) return;
+			if (inString) {
+				if (c == '\\') {
+					if (tryAdvance() == -1) return;
+					continue;
+				}
+				if (c == '"') {
+					inString = false;
+					continue;
+				}
+				if (c != '\n') continue;
+				// an unterminated string ends with its line
+				inString = false;
+			}
+			switch (c) {
+				case '"':
+					inString = true;
+					break;
+				case '{':
+				case '[':
+					open++;
+					break;
+				case '}':
+				case ']':
+					if (open > 0) {
+						open--;
+					} else if (c == '}' && inSection) {
+						withdraw();
+						return;
+					}
+					break;
+				case '\n':
+					if (open == 0) return;
+					break;
+			}
+		}
+	}
+	
 	/**
 	 * Public only to allow unit testing.
 	 * @see #parse()
 	 */
 	public String readKey() throws IOException, ParseException {
 		skipWhitespace();
-		String rtrn = trim(allUntil(':', '=', '{', '(', '['));
-		if (rtrn == null) return null;
+		keyStart = posNext;
+		if (!scanUntil(KEY_END)) return null;
+		String rtrn = trimmedToken();
 		int sep = bufCurrent;
 		//System.out.print("q: ");
 		//System.out.println(Character.toChars(sep));
@@ -97,81 +929,49 @@ public class ConfigParser {
 	 * @see #parse()
 	 */
 	public Value readValue() throws IOException, ParseException {
-		skipWhitespace();
-		int first = advance();
-		if (first == '"' || first == '(') {
-			boolean spanning = (first == '(');
-			int endChar = (spanning ? ')' : '"');
-			return readString(spanning, first, endChar);
-		} else if (first == '[') {
-			List<Value> li = new ArrayList<Value>();
-			StringBuilder sb = new StringBuilder();
-			sb.appendCodePoint(first);
-			while (true) {
-				int c = advance();
-				if (c == ']') {
-					sb.appendCodePoint(c);
-					break;
-				} else {
-					withdraw();
-				}
-				Value v = readValue();
-				li.add(v);
-				sb.append(v.getRawValue());
-				sb.append(allWhitespace());
-				int n = advance();
-				sb.appendCodePoint(n);
-				if (n == ']') break;
-				else if (n != ',') throw new ParseException("Expected comma, but was "+new String(Character.toChars(n)), idx);
-				sb.append(allWhitespace());
-			}
-			return new ArrayValue(sb.toString(), li.toArray(new Value[li.size()]));
-		} else if (first == '{') {
-			WalnutConfig conf = new WalnutConfig();
-			while (true) {
-				skipWhitespace();
-				int c = advance();
-				if (c == '}') {
-					break;
-				} else {
-					withdraw();
-				}
-				String k = readKey();
-				if (k == null) throw new EOFException("section was not closed before EOF at "+idx);
-				conf.map.put(new Key(k, lastDocumentationComment), readValue());
-				lastDocumentationComment = null;
-			}
-			return conf;
-		} else {
-			withdraw();
-			String token = allUntilWhitespaceOr(',', '}', ']', '\n');
-			//System.out.println("W: "+token);
-			if (first == '-' || first == 'I' || first == 'N' || isBasicDigit(first)) {
-				String n = token.startsWith("0x") ? token : trimLeadingZeroes(token);
+		return read(null);
+	}
+	
+	private Value readScalar(int first) throws IOException, ParseException {
+		withdraw();
+		int pos = posNext;
+		String token = allUntilWhitespaceOr(TOKEN_END);
+		//System.out.println("W: "+token);
+		if (listener == null) return readScalar(first, token, pos);
+		long start = System.nanoTime();
+		try {
+			return readScalar(first, token, pos);
+		} finally {
+			valueNanos += System.nanoTime()-start;
+		}
+	}
+	
+	private Value readScalar(int first, String token, int pos) throws ParseException {
+		if (first == '-' || first == 'I' || first == 'N' || isBasicDigit(first)) {
+			String n = token.startsWith("0x") ? token : trimLeadingZeroes(token);
+			try {
+				return new IntValue(token, Integer.decode(n));
+			} catch (IllegalArgumentException e) {
 				try {
-					return new IntValue(token, Integer.decode(n));
-				} catch (IllegalArgumentException e) {
+					return new LongValue(token, Long.decode(n));
+				} catch (IllegalArgumentException e1) {
+					e1.initCause(e);
 					try {
-						return new LongValue(token, Long.decode(n));
-					} catch (IllegalArgumentException e1) {
-						e1.initCause(e);
-						try {
-							return new DoubleValue(token, Double.parseDouble(n));
-						} catch (IllegalArgumentException e2) {
-							e2.initCause(e1);
-							throw (ParseException) new ParseException("Invalid number: "+token, idx).initCause(e2);
-						}
+						return new DoubleValue(token, Double.parseDouble(n));
+					} catch (IllegalArgumentException e2) {
+						e2.initCause(e1);
+						throw (ParseException) error("Invalid number: "+token, pos).initCause(e2);
 					}
 				}
-			} else if (token.equals("on") || token.equals("true") || token.equals("enabled")) {
-				return new BooleanValue(token, true);
-			} else if (token.equals("off") || token.equals("false") || token.equals("disabled")) {
-				return new BooleanValue(token, false);
-			} else if (token.equals("null") || token.equals("nil") || token.equals("undefined")) {
-				return new NullValue(token);
-			} else {
-				throw new ParseException("Cannot parse unknown value type", idx);
 			}
+		} else if (token.equals("on") || token.equals("true") || token.equals("enabled")) {
+			return new BooleanValue(token, true);
+		} else if (token.equals("off") || token.equals("false") || token.equals("disabled")) {
+			return new BooleanValue(token, false);
+		} else if (token.equals("null") || token.equals("nil") || token.equals("undefined")) {
+			return new NullValue(token);
+		} else {
+			throw error("Cannot parse unknown value type", pos);
 		}
 	}
 
@@ -183,12 +983,18 @@ public class ConfigParser {
 		boolean oldSkipComments = processComments;
 		processComments = false;
 		try {
-			int begin = idx;
-			StringBuilder accumulator = new StringBuilder();
-			StringBuilder origAccumulator = new StringBuilder();
+			if (!spanning && (text != null || array != null)) {
+				StringValue plain = readPlainString(endChar);
+				if (plain != null) return plain;
+			}
+			int begin = posCurrent;
+			StringBuilder accumulator = valueScratch;
+			StringBuilder origAccumulator = rawScratch;
+			accumulator.setLength(0);
+			origAccumulator.setLength(0);
 			origAccumulator.appendCodePoint(beginChar);
 			if (spanning) {
-				origAccumulator.append(allWhitespace());
+				appendWhitespace(origAccumulator);
 			}
 			while (true) {
 				int next = advance();
@@ -197,13 +1003,14 @@ public class ConfigParser {
 				if (next == '\n') {
 					if (spanning) {
 						accumulator.appendCodePoint(next);
-						origAccumulator.append(allWhitespace());
+						appendWhitespace(origAccumulator);
 						continue;
 					} else {
-						throw new ParseException("String extends into infinity", begin);
+						throw error("String extends into infinity", begin);
 					}
 				}
 				if (next == '\\') {
+					int escape = posCurrent;
 					int nextNext = advance();
 					origAccumulator.appendCodePoint(nextNext);
 					String s = null;
@@ -214,16 +1021,16 @@ public class ConfigParser {
 							accumulator.appendCodePoint(nextNext);
 							break;
 						case 'x':
-							accumulator.appendCodePoint(Integer.parseInt(s = next(2), 16));
+							accumulator.appendCodePoint(hexEscape(s = next(2), escape));
 							break;
 						case 'u':
-							accumulator.appendCodePoint(Integer.parseInt(s = next(4), 16));
+							accumulator.appendCodePoint(hexEscape(s = next(4), escape));
 							break;
 						case 'U':
-							accumulator.appendCodePoint(Integer.parseInt(s = next(8), 16));
+							accumulator.appendCodePoint(hexEscape(s = next(8), escape));
 							break;
 						default:
-							throw new ParseException("Unknown escape "+String.copyValueOf(Character.toChars(nextNext)), idx);
+							throw error("Unknown escape "+String.copyValueOf(Character.toChars(nextNext)), escape);
 					}
 					if (s != null) origAccumulator.append(s);
 					continue;
@@ -237,6 +1044,103 @@ public class ConfigParser {
 		}
 	}
 
+	private int hexEscape(String digits, int escape) throws ParseException {
+		try {
+			int cp = Integer.parseInt(digits, 16);
+			if (Character.isValidCodePoint(cp)) return cp;
+		} catch (NumberFormatException e) {}
+		throw error("Invalid escape "+digits, escape);
+	}
+
+	/**
+	 * When parsing text, read a string with no escapes as slices of the input,
+	 * skipping straight past it rather than reading it a code point at a
+	 * time. The opening quote must be the current character.
+	 * 
+	 * @return the string, or null if it needs to be read the slow way
+	 */
+	private StringValue readPlainString(int endChar) throws IOException, ParseException {
+		if (bufNextNext != -1) return null;
+		int begin = posCurrent;
+		int end = begin+1;
+		while (true) {
+			if (end >= textEnd) return null;
+			char c = textAt(end);
+			if (c == endChar) break;
+			// surrogates are left to read, which checks that they are paired
+			if (c == '\\' || c == '\n' || Character.isSurrogate(c)) return null;
+			end++;
+		}
+		// account for everything between what was last read and the closing quote
+		codePoints += end+1-textPos;
+		bufPrevious = textAt(end-1);
+		posPrevious = end-1;
+		bufCurrent = endChar;
+		posCurrent = end;
+		textPos = end+1;
+		posNext = textPos;
+		bufNext = read();
+		return new StringValue(slice(begin, end+1), slice(begin+1, end));
+	}
+	
+	private char textAt(int i) {
+		return array != null ? array[i] : text.charAt(i);
+	}
+	
+	private String slice(int start, int end) {
+		return array != null ? new String(array, start, end-start) : text.subSequence(start, end).toString();
+	}
+	
+	/**
+	 * Start collecting a token, as a slice of the input where possible.
+	 */
+	private void startToken() {
+		tokenScratch.setLength(0);
+		sliceStart = (text != null || array != null) ? EMPTY_SLICE : NOT_SLICED;
+	}
+	
+	/**
+	 * Add the current character to the token.
+	 */
+	private void appendToken(int c) {
+		if (sliceStart == EMPTY_SLICE) {
+			sliceStart = posCurrent;
+			sliceEnd = posCurrent+Character.charCount(c);
+			return;
+		} else if (sliceStart != NOT_SLICED) {
+			if (posCurrent == sliceEnd) {
+				sliceEnd += Character.charCount(c);
+				return;
+			}
+			// a comment was skipped, so the token is no longer a run of the input
+			if (array != null) {
+				tokenScratch.append(array, sliceStart, sliceEnd-sliceStart);
+			} else {
+				tokenScratch.append(text, sliceStart, sliceEnd);
+			}
+			sliceStart = NOT_SLICED;
+		}
+		tokenScratch.appendCodePoint(c);
+	}
+	
+	private String token() {
+		if (sliceStart == EMPTY_SLICE) return "";
+		if (sliceStart != NOT_SLICED) return slice(sliceStart, sliceEnd);
+		return tokenScratch.toString();
+	}
+	
+	private String trimmedToken() {
+		if (sliceStart == EMPTY_SLICE) return "";
+		if (sliceStart != NOT_SLICED) {
+			int start = sliceStart;
+			int end = sliceEnd;
+			while (start < end && Character.isWhitespace(textAt(start))) start++;
+			while (end > start && Character.isWhitespace(textAt(end-1))) end--;
+			return slice(start, end);
+		}
+		return trim(tokenScratch);
+	}
+
 	/**
 	 * Remove leading zeroes from a string for safe parsing as a non-octal value.
 	 * <p>
@@ -281,19 +1185,23 @@ public class ConfigParser {
 	 */
 	public static String trim(String s) {
 		if (s == null) return null;
+		return trim((CharSequence)s);
+	}
+	
+	private static String trim(CharSequence s) {
 		int start = 0;
 		for (; start < s.length(); start++) {
-			if (!Character.isWhitespace(s.codePointAt(start))) {
+			if (!Character.isWhitespace(Character.codePointAt(s, start))) {
 				break;
 			}
 		}
 		int end = s.length();
 		for (; end > 0; end--) {
-			if (!Character.isWhitespace(s.codePointAt(end-1))) {
+			if (!Character.isWhitespace(Character.codePointAt(s, end-1))) {
 				break;
 			}
 		}
-		return s.substring(start, end);
+		return s.subSequence(start, end).toString();
 	}
 
 	/**
@@ -307,21 +1215,21 @@ public class ConfigParser {
 		return allUntilWhitespaceOr();
 	}
 	public String allUntilWhitespaceOr(int... end) throws IOException, ParseException {
-		StringBuilder accumulator = new StringBuilder();
+		startToken();
 		while (true) {
 			int c = tryAdvance();
 			if (c == -1 || Character.isWhitespace(c)) {
 				withdraw();
-				return accumulator.toString();
+				return token();
 			} else {
 				for (int i : end) {
 					if (i == c) {
 						withdraw();
-						return accumulator.toString();
+						return token();
 					}
 				}
 			}
-			accumulator.appendCodePoint(c);
+			appendToken(c);
 		}
 	}
 	
@@ -333,16 +1241,26 @@ public class ConfigParser {
 	 * @see #parse()
 	 */
 	public String allUntil(int... end) throws IOException, ParseException {
-		StringBuilder accumulator = new StringBuilder();
+		return scanUntil(end) ? token() : null;
+	}
+	
+	/**
+	 * As {@link #allUntil(int...)}, but leaves the token to be retrieved with
+	 * token() rather than making a String of it.
+	 * 
+	 * @return false if EOF was reached
+	 */
+	private boolean scanUntil(int[] end) throws IOException, ParseException {
+		startToken();
 		while (true) {
 			int c = tryAdvance();
-			if (c == -1) return null;
+			if (c == -1) return false;
 			for (int i : end) {
 				if (c == i) {
-					return accumulator.toString();
+					return true;
 				}
 			}
-			accumulator.appendCodePoint(c);
+			appendToken(c);
 		}
 	}
 	
@@ -381,7 +1299,7 @@ public class ConfigParser {
 	 * @see #parse()
 	 */
 	public void skipWhitespace() throws IOException, ParseException {
-		while (Character.isWhitespace(tryAdvance())) {}
+		while (skipRun(RUN_WHITESPACE, null) || Character.isWhitespace(tryAdvance())) {}
 		withdraw();
 	}
 	
@@ -391,7 +1309,13 @@ public class ConfigParser {
 	 */
 	public String allWhitespace() throws IOException, ParseException {
 		StringBuilder sb = new StringBuilder();
+		appendWhitespace(sb);
+		return sb.toString();
+	}
+	
+	private void appendWhitespace(StringBuilder sb) throws IOException, ParseException {
 		while (true) {
+			if (skipRun(RUN_WHITESPACE, sb)) continue;
 			int c = advance();
 			if (Character.isWhitespace(c)) {
 				sb.appendCodePoint(c);
@@ -400,7 +1324,6 @@ public class ConfigParser {
 			}
 		}
 		withdraw();
-		return sb.toString();
 	}
 
 	/**
@@ -420,11 +1343,13 @@ public class ConfigParser {
 			throw new AssertionError("Already withdrawn!");
 		}
 		//System.out.println("Withdrawing");
-		idx--;
 		bufNextNext = bufNext;
 		bufNext = bufCurrent;
 		bufCurrent = bufPrevious;
 		bufPrevious = -1;
+		posNextNext = posNext;
+		posNext = posCurrent;
+		posCurrent = posPrevious;
 		return bufCurrent;
 	}
 	
@@ -437,7 +1362,7 @@ public class ConfigParser {
 	 */
 	public int advance() throws IOException, ParseException {
 		int rtrn = tryAdvance();
-		if (rtrn == -1) throw new EOFException("unexpected EOF at "+idx);
+		if (rtrn == -1) throw new EOFException("unexpected EOF at "+location(posCurrent));
 		return rtrn;
 	}
 	/**
@@ -460,11 +1385,15 @@ public class ConfigParser {
 		while (true) {
 			bufPrevious = bufCurrent;
 			bufCurrent = bufNext;
+			posPrevious = posCurrent;
+			posCurrent = posNext;
 			
 			if (bufNextNext == -1) {
+				posNext = textPos;
 				bufNext = read();
 			} else {
 				bufNext = bufNextNext;
+				posNext = posNextNext;
 				bufNextNext = -1;
 			}
 			if (bufCurrent == -1) {
@@ -486,7 +1415,8 @@ public class ConfigParser {
 				} else if (processingBlockComment) {
 					if (firstBlockCommentChar) {
 						if (bufCurrent == '*') {
-							documentationBuilder = new StringBuilder();
+							documentationBuilder = docScratch;
+							documentationBuilder.setLength(0);
 							firstDocCommentChar = true;
 						}
 						firstBlockCommentChar = false;
@@ -503,9 +1433,11 @@ public class ConfigParser {
 					}
 				} else if (bufCurrent == '/') {
 					if (bufNext == '/') {
+						comments++;
 						processingLineComment = true;
 						skip = 1;
 					} else if (bufNext == '*') {
+						comments++;
 						lastDocumentationComment = null;
 						processingBlockComment = true;
 						firstBlockCommentChar = true;
@@ -514,8 +1446,14 @@ public class ConfigParser {
 				}
 			}
 			
-			if (!processingLineComment && !processingBlockComment && skip <= 0) {
-				break;
+			if (skip <= 0) {
+				if (processingLineComment) {
+					skipRun(RUN_LINE_COMMENT, null);
+				} else if (processingBlockComment) {
+					skipRun(RUN_BLOCK_COMMENT, documentationBuilder);
+				} else {
+					break;
+				}
 			}
 		}
 		
@@ -526,6 +1464,99 @@ public class ConfigParser {
 		return bufCurrent;
 	}
 
+	/**
+	 * Moves over a run of chars starting at the next one, exactly as that
+	 * many calls to tryAdvance would: ASCII whitespace, or the body of a
+	 * comment up to the char that could end it. The run is scanned straight
+	 * out of the input, or the Reader's buffer, with a lookup table rather
+	 * than being read a code point at a time. Anything else, such as non-ASCII
+	 * whitespace, surrogates, or the end of the Reader's buffer, ends the run
+	 * and is left to the slow path.
+	 * 
+	 * @param out where to append the run, or null
+	 * @return false if the next char doesn't start a run
+	 */
+	private boolean skipRun(int kind, StringBuilder out) throws IOException, ParseException {
+		if (bufNextNext != -1 || !inRun(kind, bufNext)) return false;
+		// bufNext is a single char, so it's the one just before textPos
+		int start = textPos;
+		int end = start;
+		char[] buf;
+		int off;
+		int limit;
+		if (array != null) {
+			buf = array;
+			off = 0;
+			limit = textEnd;
+		} else if (text != null) {
+			buf = null;
+			off = 0;
+			limit = textEnd;
+		} else {
+			buf = chars;
+			off = charsPos-textPos;
+			limit = textPos+charsLen-charsPos;
+		}
+		if (buf != null) {
+			while (end < limit) {
+				char c = buf[end+off];
+				if (!inRun(kind, c)) break;
+				end++;
+				if (c == '\n') line(end);
+			}
+		} else {
+			while (end < limit) {
+				char c = text.charAt(end);
+				if (!inRun(kind, c)) break;
+				end++;
+				if (c == '\n') line(end);
+			}
+		}
+		if (out != null) {
+			out.append((char)bufNext);
+			if (buf != null) {
+				out.append(buf, start+off, end-start);
+			} else {
+				out.append(text, start, end);
+			}
+		}
+		if (capturing > 0 && array == null && text == null) {
+			capture.append(buf, start+off, end-start);
+		}
+		codePoints += end-start;
+		if (end == start) {
+			bufPrevious = bufCurrent;
+			posPrevious = posCurrent;
+			bufCurrent = bufNext;
+			posCurrent = posNext;
+		} else {
+			bufPrevious = end-start == 1 ? bufNext : (buf != null ? buf[end-2+off] : text.charAt(end-2));
+			posPrevious = end-2;
+			bufCurrent = buf != null ? buf[end-1+off] : text.charAt(end-1);
+			posCurrent = end-1;
+		}
+		if (array == null && text == null) {
+			charsPos += end-start;
+		}
+		textPos = end;
+		posNext = textPos;
+		bufNext = read();
+		return true;
+	}
+	
+	private static boolean inRun(int kind, int c) {
+		if (c < 128) return c >= 0 && (RUN_TABLE[c] & kind) != 0;
+		return kind != RUN_WHITESPACE && c <= 0xFFFF && !Character.isSurrogate((char)c);
+	}
+	
+	/**
+	 * Record that a line starts at the given position.
+	 */
+	private void line(int pos) {
+		if (lineCount == lineStarts.length) lineStarts = Arrays.copyOf(lineStarts, lineCount*2);
+		lineStarts[lineCount++] = pos;
+	}
+
 	/**
 	 * Reads a character from the underlying stream, automatically combining
 	 * surrogate pairs.
@@ -534,23 +1565,46 @@ public class ConfigParser {
 	 * @see #parse()
 	 */
 	public int read() throws IOException, ParseException {
-		int a = src.read();
+		int a = readChar();
 		if (a == -1) {
 			return -1;
 		} else {
-			idx++;
+			codePoints++;
+			if (a == '\n') line(textPos);
 			if (Character.isHighSurrogate((char)a)) {
-				int b = src.read();
+				int b = readChar();
 				if (b == -1) throw new EOFException("EOF while reading second half of surrogate pair");
-				idx++;
 				if (Character.isSurrogatePair((char)a, (char)b)) {
 					return Character.toCodePoint((char)a, (char)b);
 				} else {
-					throw new ParseException("invalid surrogate pair", idx);
+					throw error("invalid surrogate pair", textPos-2);
 				}
 			} else {
 				return a;
 			}
 		}
 	}
+	
+	private int readChar() throws IOException {
+		if (array != null) {
+			return textPos < textEnd ? array[textPos++] : -1;
+		}
+		if (text != null) {
+			return textPos < textEnd ? text.charAt(textPos++) : -1;
+		}
+		if (charsPos == charsLen) {
+			if (chars == null) chars = new char[BUFFER_SIZE];
+			int n;
+			do {
+				n = src.read(chars, 0, chars.length);
+			} while (n == 0);
+			if (n == -1) return -1;
+			charsPos = 0;
+			charsLen = n;
+		}
+		textPos++;
+		char c = chars[charsPos++];
+		if (capturing > 0) capture.append(c);
+		return c;
+	}
 }
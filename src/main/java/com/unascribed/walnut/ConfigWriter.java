@@ -0,0 +1,254 @@
+package com.unascribed.walnut;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Keeps a config saved to a file as it changes, coalescing bursts of
+ * changes into single writes.
+ * <p>
+ * The first change after a write schedules the next one, a fixed delay
+ * later; every change made before it runs is saved by that one write. So
+ * however many changes are made, the file is written at most once per
+ * delay, and no change waits much more than the delay to be written. Writes
+ * are made as by {@link WalnutConfig#save(File, SerializationStyle)}, and so
+ * are durable and atomic.
+ * <p>
+ * Changes must be made through the writer, which is thread-safe. Each
+ * write saves a copy-on-write snapshot of the config, taken in constant
+ * time, so changes are never held up by the file being written. If a
+ * background write fails, the changes stay pending and the write is retried,
+ * after the delay at first and then backing off up to a minute, until it
+ * succeeds; the failure is kept, and thrown by the next {@link #flush()} or
+ * {@link #close()} even if a retry has succeeded since.
+ *
+ * @since 0.0.1
+ */
+public final class ConfigWriter implements Closeable {
+	private static final long MIN_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+	private static final long MAX_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+	private final WalnutConfig config;
+	private final File file;
+	private final SerializationStyle style;
+	private final long delayNanos;
+	private final ScheduledExecutorService executor;
+	private final boolean ownsExecutor;
+
+	/**
+	 * Guards the fields below, and the config.
+	 */
+	private final Object lock = new Object();
+	private boolean dirty;
+	private boolean scheduled;
+	private boolean closed;
+	/**
+	 * The first write failure that flush or close hasn't thrown yet.
+	 */
+	private IOException failure;
+	/**
+	 * How long to wait before retrying a failed write; 0 after a success.
+	 */
+	private long retryNanos;
+	private long writes;
+
+	/**
+	 * Held while writing, so snapshots are written in the order they were
+	 * taken.
+	 */
+	private final Object writeLock = new Object();
+
+	/**
+	 * @param config the config to change and save; it must not be changed
+	 * 				other than through this writer
+	 * @param file the file to save it to
+	 * @param style a definition of how to style the file
+	 * @param delay how long to wait after a change before writing it, so that
+	 * 				further changes can be written at the same time
+	 */
+	public ConfigWriter(WalnutConfig config, File file, SerializationStyle style, long delay, TimeUnit unit) {
+		this(config, file, style, delay, unit, null);
+	}
+
+	/**
+	 * @param executor the executor to write on, or null to use a thread of
+	 * 				this writer's own; an executor given here is not shut
+	 * 				down when this writer is closed
+	 * @see #ConfigWriter(WalnutConfig, File, SerializationStyle, long, TimeUnit)
+	 */
+	public ConfigWriter(WalnutConfig config, File file, SerializationStyle style, long delay, TimeUnit unit, ScheduledExecutorService executor) {
+		if (config == null) throw new IllegalArgumentException("config cannot be null");
+		if (file == null) throw new IllegalArgumentException("file cannot be null");
+		if (style == null) throw new IllegalArgumentException("style cannot be null");
+		if (delay < 0) throw new IllegalArgumentException("delay cannot be negative");
+		this.config = config;
+		this.file = file;
+		this.style = style;
+		this.delayNanos = unit.toNanos(delay);
+		if (executor == null) {
+			this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "Walnut writer for "+file.getName());
+				t.setDaemon(true);
+				return t;
+			});
+			this.ownsExecutor = true;
+		} else {
+			this.executor = executor;
+			this.ownsExecutor = false;
+		}
+	}
+
+	public void putString(String key, String value) { synchronized (lock) { check(); config.putString(key, value); changed(); } }
+	public void putInt(String key, int value) { synchronized (lock) { check(); config.putInt(key, value); changed(); } }
+	public void putLong(String key, long value) { synchronized (lock) { check(); config.putLong(key, value); changed(); } }
+	public void putDouble(String key, double value) { synchronized (lock) { check(); config.putDouble(key, value); changed(); } }
+	public void putBoolean(String key, boolean value) { synchronized (lock) { check(); config.putBoolean(key, value); changed(); } }
+	public void putNull(String key) { synchronized (lock) { check(); config.putNull(key); changed(); } }
+
+	/**
+	 * Puts any value at a dotted path. Sections are copied, so later changes
+	 * to them aren't seen by the writer.
+	 */
+	public void put(String key, Value value) {
+		if (value instanceof OverlayConfig) {
+			throw new IllegalArgumentException("An overlay cannot be put into a config");
+		}
+		synchronized (lock) {
+			check();
+			config._put(key, value instanceof WalnutConfig ? ((WalnutConfig)value).clone() : value);
+			changed();
+		}
+	}
+
+	/**
+	 * @return the value that was removed, or null if there was none
+	 */
+	public Value remove(String key) {
+		synchronized (lock) {
+			check();
+			Value v = config.remove(key);
+			if (v != null) changed();
+			return v;
+		}
+	}
+
+	/**
+	 * @return a copy of the config with every change made so far, which can
+	 * 				be read while further changes are made
+	 */
+	public WalnutConfig snapshot() {
+		synchronized (lock) {
+			return config.clone();
+		}
+	}
+
+	/**
+	 * @return how many times the file has been written
+	 */
+	public long getWriteCount() {
+		synchronized (lock) {
+			return writes;
+		}
+	}
+
+	private void check() {
+		if (closed) throw new IllegalStateException("This writer is closed");
+	}
+
+	private void changed() {
+		dirty = true;
+		if (!scheduled) {
+			scheduled = true;
+			executor.schedule(this::writeScheduled, delayNanos, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void writeScheduled() {
+		try {
+			write(false);
+		} catch (IOException e) {
+			// kept for flush or close to throw
+		}
+	}
+
+	/**
+	 * Write the changes made so far now, rather than waiting for the delay.
+	 *
+	 * @throws IOException if this write, or a background write since the
+	 * 				last flush, failed
+	 */
+	public void flush() throws IOException {
+		write(true);
+	}
+
+	/**
+	 * @param report true to throw, and forget, a failure kept from an earlier
+	 * 				write, as flush and close do
+	 */
+	private void write(boolean report) throws IOException {
+		synchronized (writeLock) {
+			WalnutConfig snapshot;
+			IOException earlier = null;
+			synchronized (lock) {
+				scheduled = false;
+				if (report) {
+					earlier = failure;
+					failure = null;
+				}
+				if (!dirty) {
+					if (earlier != null) throw earlier;
+					return;
+				}
+				dirty = false;
+				snapshot = config.clone();
+			}
+			try {
+				snapshot.save(file, style);
+			} catch (IOException e) {
+				synchronized (lock) {
+					// leave the changes pending, and retry them in the background
+					dirty = true;
+					if (earlier != null) e.addSuppressed(earlier);
+					if (!report && failure == null) failure = e;
+					retryNanos = retryNanos == 0 ? Math.max(delayNanos, MIN_RETRY_NANOS) : Math.min(retryNanos*2, MAX_RETRY_NANOS);
+					if (!closed && !scheduled) {
+						scheduled = true;
+						executor.schedule(this::writeScheduled, retryNanos, TimeUnit.NANOSECONDS);
+					}
+				}
+				throw e;
+			}
+			synchronized (lock) {
+				writes++;
+				retryNanos = 0;
+			}
+			if (earlier != null) throw earlier;
+		}
+	}
+
+	/**
+	 * Writes any pending changes, and stops writing in the background.
+	 * Further changes throw IllegalStateException.
+	 *
+	 * @throws IOException if the final write, or an earlier background write
+	 * 				since the last flush, failed
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) return;
+			closed = true;
+		}
+		try {
+			write(true);
+		} finally {
+			if (ownsExecutor) executor.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.unascribed.walnut;
+
+/**
+ * A problem found while parsing in recovering mode, which the parser skipped
+ * past rather than stopping at, or a warning about something that parses
+ * but is likely a mistake.
+ *
+ * @see ConfigParser#parseRecovering()
+ * @since 0.0.1
+ */
+public final class Diagnostic {
+	
+	public enum Severity {
+		/**
+		 * Something that a strict parse would have failed on.
+		 */
+		ERROR,
+		/**
+		 * Something that parses, but is likely a mistake or breaks a style rule.
+		 */
+		WARNING,
+	}
+	
+	private final Severity severity;
+	private final String source;
+	private final String message;
+	private final int offset;
+	private final int line;
+	private final int column;
+
+	public Diagnostic(String source, String message, int offset, int line, int column) {
+		this(Severity.ERROR, source, message, offset, line, column);
+	}
+
+	public Diagnostic(Severity severity, String source, String message, int offset, int line, int column) {
+		this.severity = severity;
+		this.source = source;
+		this.message = message;
+		this.offset = offset;
+		this.line = line;
+		this.column = column;
+	}
+
+	public Severity getSeverity() {
+		return severity;
+	}
+
+	/**
+	 * @return the description of the source passed to the parser, or null
+	 */
+	public String getSource() {
+		return source;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * @return the offset of the problem, in chars from the start of the input
+	 */
+	public int getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the 1-based line of the problem
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the 1-based column of the problem, in chars
+	 */
+	public int getColumn() {
+		return column;
+	}
+
+	/**
+	 * @return the diagnostic in the form {@code source:line:column: message},
+	 * 				as many compilers print them, with warnings marked as such
+	 */
+	@Override
+	public String toString() {
+		return (source == null ? "" : source+":")+line+":"+column+": "+(severity == Severity.WARNING ? "warning: " : "")+message;
+	}
+}
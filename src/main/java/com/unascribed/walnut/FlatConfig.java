@@ -0,0 +1,270 @@
+package com.unascribed.walnut;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Every value in a config, keyed by its full dotted path, such as
+ * {@code a.b.c}, in sorted order.
+ * <p>
+ * Sections themselves are not included, only the values in them, so an empty
+ * section has no entries. Arrays are values like any other. The paths are
+ * kept in one sorted array, so lookups are a binary search, and
+ * {@link #subMap(String, String) subMaps} and {@link #withPrefix(String)
+ * prefixes} are views of a range of it, created in logarithmic time without
+ * copying.
+ * <p>
+ * A FlatConfig is immutable, and doesn't reflect changes made to the config
+ * after it was created.
+ *
+ * @see WalnutConfig#flatten()
+ * @since 0.0.1
+ */
+public final class FlatConfig extends AbstractMap<String, Value> implements SortedMap<String, Value> {
+	private static final Comparator<Map.Entry<String, Value>> BY_PATH = new Comparator<Map.Entry<String, Value>>() {
+		@Override
+		public int compare(Map.Entry<String, Value> a, Map.Entry<String, Value> b) {
+			return a.getKey().compareTo(b.getKey());
+		}
+	};
+
+	private final Map.Entry<String, Value>[] entries;
+	private final int from;
+	private final int to;
+	/**
+	 * The bounds this view was created with, for range checks; null if
+	 * unbounded.
+	 */
+	private final String fromKey;
+	private final String toKey;
+
+	/**
+	 * The sections the entries were collected from, and their modification
+	 * counts at the time, so a cached index can tell if it's stale.
+	 */
+	private final WalnutConfig[] sections;
+	private final int[] modCounts;
+
+	private Set<Map.Entry<String, Value>> entrySet;
+
+	private FlatConfig(Map.Entry<String, Value>[] entries, int from, int to, String fromKey, String toKey,
+			WalnutConfig[] sections, int[] modCounts) {
+		this.entries = entries;
+		this.from = from;
+		this.to = to;
+		this.fromKey = fromKey;
+		this.toKey = toKey;
+		this.sections = sections;
+		this.modCounts = modCounts;
+	}
+
+	/**
+	 * Collect every value in a config. Sections are walked from a worklist
+	 * rather than by recursing, so configs of any depth can be flattened.
+	 */
+	static FlatConfig of(WalnutConfig conf) {
+		List<Map.Entry<String, Value>> out = new ArrayList<Map.Entry<String, Value>>();
+		List<WalnutConfig> sections = new ArrayList<WalnutConfig>();
+		ArrayDeque<WalnutConfig> pending = new ArrayDeque<WalnutConfig>();
+		ArrayDeque<String> prefixes = new ArrayDeque<String>();
+		pending.push(conf);
+		prefixes.push("");
+		while (!pending.isEmpty()) {
+			WalnutConfig section = pending.pop();
+			String prefix = prefixes.pop();
+			sections.add(section);
+			for (Map.Entry<Key, Value> en : section.contents().entrySet()) {
+				Value v = en.getValue();
+				if (v == null) continue;
+				String path = prefix+en.getKey().getKey();
+				if (v instanceof WalnutConfig) {
+					pending.push((WalnutConfig)v);
+					prefixes.push(path+".");
+				} else {
+					out.add(new AbstractMap.SimpleImmutableEntry<String, Value>(path, v));
+				}
+			}
+		}
+		Map.Entry<String, Value>[] entries = out.toArray(newEntryArray(out.size()));
+		Arrays.sort(entries, BY_PATH);
+		// a key containing a dot can collide with a path through sections
+		int n = 0;
+		for (int i = 0; i < entries.length; i++) {
+			if (n == 0 || !entries[n-1].getKey().equals(entries[i].getKey())) {
+				entries[n++] = entries[i];
+			}
+		}
+		if (n < entries.length) entries = Arrays.copyOf(entries, n);
+		int[] modCounts = new int[sections.size()];
+		for (int i = 0; i < modCounts.length; i++) {
+			modCounts[i] = sections.get(i).modCount();
+		}
+		return new FlatConfig(entries, 0, entries.length, null, null,
+				sections.toArray(new WalnutConfig[sections.size()]), modCounts);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map.Entry<String, Value>[] newEntryArray(int size) {
+		// generic arrays can't be created directly; the erasure is the same
+		return (Map.Entry<String, Value>[])new Map.Entry<?, ?>[size];
+	}
+
+	/**
+	 * @return true if no section this was collected from has changed since
+	 */
+	boolean isCurrent() {
+		for (int i = 0; i < sections.length; i++) {
+			int c = sections[i].modCount();
+			if (c == -1 || c != modCounts[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @param section a dotted path to a section, or the empty string for
+	 * 				the root
+	 * @return every value in the section at the given path, keyed by full
+	 * 				path, e.g. {@code withPrefix("services")} contains
+	 * 				{@code services.web.port}
+	 * @since 0.0.1
+	 */
+	public FlatConfig withPrefix(String section) {
+		if (section.isEmpty()) return this;
+		// '/' sorts right after '.', so this range is exactly the paths starting with "section."
+		return subMap(section+".", section+"/");
+	}
+
+	private int search(String key, int lo, int hi) {
+		hi--;
+		while (lo <= hi) {
+			int mid = (lo+hi) >>> 1;
+			int c = entries[mid].getKey().compareTo(key);
+			if (c < 0) {
+				lo = mid+1;
+			} else if (c > 0) {
+				hi = mid-1;
+			} else {
+				return mid;
+			}
+		}
+		return -(lo+1);
+	}
+
+	/**
+	 * @return the index of the first entry not less than the key
+	 */
+	private int ceiling(String key) {
+		int i = search(key, from, to);
+		return i < 0 ? -(i+1) : i;
+	}
+
+	private boolean inRange(String key) {
+		return (fromKey == null || key.compareTo(fromKey) >= 0) && (toKey == null || key.compareTo(toKey) < 0);
+	}
+
+	private boolean inClosedRange(String key) {
+		return (fromKey == null || key.compareTo(fromKey) >= 0) && (toKey == null || key.compareTo(toKey) <= 0);
+	}
+
+	@Override
+	public Value get(Object key) {
+		if (!(key instanceof String)) return null;
+		int i = search((String)key, from, to);
+		return i < 0 ? null : entries[i].getValue();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof String && search((String)key, from, to) >= 0;
+	}
+
+	@Override
+	public int size() {
+		return to-from;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return to == from;
+	}
+
+	@Override
+	public Comparator<? super String> comparator() {
+		return null;
+	}
+
+	@Override
+	public FlatConfig subMap(String fromKey, String toKey) {
+		if (fromKey.compareTo(toKey) > 0) throw new IllegalArgumentException("fromKey > toKey");
+		if (!inClosedRange(fromKey) || !inClosedRange(toKey)) throw new IllegalArgumentException("key out of range");
+		return new FlatConfig(entries, ceiling(fromKey), ceiling(toKey), fromKey, toKey, sections, modCounts);
+	}
+
+	@Override
+	public FlatConfig headMap(String toKey) {
+		if (!inClosedRange(toKey)) throw new IllegalArgumentException("key out of range");
+		return new FlatConfig(entries, from, ceiling(toKey), fromKey, toKey, sections, modCounts);
+	}
+
+	@Override
+	public FlatConfig tailMap(String fromKey) {
+		if (!inRange(fromKey)) throw new IllegalArgumentException("key out of range");
+		return new FlatConfig(entries, ceiling(fromKey), to, fromKey, toKey, sections, modCounts);
+	}
+
+	@Override
+	public String firstKey() {
+		if (from == to) throw new NoSuchElementException();
+		return entries[from].getKey();
+	}
+
+	@Override
+	public String lastKey() {
+		if (from == to) throw new NoSuchElementException();
+		return entries[to-1].getKey();
+	}
+
+	@Override
+	public Set<Map.Entry<String, Value>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<String, Value>>() {
+				@Override
+				public Iterator<Map.Entry<String, Value>> iterator() {
+					return new Iterator<Map.Entry<String, Value>>() {
+						private int i = from;
+
+						@Override
+						public boolean hasNext() {
+							return i < to;
+						}
+
+						@Override
+						public Map.Entry<String, Value> next() {
+							if (i >= to) throw new NoSuchElementException();
+							return entries[i++];
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return to-from;
+				}
+			};
+		}
+		return entrySet;
+	}
+
+}
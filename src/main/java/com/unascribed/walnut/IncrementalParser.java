@@ -0,0 +1,371 @@
+package com.unascribed.walnut;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Reparses an edited config, reusing every pair whose source text was not
+ * touched by the edit.
+ * <p>
+ * The edit is found by comparing the common prefix and suffix of the old and
+ * new sources. The old source is then split into pairs at each level with a
+ * lightweight structural scan that builds no values, and only the pairs that
+ * overlap the edit are parsed again. If the edit falls entirely within the
+ * body of a section, that section is handled the same way, recursively.
+ * Untouched sections are carried over as copy-on-write clones.
+ * Anything the scan can't prove safe falls back to a full parse.
+ *
+ * @see WalnutConfig#reparse(WalnutConfig, String, String)
+ */
+final class IncrementalParser {
+	private static final int ARRAY = 0;
+	private static final int SECTION = 1;
+
+	/**
+	 * Thrown when an incremental reparse is not possible, and the whole
+	 * source must be parsed again.
+	 */
+	private static final class FallbackException extends Exception {
+		private static final long serialVersionUID = 1L;
+		public FallbackException() {
+			super(null, null, false, false);
+		}
+	}
+
+	private static final FallbackException FALLBACK = new FallbackException();
+
+	/**
+	 * A pair at one level of a config. A pair's span starts where the previous
+	 * one ended, so it includes any leading whitespace and comments, such as
+	 * its documentation comment.
+	 */
+	private static final class Entry {
+		String key;
+		int start;
+		int end;
+		int bodyStart = -1;
+		int bodyEnd = -1;
+		boolean token;
+	}
+
+	private final String oldSrc;
+	private final String newSrc;
+	private final int delta;
+	private final int changeStart;
+	private final int changeEnd;
+
+	private IncrementalParser(String oldSrc, String newSrc) {
+		this.oldSrc = oldSrc;
+		this.newSrc = newSrc;
+		this.delta = newSrc.length()-oldSrc.length();
+		int max = Math.min(oldSrc.length(), newSrc.length());
+		int prefix = 0;
+		while (prefix < max && oldSrc.charAt(prefix) == newSrc.charAt(prefix)) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < max-prefix && oldSrc.charAt(oldSrc.length()-suffix-1) == newSrc.charAt(newSrc.length()-suffix-1)) {
+			suffix++;
+		}
+		this.changeStart = prefix;
+		this.changeEnd = oldSrc.length()-suffix;
+	}
+
+	public static WalnutConfig reparse(WalnutConfig previous, String oldSrc, String newSrc) throws ParseException {
+		if (oldSrc.equals(newSrc)) return previous;
+		IncrementalParser ip = new IncrementalParser(oldSrc, newSrc);
+		try {
+			return ip.reparseLevel(previous, 0, oldSrc.length(), false);
+		} catch (FallbackException e) {
+			try {
+				return parse(newSrc, 0, newSrc.length());
+			} catch (IOException e1) {
+				throw (ParseException)new ParseException("Unexpected IOException while parsing string", 0).initCause(e1);
+			}
+		}
+	}
+
+	private static WalnutConfig parse(String src, int start, int end) throws IOException, ParseException {
+		ConfigParser p = ConfigParser.obtain().reset(src, start, end, null, null);
+		try {
+			return p.prepare().parse();
+		} finally {
+			p.release();
+		}
+	}
+
+	private WalnutConfig reparseLevel(WalnutConfig old, int from, int to, boolean section) throws FallbackException {
+		List<Entry> entries = scanLevel(oldSrc, from, to, section);
+		int n = entries.size();
+		Set<String> keys = new HashSet<String>();
+		int first = -1;
+		int last = -1;
+		for (int i = 0; i < n; i++) {
+			Entry e = entries.get(i);
+			if (!keys.add(e.key)) {
+				// duplicate keys make the result depend on order, which we don't track
+				throw FALLBACK;
+			}
+			if (e.start <= changeEnd && e.end >= changeStart) {
+				if (first == -1) first = i;
+				last = i;
+			}
+		}
+		if (first != -1 && first == last) {
+			Entry e = entries.get(first);
+			if (e.bodyStart != -1 && changeStart >= e.bodyStart && changeEnd <= e.bodyEnd) {
+				Value v = old.contents().get(new Key(e.key, null));
+				if (v instanceof WalnutConfig) {
+					WalnutConfig out = old.copyLevel();
+					// put keeps the existing Key, and with it the documentation
+					out.map.put(new Key(e.key, null), reparseLevel((WalnutConfig)v, e.bodyStart, e.bodyEnd, true));
+					return out;
+				}
+			}
+		}
+		int regionStart;
+		int regionEnd;
+		if (first == -1) {
+			// the edit is after the last pair
+			regionStart = n == 0 ? from : entries.get(n-1).end;
+			regionEnd = to;
+		} else {
+			regionStart = entries.get(first).start;
+			regionEnd = last == n-1 ? to : entries.get(last).end;
+		}
+		int newRegionEnd = regionEnd+delta;
+		List<Entry> replacements = scanLevel(newSrc, regionStart, newRegionEnd, section);
+		if (!replacements.isEmpty()) {
+			Entry e = replacements.get(replacements.size()-1);
+			if (e.token && e.end == newRegionEnd && !isTokenEnd(newSrc, newRegionEnd)) {
+				// the token would run on into the unchanged text following it
+				throw FALLBACK;
+			}
+		}
+		WalnutConfig parsed;
+		try {
+			parsed = parse(newSrc, regionStart, newRegionEnd);
+		} catch (IOException e) {
+			throw FALLBACK;
+		} catch (ParseException e) {
+			throw FALLBACK;
+		}
+		WalnutConfig out = old.copyLevel();
+		if (first != -1) {
+			for (int i = first; i <= last; i++) {
+				out.map.remove(new Key(entries.get(i).key, null));
+			}
+		}
+		for (Key k : parsed.map.keySet()) {
+			if (out.map.containsKey(k)) throw FALLBACK;
+		}
+		out.map.putAll(parsed.map);
+		return out;
+	}
+
+	////////// SCANNER
+
+	private static boolean isTokenEnd(String src, int i) throws FallbackException {
+		if (i >= src.length()) return true;
+		char c = src.charAt(i);
+		return c == ',' || c == '}' || c == ']' || Character.isWhitespace(c) || isCommentStart(src, i, src.length());
+	}
+
+	private static boolean isCommentStart(String src, int i, int end) {
+		if (i+1 >= end || src.charAt(i) != '/') return false;
+		char n = src.charAt(i+1);
+		return n == '/' || n == '*';
+	}
+
+	/**
+	 * @return the index after the comment starting at i; for a line comment, this
+	 * 		is the index of the newline that ends it
+	 */
+	private static int skipComment(String src, int i, int end) throws FallbackException {
+		int close;
+		if (src.charAt(i+1) == '/') {
+			close = src.indexOf('\n', i+2);
+		} else {
+			close = src.indexOf("*/", i+2);
+			if (close != -1) close += 2;
+		}
+		if (close == -1 || close > end) {
+			// a comment running past the end of the range would swallow the text after it
+			if (end == src.length()) return end;
+			throw FALLBACK;
+		}
+		return close;
+	}
+
+	private static int skipWhitespace(String src, int i, int end) throws FallbackException {
+		while (i < end) {
+			if (Character.isWhitespace(src.charAt(i))) {
+				i++;
+			} else if (isCommentStart(src, i, end)) {
+				i = skipComment(src, i, end);
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Split the pairs in the given range, which must not include the braces of
+	 * the section it is in.
+	 */
+	private static List<Entry> scanLevel(String src, int from, int to, boolean section) throws FallbackException {
+		List<Entry> li = new ArrayList<Entry>();
+		int i = from;
+		while (true) {
+			int start = i;
+			i = skipWhitespace(src, i, to);
+			if (i >= to) break;
+			// a stray brace would close the section early
+			if (section && src.charAt(i) == '}') throw FALLBACK;
+			Entry e = new Entry();
+			e.start = start;
+			StringBuilder key = new StringBuilder();
+			i = scanKey(src, i, to, key);
+			e.key = ConfigParser.trim(key.toString());
+			i = skipWhitespace(src, i, to);
+			char c = i < to ? src.charAt(i) : 0;
+			e.token = (c != '"' && c != '(' && c != '[' && c != '{');
+			if (c == '{') e.bodyStart = i+1;
+			i = scanValue(src, i, to, e);
+			e.end = i;
+			li.add(e);
+		}
+		return li;
+	}
+
+	/**
+	 * @return the index the value starts at; after the separator for colons
+	 * 		and equals signs, or at the opening character otherwise
+	 */
+	private static int scanKey(String src, int i, int end, StringBuilder key) throws FallbackException {
+		while (i < end) {
+			char c = src.charAt(i);
+			if (c == ':' || c == '=') {
+				return i+1;
+			} else if (c == '{' || c == '(' || c == '[') {
+				return i;
+			} else if (isCommentStart(src, i, end)) {
+				i = skipComment(src, i, end);
+			} else {
+				key.append(c);
+				i++;
+			}
+		}
+		throw FALLBACK;
+	}
+
+	/**
+	 * Skips over a value, including any arrays and sections nested within it.
+	 * Nesting is tracked with an explicit stack, so arbitrarily deep input
+	 * doesn't recurse.
+	 */
+	private static int scanValue(String src, int i, int end, Entry e) throws FallbackException {
+		int[] stack = new int[8];
+		int depth = 0;
+		while (true) {
+			i = skipWhitespace(src, i, end);
+			if (i >= end) throw FALLBACK;
+			char c = src.charAt(i);
+			if (c == '"' || c == '(') {
+				i = scanString(src, i, end);
+			} else if (c == '[' || c == '{') {
+				if (depth == stack.length) {
+					int[] nw = new int[depth*2];
+					System.arraycopy(stack, 0, nw, 0, depth);
+					stack = nw;
+				}
+				stack[depth++] = (c == '[' ? ARRAY : SECTION);
+				i++;
+				if (c == '[') {
+					i = skipWhitespace(src, i, end);
+					if (i < end && src.charAt(i) == ']') {
+						depth--;
+						i++;
+					} else {
+						continue;
+					}
+				}
+			} else {
+				i = scanToken(src, i, end);
+			}
+			// find the next value, closing containers as we go
+			while (depth > 0) {
+				i = skipWhitespace(src, i, end);
+				if (i >= end) throw FALLBACK;
+				char n = src.charAt(i);
+				if (stack[depth-1] == ARRAY) {
+					if (n == ']') {
+						depth--;
+						i++;
+					} else if (n == ',') {
+						i = skipWhitespace(src, i+1, end);
+						if (i < end && src.charAt(i) == ']') {
+							depth--;
+							i++;
+						} else {
+							break;
+						}
+					} else {
+						throw FALLBACK;
+					}
+				} else {
+					if (n == '}') {
+						depth--;
+						if (depth == 0 && e.bodyStart != -1) e.bodyEnd = i;
+						i++;
+					} else {
+						i = scanKey(src, i, end, new StringBuilder());
+						break;
+					}
+				}
+			}
+			if (depth == 0) return i;
+		}
+	}
+
+	private static int scanString(String src, int i, int end) throws FallbackException {
+		boolean spanning = src.charAt(i) == '(';
+		char endChar = spanning ? ')' : '"';
+		i++;
+		while (i < end) {
+			char c = src.charAt(i);
+			if (c == '\\') {
+				i += 2;
+			} else if (c == endChar) {
+				return i+1;
+			} else if (c == '\n' && !spanning) {
+				throw FALLBACK;
+			} else {
+				i++;
+			}
+		}
+		throw FALLBACK;
+	}
+
+	private static int scanToken(String src, int i, int end) throws FallbackException {
+		while (i < end) {
+			char c = src.charAt(i);
+			if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+				break;
+			} else if (isCommentStart(src, i, end)) {
+				i = skipComment(src, i, end);
+			} else {
+				i++;
+			}
+		}
+		return i;
+	}
+
+}
@@ -3,10 +3,18 @@ package com.unascribed.walnut;
 public class Key {
 	protected String key;
 	protected String documentation;
+	protected SourceSpan span;
+	protected SourceSpan valueSpan;
 	public Key(String key, String documentation) {
 		this.key = key;
 		this.documentation = documentation;
 	}
+	Key(String key, String documentation, SourceSpan span, SourceSpan valueSpan) {
+		this.key = key;
+		this.documentation = documentation;
+		this.span = span;
+		this.valueSpan = valueSpan;
+	}
 	public boolean hasDocumentation() {
 		return documentation != null;
 	}
@@ -16,6 +24,23 @@ public class Key {
 	public String getKey() {
 		return key;
 	}
+	/**
+	 * @return where this key was in the text it was parsed from, or null if
+	 * 				spans were not tracked
+	 * @see ConfigParser#trackSpans(boolean)
+	 */
+	public SourceSpan getSpan() {
+		return span;
+	}
+	/**
+	 * @return where this key's value was in the text it was parsed from, or
+	 * 				null if spans were not tracked. This is not updated if the
+	 * 				value is replaced after parsing.
+	 * @see ConfigParser#trackSpans(boolean)
+	 */
+	public SourceSpan getValueSpan() {
+		return valueSpan;
+	}
 	@Override
 	public String toString() {
 		return key;
@@ -0,0 +1,355 @@
+package com.unascribed.walnut;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Checks Walnut files for errors, duplicate keys, and deviations from a
+ * {@link SerializationStyle}, reporting everything it finds rather than
+ * stopping at the first problem.
+ * <p>
+ * This can also be run from the command line, to check whole trees of files
+ * in parallel; see {@link #run(String[], PrintStream, PrintStream)}.
+ *
+ * @since 0.0.1
+ */
+public final class Linter {
+
+	private static final Comparator<Diagnostic> BY_OFFSET = new Comparator<Diagnostic>() {
+		@Override
+		public int compare(Diagnostic a, Diagnostic b) {
+			return Integer.compare(a.getOffset(), b.getOffset());
+		}
+	};
+
+	private final SerializationStyle style;
+
+	/**
+	 * @param style the style files are expected to follow, or null to only
+	 * 				check for errors and duplicate keys
+	 */
+	public Linter(SerializationStyle style) {
+		this.style = style;
+	}
+
+	/**
+	 * Checks a UTF-8 file.
+	 *
+	 * @param file the file to check
+	 * @return everything found, in the order it appears in the file
+	 * @throws IOException if the file cannot be read
+	 * @since 0.0.1
+	 */
+	public List<Diagnostic> lint(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		return lint(new String(bytes, StandardCharsets.UTF_8), file.getPath());
+	}
+
+	/**
+	 * Checks some text.
+	 *
+	 * @param text the text to check
+	 * @param source a description of where the text came from, to be used in
+	 * 				diagnostics, or null
+	 * @return everything found, in the order it appears in the text
+	 * @since 0.0.1
+	 */
+	public List<Diagnostic> lint(CharSequence text, String source) {
+		ConfigParser p = ConfigParser.obtain().reset(text, null, source);
+		ParseResult result;
+		try {
+			result = p.trackSpans(true).parseRecovering(true);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		} finally {
+			p.release();
+		}
+		List<Diagnostic> out = new ArrayList<Diagnostic>(result.getDiagnostics());
+		if (style != null) {
+			checkStyle(result.getConfig(), text, source, "", out);
+		}
+		Collections.sort(out, BY_OFFSET);
+		return out;
+	}
+
+	private void checkStyle(WalnutConfig conf, CharSequence text, String source, String indent, List<Diagnostic> out) {
+		List<Map.Entry<Key, Value>> entries = new ArrayList<Map.Entry<Key, Value>>(conf.contents().entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<Key, Value>>() {
+			@Override
+			public int compare(Map.Entry<Key, Value> a, Map.Entry<Key, Value> b) {
+				return Integer.compare(a.getKey().getSpan().getStartOffset(), b.getKey().getSpan().getStartOffset());
+			}
+		});
+		int alignColumn = -1;
+		for (Map.Entry<Key, Value> en : entries) {
+			SourceSpan ks = en.getKey().getSpan();
+			SourceSpan vs = en.getKey().getValueSpan();
+			boolean section = en.getValue() instanceof WalnutConfig && text.charAt(vs.getStartOffset()) == '{';
+			int lineStart = ks.getStartOffset()-(ks.getStartColumn()-1);
+			if (isWhitespace(text, lineStart, ks.getStartOffset())) {
+				String actual = text.subSequence(lineStart, ks.getStartOffset()).toString();
+				if (!actual.equals(indent)) {
+					warn(out, source, ks, "indented with "+describeIndent(actual)+", expected "+describeIndent(indent));
+				}
+			}
+			String between = text.subSequence(ks.getEndOffset(), vs.getStartOffset()).toString();
+			// values on the next line, and comments between key and value, are left alone
+			if (between.indexOf('\n') == -1 && between.indexOf('/') == -1) {
+				String sep = between.trim();
+				String expected = section && style.omitsSeparatorsForSections() ? "" : style.usesColons() ? ":" : "=";
+				if (!sep.equals(expected)) {
+					if (expected.isEmpty()) {
+						warn(out, source, ks, "expected no separator before a section, found '"+sep+"'");
+					} else {
+						warn(out, source, ks, "expected '"+expected+"' between key and value"+(sep.isEmpty() ? "" : ", found '"+sep+"'"));
+					}
+				} else if (style.alignsValues() && !section) {
+					if (alignColumn == -1) {
+						alignColumn = vs.getStartColumn();
+					} else if (vs.getStartColumn() != alignColumn) {
+						warn(out, source, vs, "value is not aligned with the others in its section");
+					}
+				} else {
+					String spaced = expected.isEmpty() ? " " : expected.equals(":") ? ": " : " = ";
+					if (!between.equals(spaced)) {
+						warn(out, source, ks, "expected \""+spaced+"\" between key and value");
+					}
+				}
+			}
+			if (section) {
+				checkStyle((WalnutConfig)en.getValue(), text, source, indent+style.getIndentation(), out);
+			}
+		}
+	}
+
+	private static boolean isWhitespace(CharSequence text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (!Character.isWhitespace(text.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	private static String describeIndent(String indent) {
+		if (indent.isEmpty()) return "nothing";
+		int tabs = 0;
+		int spaces = 0;
+		for (int i = 0; i < indent.length(); i++) {
+			char c = indent.charAt(i);
+			if (c == '\t') tabs++;
+			else if (c == ' ') spaces++;
+		}
+		if (tabs+spaces != indent.length()) return "\""+indent+"\"";
+		String t = tabs == 1 ? "1 tab" : tabs+" tabs";
+		String s = spaces == 1 ? "1 space" : spaces+" spaces";
+		if (spaces == 0) return t;
+		if (tabs == 0) return s;
+		return t+" and "+s;
+	}
+
+	private static void warn(List<Diagnostic> out, String source, SourceSpan at, String message) {
+		out.add(new Diagnostic(Diagnostic.Severity.WARNING, source, message, at.getStartOffset(), at.getStartLine(), at.getStartColumn()));
+	}
+
+	/////////// COMMAND LINE
+
+	public static void main(String[] args) {
+		System.exit(run(args, System.out, System.err));
+	}
+
+	private static void usage(PrintStream err) {
+		err.println("Usage: Linter [options] <file or directory>...");
+		err.println("Checks every .wlnt file given, or found under a directory given.");
+		err.println();
+		err.println("  --style <name>          check against a style, such as colons-tabs or equals-4spaces");
+		err.println("  --align                 with --style, expect values in a section to be aligned");
+		err.println("  --section-separators    with --style, expect separators before sections");
+		err.println("  --threads <n>           number of files to parse at once; defaults to the number of cores");
+		err.println("  --strict                fail on warnings, as well as errors");
+		err.println("  --quiet                 only print the summary");
+	}
+
+	/**
+	 * Runs the linter as from the command line. Files are read and parsed in
+	 * parallel, with only a few files per thread held in memory at once.
+	 * Diagnostics are printed grouped by file, followed by a summary with
+	 * throughput statistics.
+	 *
+	 * @param args the command line arguments; run with none for usage
+	 * @param out where to print diagnostics and the summary
+	 * @param err where to print usage and IO errors
+	 * @return the exit code: 0 if every file passed, 1 if any had errors (or
+	 * 				warnings, with {@code --strict}) or could not be read, and
+	 * 				2 if the arguments were invalid
+	 * @since 0.0.1
+	 */
+	public static int run(String[] args, PrintStream out, PrintStream err) {
+		SerializationStyle style = null;
+		boolean align = false;
+		boolean sectionSeparators = false;
+		boolean strict = false;
+		boolean quiet = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		List<File> roots = new ArrayList<File>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("--style") && i+1 < args.length) {
+				style = styleNamed(args[++i]);
+				if (style == null) {
+					err.println("Unknown style "+args[i]);
+					return 2;
+				}
+			} else if (arg.equals("--threads") && i+1 < args.length) {
+				try {
+					threads = Integer.parseInt(args[++i]);
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if (threads < 1) {
+					err.println("Invalid thread count "+args[i]);
+					return 2;
+				}
+			} else if (arg.equals("--align")) {
+				align = true;
+			} else if (arg.equals("--section-separators")) {
+				sectionSeparators = true;
+			} else if (arg.equals("--strict")) {
+				strict = true;
+			} else if (arg.equals("--quiet")) {
+				quiet = true;
+			} else if (arg.startsWith("--")) {
+				usage(err);
+				return 2;
+			} else {
+				File f = new File(arg);
+				if (!f.exists()) {
+					err.println(arg+": no such file or directory");
+					return 2;
+				}
+				roots.add(f);
+			}
+		}
+		if (roots.isEmpty()) {
+			usage(err);
+			return 2;
+		}
+		if (style != null) {
+			style = style.withAlignValues(align).withOmitSeparatorsForSections(!sectionSeparators);
+		}
+
+		final Linter linter = new Linter(style);
+		final Map<String, List<Diagnostic>> reports = new ConcurrentSkipListMap<String, List<Diagnostic>>();
+		final Map<String, String> failures = new ConcurrentSkipListMap<String, String>();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicInteger files = new AtomicInteger();
+		// bounds how many files are read ahead of the parsers, and so held in memory
+		final Semaphore inFlight = new Semaphore(threads*2);
+		final ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "Walnut linter");
+			t.setDaemon(true);
+			return t;
+		});
+		long start = System.nanoTime();
+		try {
+			for (File root : roots) {
+				Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+					@Override
+					public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) throws IOException {
+						// files named explicitly are checked whatever their extension
+						if (!path.equals(root.toPath()) && !path.getFileName().toString().endsWith(".wlnt")) {
+							return FileVisitResult.CONTINUE;
+						}
+						inFlight.acquireUninterruptibly();
+						pool.execute(() -> {
+							File f = path.toFile();
+							try {
+								List<Diagnostic> found = linter.lint(f);
+								if (!found.isEmpty()) reports.put(f.getPath(), found);
+								bytes.addAndGet(f.length());
+								files.incrementAndGet();
+							} catch (IOException | RuntimeException e) {
+								failures.put(f.getPath(), String.valueOf(e.getMessage()));
+							} finally {
+								inFlight.release();
+							}
+						});
+						return FileVisitResult.CONTINUE;
+					}
+				});
+			}
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (IOException e) {
+			err.println("Failed to walk files: "+e.getMessage());
+			pool.shutdownNow();
+			return 1;
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+			return 1;
+		}
+		long nanos = System.nanoTime()-start;
+
+		int errors = 0;
+		int warnings = 0;
+		for (List<Diagnostic> found : reports.values()) {
+			for (Diagnostic d : found) {
+				if (d.getSeverity() == Diagnostic.Severity.ERROR) errors++;
+				else warnings++;
+				if (!quiet) out.println(d);
+			}
+		}
+		for (Map.Entry<String, String> en : failures.entrySet()) {
+			err.println(en.getKey()+": cannot be read: "+en.getValue());
+		}
+		double seconds = nanos/1e9;
+		double mib = bytes.get()/(1024.0*1024.0);
+		out.println(String.format(Locale.ROOT, "Checked %d files (%.1f MiB) in %.2fs with %d threads: %.0f files/s, %.1f MiB/s",
+				files.get(), mib, seconds, threads, files.get()/seconds, mib/seconds));
+		out.println(errors+" errors, "+warnings+" warnings in "+reports.size()+" files"
+				+(failures.isEmpty() ? "" : "; "+failures.size()+" files could not be read"));
+		return errors > 0 || !failures.isEmpty() || (strict && warnings > 0) ? 1 : 0;
+	}
+
+	/**
+	 * @return the SerializationStyle constant whose name matches, ignoring
+	 * 				case and with dashes for underscores, or null
+	 */
+	private static SerializationStyle styleNamed(String name) {
+		String constant = name.toUpperCase(Locale.ROOT).replace('-', '_');
+		for (Field f : SerializationStyle.class.getFields()) {
+			if (Modifier.isStatic(f.getModifiers()) && f.getType() == SerializationStyle.class && f.getName().equals(constant)) {
+				try {
+					return (SerializationStyle)f.get(null);
+				} catch (IllegalAccessException e) {
+					throw new AssertionError(e);
+				}
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.unascribed.walnut;
+
+/**
+ * Decides what happens when two config fragments being merged both set the
+ * same path, as in {@link WalnutConfig#fromFiles(java.util.List, MergePolicy)}.
+ * <p>
+ * Sections are always merged key by key, whatever the policy. A conflict is
+ * when two fragments both set a path to something other than a section, or
+ * when one sets it to a section and the other to anything else.
+ *
+ * @since 0.0.1
+ */
+public enum MergePolicy {
+	/**
+	 * The fragment that comes later wins, so more specific fragments, such as
+	 * per-host settings, can be listed after general ones.
+	 */
+	OVERRIDE,
+	/**
+	 * The fragment that comes first wins, and later fragments can only add
+	 * paths that are not set yet.
+	 */
+	KEEP_FIRST,
+	/**
+	 * Conflicts are errors, reported with the path and both fragments that
+	 * set it.
+	 */
+	FAIL,
+}
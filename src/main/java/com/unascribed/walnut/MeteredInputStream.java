@@ -0,0 +1,37 @@
+package com.unascribed.walnut;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from an InputStream, for {@link ConfigMetrics}.
+ */
+final class MeteredInputStream extends FilterInputStream {
+	long bytes;
+	
+	public MeteredInputStream(InputStream in) {
+		super(in);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		int b = super.read();
+		if (b != -1) bytes++;
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		int read = super.read(b, off, len);
+		if (read > 0) bytes += read;
+		return read;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException {
+		long skipped = super.skip(n);
+		bytes += skipped;
+		return skipped;
+	}
+}
@@ -0,0 +1,36 @@
+package com.unascribed.walnut;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Counts the time spent waiting on a Reader, for {@link ConfigMetrics}.
+ */
+final class MeteredReader extends FilterReader {
+	long nanos;
+	
+	public MeteredReader(Reader in) {
+		super(in);
+	}
+	
+	@Override
+	public int read() throws IOException {
+		long start = System.nanoTime();
+		try {
+			return super.read();
+		} finally {
+			nanos += System.nanoTime()-start;
+		}
+	}
+	
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		long start = System.nanoTime();
+		try {
+			return super.read(cbuf, off, len);
+		} finally {
+			nanos += System.nanoTime()-start;
+		}
+	}
+}
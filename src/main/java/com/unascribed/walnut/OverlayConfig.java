@@ -0,0 +1,343 @@
+package com.unascribed.walnut;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.unascribed.walnut.value.NullValue;
+import com.unascribed.walnut.value.Value;
+
+/**
+ * A config that stores only the values put into it, and falls through to a
+ * base config for everything else.
+ * <p>
+ * Overrides are kept in one flat map, keyed by their full path. A bitmask of
+ * the depths that have overrides means a lookup only probes the map at the
+ * depths where something could be found; in the usual case of overriding
+ * leaves, that is a single probe on top of the lookup in the base.
+ * <p>
+ * Sections retrieved from an overlay are themselves overlays over the same
+ * overrides, rooted at the section's path, so writes to them are also kept
+ * out of the base. Removing a path stores a tombstone over it, which hides
+ * the base's value without touching it.
+ * <p>
+ * Putting a value beneath a section that doesn't exist overrides the path
+ * with a new section holding it, as in a plain config. If a section that
+ * overrides are beneath is later removed from the base, it is still implied
+ * by them.
+ *
+ * @see WalnutConfig#overlay(WalnutConfig)
+ */
+final class OverlayConfig extends WalnutConfig {
+
+	/**
+	 * The overrides of a root overlay, shared with every section retrieved
+	 * from it.
+	 */
+	private static final class Overrides {
+		/**
+		 * Overrides a path that has been removed; compared by identity.
+		 */
+		static final Value REMOVED = new NullValue("null");
+		/**
+		 * Stands in for a section that is only implied by overrides beneath
+		 * it; it is always empty, and never handed out.
+		 */
+		static final WalnutConfig IMPLIED = new WalnutConfig();
+
+		final Map<String, Value> map = new HashMap<String, Value>();
+		long depths;
+		/**
+		 * How many overrides in the map, other than tombstones, are beneath
+		 * each path that has any.
+		 */
+		final Map<String, Integer> beneath = new HashMap<String, Integer>();
+
+		void put(String path, Value value) {
+			String a = ancestor(path);
+			if (a != null) {
+				Value section = map.get(a);
+				if (section == REMOVED) {
+					// as in a plain config, putting beneath a removed section creates it anew
+					section = new WalnutConfig();
+					map.put(a, section);
+					count(a, 1);
+				}
+				if (section instanceof WalnutConfig) {
+					// an overridden section holds everything beneath it itself
+					((WalnutConfig)section)._put(path.substring(a.length()+1), value);
+					return;
+				}
+			}
+			putFlat(path, value);
+		}
+
+		void remove(String path) {
+			String a = ancestor(path);
+			if (a != null && map.get(a) instanceof WalnutConfig) {
+				((WalnutConfig)map.get(a)).remove(path.substring(a.length()+1));
+			} else {
+				putFlat(path, REMOVED);
+			}
+		}
+
+		private void putFlat(String path, Value value) {
+			// a new value replaces everything that was put beneath it
+			String sub = path+".";
+			map.entrySet().removeIf(en -> {
+				if (!en.getKey().startsWith(sub)) return false;
+				if (en.getValue() != REMOVED) count(en.getKey(), -1);
+				return true;
+			});
+			Value old = map.put(path, value);
+			if (old != null && old != REMOVED) count(path, -1);
+			if (value != REMOVED) count(path, 1);
+			depths |= depthBit(depth(path));
+		}
+
+		/**
+		 * Add to the count of overrides beneath each ancestor of a path.
+		 */
+		private void count(String path, int n) {
+			for (int dot = path.lastIndexOf('.'); dot != -1; dot = path.lastIndexOf('.', dot-1)) {
+				beneath.merge(path.substring(0, dot), n, (a, b) -> a+b == 0 ? null : a+b);
+			}
+		}
+
+		/**
+		 * @return the longest proper prefix of the path that is overridden,
+		 * 				or null if there is none
+		 */
+		private String ancestor(String path) {
+			for (int dot = path.lastIndexOf('.'); dot != -1; dot = path.lastIndexOf('.', dot-1)) {
+				String a = path.substring(0, dot);
+				if (map.containsKey(a)) return a;
+			}
+			return null;
+		}
+
+		Overrides copy() {
+			Overrides o = new Overrides();
+			for (Map.Entry<String, Value> en : map.entrySet()) {
+				Value v = en.getValue();
+				o.map.put(en.getKey(), v instanceof WalnutConfig ? ((WalnutConfig)v).clone() : v);
+			}
+			o.depths = depths;
+			o.beneath.putAll(beneath);
+			return o;
+		}
+	}
+
+	private final WalnutConfig base;
+	private final String prefix;
+	private Overrides overrides;
+
+	OverlayConfig(WalnutConfig base) {
+		this(base, new Overrides(), "");
+	}
+
+	private OverlayConfig(WalnutConfig base, Overrides overrides, String prefix) {
+		this.base = base;
+		this.overrides = overrides;
+		this.prefix = prefix;
+	}
+
+	private static int depth(String path) {
+		int depth = 1;
+		for (int i = path.indexOf('.'); i != -1; i = path.indexOf('.', i+1)) {
+			depth++;
+		}
+		return depth;
+	}
+
+	private static long depthBit(int depth) {
+		// anything deeper than 63 shares a bit, and is probed at every depth past it
+		return 1L << Math.min(depth, 63);
+	}
+
+	/**
+	 * Resolve a full path, without wrapping sections; a section implied by
+	 * overrides beneath it resolves to {@link Overrides#IMPLIED}.
+	 */
+	private Value resolve(String full) {
+		long depths = overrides.depths;
+		if (depths != 0) {
+			int end = full.length();
+			for (int d = depth(full); d > 0; d--) {
+				if ((depths & depthBit(d)) != 0) {
+					String path = end == full.length() ? full : full.substring(0, end);
+					Value v = overrides.map.get(path);
+					if (v != null) {
+						if (v == Overrides.REMOVED) return null;
+						if (end == full.length()) return v;
+						if (v instanceof WalnutConfig) return ((WalnutConfig)v).lookup(full.substring(end+1));
+						throw new ClassCastException("attempt to traverse into non-section "+path+" while resolving "+full);
+					}
+				}
+				end = full.lastIndexOf('.', end-1);
+			}
+		}
+		Value v = base.lookup(full);
+		if (!(v instanceof WalnutConfig) && !overrides.beneath.isEmpty() && overrides.beneath.containsKey(full)) {
+			return Overrides.IMPLIED;
+		}
+		return v;
+	}
+
+	@Override
+	Value lookup(String key) {
+		String full = prefix+key;
+		Value v = resolve(full);
+		if (v instanceof WalnutConfig) {
+			return new OverlayConfig(base, overrides, full+".");
+		}
+		return v;
+	}
+
+	@Override
+	Value getLocal(Key key) {
+		return lookup(key.getKey());
+	}
+
+	@Override
+	WalnutConfig expose(String key) {
+		// sections of an overlay are views, and writes to them never reach the base
+		return (WalnutConfig)lookup(key);
+	}
+
+	@Override
+	WalnutConfig expose(Key[] path) {
+		StringBuilder sb = new StringBuilder();
+		for (Key k : path) {
+			if (sb.length() > 0) sb.append('.');
+			sb.append(k.getKey());
+		}
+		return expose(sb.toString());
+	}
+
+	@Override
+	void _put(String key, Value value) {
+		if (value instanceof OverlayConfig) {
+			throw new IllegalArgumentException("An overlay cannot be put into a config");
+		}
+		String full = prefix+key;
+		int dot = full.lastIndexOf('.');
+		if (dot != -1) {
+			Value parent = resolve(full.substring(0, dot));
+			if (parent == null) {
+				// create the sections from the first one that is missing
+				int missing = full.indexOf('.');
+				while (resolve(full.substring(0, missing)) != null) {
+					missing = full.indexOf('.', missing+1);
+				}
+				WalnutConfig created = new WalnutConfig();
+				created._put(full.substring(missing+1), value);
+				overrides.put(full.substring(0, missing), created);
+				settingsChanged(key);
+				return;
+			}
+			if (!(parent instanceof WalnutConfig)) {
+				throw new ClassCastException("attempt to traverse into non-section "+full.substring(0, dot)+" while resolving "+full);
+			}
+		}
+		overrides.put(full, value);
+		settingsChanged(key);
+	}
+
+	@Override
+	public void put(Key key, Value value) {
+		_put(key.getKey(), value);
+	}
+
+	/**
+	 * Hides the value at a dotted path, without removing it from the base.
+	 * 
+	 * @return the value that was removed, or null if there was none; a
+	 * 				removed section is returned as a plain copy
+	 */
+	@Override
+	public Value remove(String key) {
+		Value v = lookup(key);
+		if (v == null) return null;
+		if (v instanceof OverlayConfig) v = ((OverlayConfig)v).copyLevel();
+		overrides.remove(prefix+key);
+		settingsChanged(key);
+		return v;
+	}
+
+	@Override
+	public Value get(Key key) {
+		return lookup(key.getKey());
+	}
+
+	/**
+	 * @return a snapshot of the merged entries at this level; it cannot be
+	 * 				modified, and does not reflect later changes
+	 */
+	@Override
+	public Set<Map.Entry<Key, Value>> entrySet() {
+		return Collections.unmodifiableMap(contents()).entrySet();
+	}
+
+	@Override
+	Map<Key, Value> contents() {
+		Map<Key, Value> out = new HashMap<Key, Value>();
+		Value level = prefix.isEmpty() ? base : resolve(prefix.substring(0, prefix.length()-1));
+		if (level instanceof WalnutConfig) {
+			for (Map.Entry<Key, Value> en : ((WalnutConfig)level).contents().entrySet()) {
+				out.put(en.getKey(), wrap(en.getKey().getKey(), en.getValue()));
+			}
+		}
+		for (Map.Entry<String, Value> en : overrides.map.entrySet()) {
+			String path = en.getKey();
+			if (!path.startsWith(prefix)) continue;
+			int dot = path.indexOf('.', prefix.length());
+			if (dot == -1) {
+				String k = path.substring(prefix.length());
+				if (en.getValue() == Overrides.REMOVED) {
+					out.remove(new Key(k, null));
+				} else {
+					// put keeps an existing Key, and with it the documentation
+					out.put(new Key(k, null), wrap(k, en.getValue()));
+				}
+			} else if (en.getValue() != Overrides.REMOVED) {
+				// an override in a section that may not exist in the base
+				String k = path.substring(prefix.length(), dot);
+				out.put(new Key(k, null), new OverlayConfig(base, overrides, prefix+k+"."));
+			}
+		}
+		return out;
+	}
+
+	private Value wrap(String key, Value v) {
+		return v instanceof WalnutConfig ? new OverlayConfig(base, overrides, prefix+key+".") : v;
+	}
+
+	/**
+	 * Reparsing an overlay copies it into a plain config, as only plain
+	 * configs can hold the result.
+	 */
+	@Override
+	WalnutConfig copyLevel() {
+		WalnutConfig o = new WalnutConfig();
+		for (Map.Entry<Key, Value> en : contents().entrySet()) {
+			Value v = en.getValue();
+			o.map.put(en.getKey(), v instanceof OverlayConfig ? ((OverlayConfig)v).copyLevel() : v);
+		}
+		return o;
+	}
+
+	@Override
+	public void replaceWith(WalnutConfig other) {
+		throw new UnsupportedOperationException("An overlay cannot be replaced; replace its base instead");
+	}
+
+	@Override
+	public WalnutConfig clone() {
+		OverlayConfig o = (OverlayConfig) super.clone();
+		o.overrides = overrides.copy();
+		return o;
+	}
+
+}
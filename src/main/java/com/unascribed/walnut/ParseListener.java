@@ -0,0 +1,43 @@
+package com.unascribed.walnut;
+
+/**
+ * Receives notifications about parses, along with metrics on what was parsed
+ * and where the time went.
+ * <p>
+ * A listener can be attached to a single {@link ConfigParser}, or to every
+ * parse done by the from* methods in {@link WalnutConfig} with
+ * {@link WalnutConfig#setParseListener(ParseListener)}. When no listener is
+ * attached, no timing or allocation data is gathered at all.
+ * <p>
+ * Listeners are called on the thread doing the parse, and should return
+ * quickly.
+ * <p>
+ * {@code JfrParseListener}, in the {@code jfr} source set, records each parse
+ * as a JDK Flight Recorder event.
+ *
+ * @since 0.0.1
+ */
+public interface ParseListener {
+	/**
+	 * Called before anything is read from the source.
+	 * 
+	 * @param source a human-readable description of what is being parsed,
+	 * 				such as a file path
+	 */
+	void parseStarted(String source);
+	/**
+	 * Called after a parse completes successfully.
+	 * 
+	 * @param source a human-readable description of what was parsed
+	 * @param metrics information about the parse
+	 */
+	void parseFinished(String source, ConfigMetrics metrics);
+	/**
+	 * Called if a parse fails, before the exception is thrown to the caller.
+	 * 
+	 * @param source a human-readable description of what was parsed
+	 * @param metrics information about the parse, up until the failure
+	 * @param cause the exception that will be thrown
+	 */
+	void parseFailed(String source, ConfigMetrics metrics, Exception cause);
+}
@@ -0,0 +1,55 @@
+package com.unascribed.walnut;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a recovering parse: everything that could be parsed, and a
+ * diagnostic for each problem that was skipped.
+ *
+ * @see ConfigParser#parseRecovering()
+ * @since 0.0.1
+ */
+public final class ParseResult {
+	private final WalnutConfig config;
+	private final List<Diagnostic> diagnostics;
+
+	ParseResult(WalnutConfig config, List<Diagnostic> diagnostics) {
+		this.config = config;
+		this.diagnostics = Collections.unmodifiableList(diagnostics);
+	}
+
+	/**
+	 * @return the config, without any pairs whose values could not be parsed;
+	 * 				if the input ended early, this holds everything up to that
+	 * 				point
+	 */
+	public WalnutConfig getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return the problems found, in the order they appear in the input
+	 */
+	public List<Diagnostic> getDiagnostics() {
+		return diagnostics;
+	}
+
+	/**
+	 * @return true if there were no problems, not even warnings
+	 */
+	public boolean isClean() {
+		return diagnostics.isEmpty();
+	}
+
+	/**
+	 * @return true if there were any errors; if not, the config is the same
+	 * 				as a strict parse would have returned
+	 */
+	public boolean hasErrors() {
+		for (Diagnostic d : diagnostics) {
+			if (d.getSeverity() == Diagnostic.Severity.ERROR) return true;
+		}
+		return false;
+	}
+}
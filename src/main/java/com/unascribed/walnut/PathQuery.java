@@ -0,0 +1,380 @@
+package com.unascribed.walnut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.unascribed.walnut.value.ArrayValue;
+import com.unascribed.walnut.value.Value;
+
+/**
+ * A compiled query, selecting every value in a config whose path matches a
+ * pattern, such as {@code services.*.port}.
+ * <p>
+ * A query is a dotted path, whose segments may be:
+ * <ul>
+ * <li>a key, which matches that key only</li>
+ * <li>{@code *}, which matches any key</li>
+ * <li>{@code **}, which matches any number of levels, including none, so
+ * 		{@code **.port} matches every {@code port} at any depth</li>
+ * </ul>
+ * A key or {@code *} may be followed by array selectors, {@code [n]} for
+ * the element at index n, counting from the end if negative, or {@code [*]}
+ * for every element, e.g. {@code servers[0].host} or {@code matrix[*][-1]}.
+ * {@code **} also descends into arrays.
+ * <p>
+ * The query is compiled into a small automaton when it is created, which
+ * follows every possible match at once, so the config is walked a single
+ * time and each value is matched at most once, however many ways it could
+ * be. Levels where only keys are being matched are looked up directly,
+ * rather than by iterating the section. Nothing is allocated per match
+ * beyond the results, with one exception: a matched section has the configs
+ * on its path unshared, as when it is retrieved with
+ * {@link WalnutConfig#get(String)}, so it can be written to.
+ * <p>
+ * A PathQuery is immutable, and can be compiled once and run any number of
+ * times on any number of configs. Defaults are not queried.
+ *
+ * @since 0.0.1
+ */
+public final class PathQuery {
+	private static final int KEY = 0;
+	private static final int ANY = 1;
+	private static final int DESCEND = 2;
+	private static final int INDEX = 3;
+	private static final int ANY_INDEX = 4;
+
+	/**
+	 * The number of steps that fit in a state mask, alongside the accepting
+	 * state.
+	 */
+	private static final int MAX_STEPS = 63;
+
+	private final String query;
+	private final int[] kinds;
+	private final String[] names;
+	private final Key[] keys;
+	private final int[] indices;
+	/**
+	 * Masks of the states whose next step is of each kind. State i is
+	 * waiting to match step i; the state past the last step accepts.
+	 */
+	private final long keyMask;
+	private final long descendMask;
+	private final long accept;
+	private final long initial;
+
+	private PathQuery(String query, List<int[]> steps, List<String> names) {
+		this.query = query;
+		int n = steps.size();
+		this.kinds = new int[n];
+		this.indices = new int[n];
+		this.names = names.toArray(new String[n]);
+		this.keys = new Key[n];
+		long keyMask = 0;
+		long descendMask = 0;
+		for (int i = 0; i < n; i++) {
+			kinds[i] = steps.get(i)[0];
+			indices[i] = steps.get(i)[1];
+			if (kinds[i] == KEY) {
+				keys[i] = new Key(this.names[i], null);
+				keyMask |= 1L << i;
+			} else if (kinds[i] == DESCEND) {
+				descendMask |= 1L << i;
+			}
+		}
+		this.keyMask = keyMask;
+		this.descendMask = descendMask;
+		this.accept = 1L << n;
+		this.initial = close(1L);
+	}
+
+	/**
+	 * @param query a dotted path, which may contain wildcards and array
+	 * 				selectors as described {@link PathQuery above}
+	 * @return a compiled form of the query
+	 * @throws IllegalArgumentException if the query is malformed
+	 * @since 0.0.1
+	 */
+	public static PathQuery compile(String query) {
+		if (query == null) throw new IllegalArgumentException("query cannot be null");
+		List<int[]> steps = new ArrayList<int[]>();
+		List<String> names = new ArrayList<String>();
+		for (String segment : query.split("\\.", -1)) {
+			int bracket = segment.indexOf('[');
+			String name = bracket == -1 ? segment : segment.substring(0, bracket);
+			if (name.isEmpty()) {
+				throw invalid(query, "a segment has no key");
+			} else if (name.equals("**")) {
+				if (bracket != -1) throw invalid(query, "** cannot be followed by an array selector");
+				// a run of ** matches no more than one does
+				if (!steps.isEmpty() && steps.get(steps.size()-1)[0] == DESCEND) continue;
+				steps.add(new int[] {DESCEND, 0});
+				names.add(null);
+				continue;
+			} else if (name.equals("*")) {
+				steps.add(new int[] {ANY, 0});
+				names.add(null);
+			} else if (name.indexOf('*') != -1) {
+				throw invalid(query, "wildcards must be a whole segment");
+			} else if (name.indexOf(']') != -1) {
+				throw invalid(query, "unmatched ]");
+			} else {
+				steps.add(new int[] {KEY, 0});
+				names.add(name);
+			}
+			while (bracket != -1) {
+				int close = segment.indexOf(']', bracket);
+				if (close == -1) throw invalid(query, "unclosed [");
+				String selector = segment.substring(bracket+1, close);
+				if (selector.equals("*")) {
+					steps.add(new int[] {ANY_INDEX, 0});
+				} else {
+					try {
+						steps.add(new int[] {INDEX, Integer.parseInt(selector)});
+					} catch (NumberFormatException e) {
+						throw invalid(query, "\""+selector+"\" is not an array index");
+					}
+				}
+				names.add(null);
+				bracket = close+1;
+				if (bracket == segment.length()) break;
+				if (segment.charAt(bracket) != '[') throw invalid(query, "unexpected text after ]");
+			}
+		}
+		if (steps.size() > MAX_STEPS) throw invalid(query, "more than "+MAX_STEPS+" steps");
+		return new PathQuery(query, steps, names);
+	}
+
+	private static IllegalArgumentException invalid(String query, String reason) {
+		return new IllegalArgumentException("Invalid query \""+query+"\": "+reason);
+	}
+
+	/**
+	 * @return every value the query matches, in the order the config is
+	 * 				walked; a section comes before the values in it. The config
+	 * 				is walked lazily, as the stream is consumed, and must not
+	 * 				be changed until the stream is done with.
+	 * @since 0.0.1
+	 */
+	public Stream<Value> stream(WalnutConfig conf) {
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(new Cursor(conf),
+				Spliterator.ORDERED | Spliterator.NONNULL), false);
+	}
+
+	/**
+	 * Add every value the query matches to a collection, in the order the
+	 * config is walked; a section comes before the values in it.
+	 *
+	 * @param out the collection to add values to
+	 * @return {@code out}
+	 * @since 0.0.1
+	 */
+	public <C extends Collection<? super Value>> C collect(WalnutConfig conf, C out) {
+		Cursor c = new Cursor(conf);
+		while (c.hasNext()) {
+			out.add(c.next());
+		}
+		return out;
+	}
+
+	/**
+	 * Follow every ** in a set of states into the step after it, as it may
+	 * match no levels at all.
+	 */
+	private long close(long states) {
+		// runs of ** are merged, so one shift is enough
+		return states | ((states & descendMask) << 1);
+	}
+
+	/**
+	 * @param key the key of the child, or null if it is an array element
+	 * @return the states after matching a child of a node in the given states
+	 */
+	private long step(long states, String key, int index, int length) {
+		// ** stays where it is on every child
+		long out = states & descendMask;
+		long m = states & ~descendMask & ~accept;
+		while (m != 0) {
+			int i = Long.numberOfTrailingZeros(m);
+			m &= m-1;
+			boolean match;
+			switch (kinds[i]) {
+				case KEY: match = key != null && key.equals(names[i]); break;
+				case ANY: match = key != null; break;
+				case INDEX: match = key == null && index == (indices[i] < 0 ? length+indices[i] : indices[i]); break;
+				default: match = key == null; break;
+			}
+			if (match) out |= 1L << (i+1);
+		}
+		return close(out);
+	}
+
+	/**
+	 * A section or array being walked.
+	 */
+	private static final class Frame {
+		Value node;
+		/**
+		 * The key of this node in its parent, if it's a section.
+		 */
+		Key key;
+		long states;
+		/**
+		 * True if this node was reached through sections alone, so that it
+		 * can be exposed.
+		 */
+		boolean plain;
+		/**
+		 * When looking up keys directly, the states whose keys are still to
+		 * be looked up.
+		 */
+		long lookups;
+		Iterator<Map.Entry<Key, Value>> entries;
+		int index;
+	}
+
+	private final class Cursor implements Iterator<Value> {
+		private final WalnutConfig root;
+		private Frame[] frames = new Frame[8];
+		private int depth;
+		private Value next;
+
+		Cursor(WalnutConfig root) {
+			this.root = root;
+			push(root, null, initial & ~accept, true);
+		}
+
+		private void push(Value node, Key key, long states, boolean plain) {
+			if (depth == frames.length) frames = Arrays.copyOf(frames, depth*2);
+			Frame f = frames[depth];
+			if (f == null) f = frames[depth] = new Frame();
+			depth++;
+			f.node = node;
+			f.key = key;
+			f.states = states;
+			f.plain = plain;
+			f.index = 0;
+			f.entries = null;
+			f.lookups = 0;
+			if (node instanceof WalnutConfig) {
+				if ((states & ~keyMask) == 0) {
+					f.lookups = states;
+				} else {
+					f.entries = ((WalnutConfig)node).contents().entrySet().iterator();
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) next = advance();
+			return next != null;
+		}
+
+		@Override
+		public Value next() {
+			if (!hasNext()) throw new NoSuchElementException();
+			Value v = next;
+			next = null;
+			return v;
+		}
+
+		private Value advance() {
+			while (depth > 0) {
+				Frame f = frames[depth-1];
+				Key key;
+				Value v;
+				int index = 0;
+				int length = 0;
+				if (f.node instanceof ArrayValue) {
+					Value[] arr = ((ArrayValue)f.node).get();
+					if (f.index == arr.length) {
+						pop();
+						continue;
+					}
+					key = null;
+					index = f.index++;
+					length = arr.length;
+					v = arr[index];
+				} else if (f.entries != null) {
+					if (!f.entries.hasNext()) {
+						pop();
+						continue;
+					}
+					Map.Entry<Key, Value> en = f.entries.next();
+					key = en.getKey();
+					v = en.getValue();
+				} else {
+					if (f.lookups == 0) {
+						pop();
+						continue;
+					}
+					int i = Long.numberOfTrailingZeros(f.lookups);
+					f.lookups &= f.lookups-1;
+					if (lookedUp(f.states, i)) continue;
+					key = keys[i];
+					v = ((WalnutConfig)f.node).getLocal(key);
+				}
+				if (v == null) continue;
+				long states = step(f.states, key == null ? null : key.getKey(), index, length);
+				if (states == 0) continue;
+				boolean plain = f.plain && key != null;
+				if ((states & accept) != 0 && plain && v instanceof WalnutConfig) {
+					v = expose(key);
+				}
+				if ((states & ~accept) != 0 && (v instanceof WalnutConfig || v instanceof ArrayValue)) {
+					push(v, key, states & ~accept, plain);
+				}
+				if ((states & accept) != 0) return v;
+			}
+			return null;
+		}
+
+		/**
+		 * @return true if an earlier state looked up the same key as state i
+		 */
+		private boolean lookedUp(long states, int i) {
+			long earlier = states & ((1L << i)-1);
+			while (earlier != 0) {
+				int j = Long.numberOfTrailingZeros(earlier);
+				earlier &= earlier-1;
+				if (names[j].equals(names[i])) return true;
+			}
+			return false;
+		}
+
+		private void pop() {
+			Frame f = frames[--depth];
+			f.node = null;
+			f.key = null;
+			f.entries = null;
+		}
+
+		/**
+		 * Hand out a matched section, as a child of the top frame.
+		 */
+		private WalnutConfig expose(Key key) {
+			Key[] path = new Key[depth];
+			for (int i = 1; i < depth; i++) {
+				path[i-1] = frames[i].key;
+			}
+			path[depth-1] = key;
+			return root.expose(path);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return query;
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.unascribed.walnut;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A prepared set of paths, to be looked up together with
+ * {@link WalnutConfig#getAll(PathSet)}.
+ * <p>
+ * The paths are split and sorted into a trie when the set is created, so a
+ * lookup walks the config once, and a prefix shared by several paths is only
+ * resolved once. A PathSet is immutable, and can be created once and reused
+ * for any number of lookups on any number of configs.
+ * <p>
+ * Each path has an index, which is its position in the order the paths were
+ * given in, ignoring duplicates. Results are returned by index.
+ *
+ * @since 0.0.1
+ */
+public final class PathSet {
+	static final class Node {
+		private static final Node[] NONE = new Node[0];
+		
+		final String segment;
+		final Key key;
+		int index = -1;
+		Node[] children = NONE;
+		
+		Node(String segment) {
+			this.segment = segment;
+			this.key = new Key(segment, null);
+		}
+	}
+	
+	private final String[] paths;
+	private final Map<String, Integer> indices;
+	final Node root = new Node(null);
+	
+	private PathSet(Collection<String> paths) {
+		LinkedHashSet<String> unique = new LinkedHashSet<String>(paths);
+		if (unique.contains(null)) throw new IllegalArgumentException("paths cannot contain null");
+		this.paths = unique.toArray(new String[unique.size()]);
+		Map<String, Integer> indices = new HashMap<String, Integer>();
+		for (int i = 0; i < this.paths.length; i++) {
+			indices.put(this.paths[i], i);
+		}
+		this.indices = Collections.unmodifiableMap(indices);
+		Map<Node, Map<String, Node>> building = new HashMap<Node, Map<String, Node>>();
+		for (int i = 0; i < this.paths.length; i++) {
+			Node node = root;
+			for (String segment : this.paths[i].split("\\.", -1)) {
+				Map<String, Node> children = building.get(node);
+				if (children == null) {
+					children = new TreeMap<String, Node>();
+					building.put(node, children);
+				}
+				Node child = children.get(segment);
+				if (child == null) {
+					child = new Node(segment);
+					children.put(segment, child);
+				}
+				node = child;
+			}
+			node.index = i;
+		}
+		for (Map.Entry<Node, Map<String, Node>> en : building.entrySet()) {
+			Collection<Node> children = en.getValue().values();
+			en.getKey().children = children.toArray(new Node[children.size()]);
+		}
+	}
+	
+	/**
+	 * @param paths the dotted paths to look up; duplicates are ignored
+	 * @return a prepared set of the given paths
+	 * @since 0.0.1
+	 */
+	public static PathSet of(String... paths) {
+		return new PathSet(Arrays.asList(paths));
+	}
+	
+	/**
+	 * @param paths the dotted paths to look up; duplicates are ignored
+	 * @return a prepared set of the given paths
+	 * @since 0.0.1
+	 */
+	public static PathSet of(Collection<String> paths) {
+		return new PathSet(paths);
+	}
+	
+	/**
+	 * @return the number of distinct paths in this set
+	 */
+	public int size() {
+		return paths.length;
+	}
+	
+	/**
+	 * @return the path with the given index
+	 */
+	public String getPath(int index) {
+		return paths[index];
+	}
+	
+	/**
+	 * @return the index of the given path, or -1 if it is not in this set
+	 */
+	public int indexOf(String path) {
+		Integer i = indices.get(path);
+		return i == null ? -1 : i;
+	}
+	
+	/**
+	 * Find a path beneath a node, for error messages.
+	 */
+	String anyPath(Node node) {
+		while (node.index == -1) {
+			node = node.children[0];
+		}
+		return paths[node.index];
+	}
+	
+}
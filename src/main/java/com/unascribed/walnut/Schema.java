@@ -0,0 +1,431 @@
+package com.unascribed.walnut;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import com.unascribed.walnut.value.BooleanValue;
+import com.unascribed.walnut.value.DoubleValue;
+import com.unascribed.walnut.value.IntValue;
+import com.unascribed.walnut.value.LongValue;
+import com.unascribed.walnut.value.StringValue;
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Describes what a config, or a section of one, is allowed to contain: which
+ * keys are required, and what type and range of values each may have.
+ * <p>
+ * A schema can be built in code with {@link #builder()}, or written in Walnut
+ * and loaded with {@link #fromConfig(WalnutConfig)}. Either way, it must be
+ * {@link #compile() compiled} into a {@link Validator} to check configs with.
+ * <p>
+ * Schemas are immutable.
+ *
+ * @since 0.0.1
+ */
+public final class Schema {
+
+	/**
+	 * The types of value a {@link Rule} can require. Each type matches exactly
+	 * the values its get method accepts, so for instance a whole number small
+	 * enough to be an int does not match {@link #LONG}, as {@code getLong}
+	 * would reject it; use {@link #NUMBER} to accept any kind of number.
+	 *
+	 * @since 0.0.1
+	 */
+	public enum Type {
+		STRING,
+		INT,
+		LONG,
+		DOUBLE,
+		/**
+		 * Any of {@link #INT}, {@link #LONG} or {@link #DOUBLE}.
+		 */
+		NUMBER,
+		BOOLEAN,
+		NULL,
+		ARRAY,
+		SECTION,
+		/**
+		 * Any value at all.
+		 */
+		ANY,
+		;
+
+		/**
+		 * @return the name of this type as written in a schema config, such as {@code "int"}
+		 */
+		public String getName() {
+			return name().toLowerCase(Locale.ROOT);
+		}
+	}
+
+	/**
+	 * The constraints on the value of one key.
+	 * <p>
+	 * Rules are immutable, and are created with one of the static factory
+	 * methods, then refined with the with* methods.
+	 *
+	 * @since 0.0.1
+	 */
+	public static final class Rule {
+		private final Type type;
+		private final boolean required;
+		private final boolean nullable;
+		private final double min;
+		private final double max;
+		private final Pattern pattern;
+		private final Rule elements;
+		private final Schema section;
+
+		private Rule(Type type, boolean required, boolean nullable, double min, double max, Pattern pattern, Rule elements, Schema section) {
+			if (type == null) throw new IllegalArgumentException("type cannot be null");
+			this.type = type;
+			this.required = required;
+			this.nullable = nullable;
+			this.min = min;
+			this.max = max;
+			this.pattern = pattern;
+			this.elements = elements;
+			this.section = section;
+		}
+
+		/**
+		 * @param type the type the value must have
+		 * @return an optional, non-nullable rule for values of the given type
+		 */
+		public static Rule of(Type type) {
+			if (type == Type.SECTION) return section(builder().build());
+			return new Rule(type, false, false, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null, null, null);
+		}
+
+		/**
+		 * @param schema the schema the section must match
+		 * @return an optional rule for a section matching the given schema
+		 */
+		public static Rule section(Schema schema) {
+			if (schema == null) throw new IllegalArgumentException("schema cannot be null");
+			return new Rule(Type.SECTION, false, false, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, null, null, schema);
+		}
+
+		/**
+		 * @param elements the rule every element of the array must match
+		 * @return an optional rule for an array
+		 */
+		public static Rule arrayOf(Rule elements) {
+			return of(Type.ARRAY).withElements(elements);
+		}
+
+		/**
+		 * @param required whether the key must be present
+		 * @return a copy of this rule with the given required setting
+		 */
+		public Rule withRequired(boolean required) {
+			return new Rule(type, required, nullable, min, max, pattern, elements, section);
+		}
+
+		/**
+		 * @param nullable whether the value may be null, whatever its type
+		 * @return a copy of this rule with the given nullable setting
+		 */
+		public Rule withNullable(boolean nullable) {
+			return new Rule(type, required, nullable, min, max, pattern, elements, section);
+		}
+
+		/**
+		 * Only numbers are checked against the range.
+		 *
+		 * @param min the smallest allowed value, inclusive
+		 * @param max the largest allowed value, inclusive
+		 * @return a copy of this rule with the given range
+		 */
+		public Rule withRange(double min, double max) {
+			if (min > max) throw new IllegalArgumentException("min cannot be greater than max");
+			return new Rule(type, required, nullable, min, max, pattern, elements, section);
+		}
+
+		/**
+		 * Only strings are checked against the pattern.
+		 *
+		 * @param regex a regular expression the whole of the string must match
+		 * @return a copy of this rule with the given pattern
+		 */
+		public Rule withPattern(String regex) {
+			return new Rule(type, required, nullable, min, max, Pattern.compile(regex), elements, section);
+		}
+
+		/**
+		 * Only arrays are checked against the element rule. Whether the
+		 * element rule is required has no effect.
+		 *
+		 * @param elements the rule every element of an array must match
+		 * @return a copy of this rule with the given element rule
+		 */
+		public Rule withElements(Rule elements) {
+			return new Rule(type, required, nullable, min, max, pattern, elements, section);
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public boolean isRequired() {
+			return required;
+		}
+
+		public boolean isNullable() {
+			return nullable;
+		}
+
+		public double getMin() {
+			return min;
+		}
+
+		public double getMax() {
+			return max;
+		}
+
+		/**
+		 * @return the pattern strings must match, or null
+		 */
+		public Pattern getPattern() {
+			return pattern;
+		}
+
+		/**
+		 * @return the rule array elements must match, or null
+		 */
+		public Rule getElements() {
+			return elements;
+		}
+
+		/**
+		 * @return the schema a section must match, or null if this is not a section rule
+		 */
+		public Schema getSection() {
+			return section;
+		}
+	}
+
+	////////// INSTANCE
+
+	private final Map<String, Rule> rules;
+	private final boolean allowUnknownKeys;
+
+	private Schema(Map<String, Rule> rules, boolean allowUnknownKeys) {
+		this.rules = Collections.unmodifiableMap(new LinkedHashMap<String, Rule>(rules));
+		this.allowUnknownKeys = allowUnknownKeys;
+	}
+
+	/**
+	 * @return the rule for each key, in the order they were added
+	 */
+	public Map<String, Rule> getRules() {
+		return rules;
+	}
+
+	/**
+	 * @return whether keys with no rule are allowed
+	 */
+	public boolean allowsUnknownKeys() {
+		return allowUnknownKeys;
+	}
+
+	/**
+	 * Compiles this schema into a validator, which checks configs against it
+	 * in a single pass.
+	 *
+	 * @return a validator for this schema
+	 * @since 0.0.1
+	 */
+	public Validator compile() {
+		return new Validator(this);
+	}
+
+	/////////// STATIC
+
+	/**
+	 * Loads a schema written in Walnut. The schema for a config is written in
+	 * the same form as that of a section: a {@code keys} section with a rule
+	 * for each key, and an optional {@code unknown-keys} boolean, which is
+	 * true by default. Each rule is a section, for example:
+	 * <pre>
+	 * keys {
+	 * 	port {
+	 * 		type: "int"
+	 * 		required: true
+	 * 		min: 1
+	 * 		max: 65535
+	 * 	}
+	 * 	name {
+	 * 		type: "string"
+	 * 		pattern: "[a-z-]+"
+	 * 	}
+	 * 	tags {
+	 * 		type: "array"
+	 * 		elements { type: "string" }
+	 * 	}
+	 * 	database {
+	 * 		type: "section"
+	 * 		unknown-keys: false
+	 * 		keys {
+	 * 			host {
+	 * 				type: "string"
+	 * 				required: true
+	 * 			}
+	 * 		}
+	 * 	}
+	 * }
+	 * unknown-keys: false
+	 * </pre>
+	 * {@code type} is one of the {@link Type} names, in lower case, and is
+	 * the only property every rule must have. {@code required} and
+	 * {@code nullable} default to false.
+	 *
+	 * @param conf the schema, as a config
+	 * @return the schema described by the config
+	 * @throws IllegalArgumentException if the config is not a valid schema; the message
+	 * 				names the offending path
+	 * @since 0.0.1
+	 */
+	public static Schema fromConfig(WalnutConfig conf) {
+		return readSchema(conf, "");
+	}
+
+	private static Schema readSchema(WalnutConfig conf, String prefix) {
+		Builder b = builder();
+		for (Map.Entry<Key, Value> en : conf.contents().entrySet()) {
+			String k = en.getKey().getKey();
+			Value v = en.getValue();
+			if (k.equals("keys")) {
+				if (!(v instanceof WalnutConfig)) throw new IllegalArgumentException(prefix+"keys must be a section");
+				for (Map.Entry<Key, Value> rule : ((WalnutConfig)v).contents().entrySet()) {
+					String path = prefix+"keys."+rule.getKey().getKey();
+					if (!(rule.getValue() instanceof WalnutConfig)) throw new IllegalArgumentException(path+" must be a section");
+					b.key(rule.getKey().getKey(), readRule((WalnutConfig)rule.getValue(), path+"."));
+				}
+			} else if (k.equals("unknown-keys")) {
+				b.allowUnknownKeys(readBoolean(v, prefix+k));
+			} else if (!prefix.isEmpty() && isRuleProperty(k)) {
+				// handled by readRule
+			} else {
+				throw new IllegalArgumentException("unknown schema property "+prefix+k);
+			}
+		}
+		return b.build();
+	}
+
+	private static boolean isRuleProperty(String k) {
+		switch (k) {
+			case "type": case "required": case "nullable": case "min": case "max": case "pattern": case "elements":
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static Rule readRule(WalnutConfig conf, String prefix) {
+		Map<Key, Value> props = conf.contents();
+		Value typeValue = props.get(new Key("type", null));
+		if (typeValue == null) throw new IllegalArgumentException(prefix+"type is required");
+		Type type = null;
+		String typeName = readString(typeValue, prefix+"type");
+		for (Type t : Type.values()) {
+			if (t.getName().equals(typeName)) type = t;
+		}
+		if (type == null) throw new IllegalArgumentException(prefix+"type: unknown type "+typeName);
+		Rule rule = type == Type.SECTION ? Rule.section(readSchema(conf, prefix)) : Rule.of(type);
+		double min = Double.NEGATIVE_INFINITY;
+		double max = Double.POSITIVE_INFINITY;
+		for (Map.Entry<Key, Value> en : props.entrySet()) {
+			String k = en.getKey().getKey();
+			Value v = en.getValue();
+			String path = prefix+k;
+			switch (k) {
+				case "type":
+					break;
+				case "required":
+					rule = rule.withRequired(readBoolean(v, path));
+					break;
+				case "nullable":
+					rule = rule.withNullable(readBoolean(v, path));
+					break;
+				case "min":
+					min = readNumber(v, path);
+					break;
+				case "max":
+					max = readNumber(v, path);
+					break;
+				case "pattern":
+					try {
+						rule = rule.withPattern(readString(v, path));
+					} catch (PatternSyntaxException e) {
+						throw new IllegalArgumentException(path+": "+e.getMessage(), e);
+					}
+					break;
+				case "elements":
+					if (!(v instanceof WalnutConfig)) throw new IllegalArgumentException(path+" must be a section");
+					rule = rule.withElements(readRule((WalnutConfig)v, path+"."));
+					break;
+				case "keys":
+				case "unknown-keys":
+					if (type != Type.SECTION) throw new IllegalArgumentException(path+" is only allowed for sections");
+					break;
+				default:
+					throw new IllegalArgumentException("unknown schema property "+path);
+			}
+		}
+		if (min > max) throw new IllegalArgumentException(prefix+"min cannot be greater than max");
+		return rule.withRange(min, max);
+	}
+
+	private static boolean readBoolean(Value v, String path) {
+		if (v instanceof BooleanValue) return ((BooleanValue)v).value;
+		throw new IllegalArgumentException(path+" must be a boolean");
+	}
+
+	private static String readString(Value v, String path) {
+		if (v instanceof StringValue) return ((StringValue)v).value;
+		throw new IllegalArgumentException(path+" must be a string");
+	}
+
+	private static double readNumber(Value v, String path) {
+		if (v instanceof IntValue) return ((IntValue)v).value;
+		if (v instanceof LongValue) return ((LongValue)v).value;
+		if (v instanceof DoubleValue) return ((DoubleValue)v).value;
+		throw new IllegalArgumentException(path+" must be a number");
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public static final class Builder {
+		private final Map<String, Rule> rules = new LinkedHashMap<String, Rule>();
+		private boolean allowUnknownKeys = true;
+
+		/**
+		 * @param key the key the rule applies to, which must not contain dots; use
+		 * 				{@link Rule#section(Schema)} for nested keys
+		 * @param rule the rule for the key's value
+		 */
+		public Builder key(String key, Rule rule) {
+			if (key == null || rule == null) throw new IllegalArgumentException("key and rule cannot be null");
+			if (key.indexOf('.') != -1) throw new IllegalArgumentException("key cannot contain dots: "+key);
+			rules.put(key, rule);
+			return this;
+		}
+		public Builder allowUnknownKeys(boolean allowUnknownKeys) {
+			this.allowUnknownKeys = allowUnknownKeys;
+			return this;
+		}
+
+		public Schema build() {
+			return new Schema(rules, allowUnknownKeys);
+		}
+	}
+
+}
@@ -16,14 +16,14 @@ public final class SerializationStyle {
 	
 	public static final SerializationStyle COLONS_8SPACES = COLONS_TABS.withIndentation("        ");
 	public static final SerializationStyle COLONS_4SPACES = COLONS_TABS.withIndentation("    ");
-	public static final SerializationStyle COLONS_2SPACES = COLONS_TABS.withIndentation(" ");
+	public static final SerializationStyle COLONS_2SPACES = COLONS_TABS.withIndentation("  ");
 	
 	
 	public static final SerializationStyle EQUALS_TABS = builder().indentation("\t").useColons(false).build();
 	
 	public static final SerializationStyle EQUALS_8SPACES = EQUALS_TABS.withIndentation("        ");
 	public static final SerializationStyle EQUALS_4SPACES = EQUALS_TABS.withIndentation("    ");
-	public static final SerializationStyle EQUALS_2SPACES = EQUALS_TABS.withIndentation(" ");
+	public static final SerializationStyle EQUALS_2SPACES = EQUALS_TABS.withIndentation("  ");
 	
 	////////// INSTANCE
 	
@@ -123,6 +123,22 @@ public final class SerializationStyle {
 		return new SerializationStyle(indentation, colons, align, omitSeparatorsForSections);
 	}
 	
+	String getIndentation() {
+		return indentation;
+	}
+	
+	boolean usesColons() {
+		return colons;
+	}
+	
+	boolean alignsValues() {
+		return align;
+	}
+	
+	boolean omitsSeparatorsForSections() {
+		return omitSeparatorsForSections;
+	}
+	
 	/////////// STATIC
 	
 	public static Builder builder() {
@@ -0,0 +1,195 @@
+package com.unascribed.walnut;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import com.unascribed.walnut.value.StringValue;
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Writes configs out as Walnut text.
+ * <p>
+ * Pairs are written in the order they were parsed in where their spans were
+ * tracked, and otherwise in the order of the config's map. Values other than
+ * sections are written as their raw value, so they are kept as they were
+ * written, e.g. {@code 0x2D} stays {@code 0x2D}. Documentation comments are
+ * kept; normal comments are not.
+ * <p>
+ * Sections are written from an explicit stack rather than by recursing, so
+ * configs of any depth can be written. Every line is indented to its depth,
+ * though, so the text of a config nested n deep is on the order of n&sup2;
+ * chars; one nested 30000 deep is around half a billion.
+ */
+final class Serializer {
+	private static final Comparator<Map.Entry<Key, Value>> BY_SPAN = new Comparator<Map.Entry<Key, Value>>() {
+		@Override
+		public int compare(Map.Entry<Key, Value> a, Map.Entry<Key, Value> b) {
+			SourceSpan as = a.getKey().getSpan();
+			SourceSpan bs = b.getKey().getSpan();
+			if (as == null) return bs == null ? 0 : 1;
+			if (bs == null) return -1;
+			return Integer.compare(as.getStartOffset(), bs.getStartOffset());
+		}
+	};
+
+	/**
+	 * The pairs of a section still to be written.
+	 */
+	private static final class Level {
+		final List<Map.Entry<Key, Value>> entries;
+		final String indent;
+		final int width;
+		int index;
+
+		Level(WalnutConfig conf, String indent, SerializationStyle style) {
+			this.entries = new ArrayList<Map.Entry<Key, Value>>(conf.contents().entrySet());
+			Collections.sort(entries, BY_SPAN);
+			this.indent = indent;
+			int width = 0;
+			if (style.alignsValues()) {
+				for (Map.Entry<Key, Value> en : entries) {
+					if (!(en.getValue() instanceof WalnutConfig)) {
+						width = Math.max(width, en.getKey().getKey().length());
+					}
+				}
+			}
+			this.width = width;
+		}
+	}
+
+	private Serializer() {}
+
+	/**
+	 * Write every pair of a config, each starting on its own line with the
+	 * given indentation, and ending with a newline.
+	 */
+	static void writePairs(WalnutConfig conf, SerializationStyle style, String indent, Appendable out) throws IOException {
+		ArrayDeque<Level> open = new ArrayDeque<Level>();
+		open.push(new Level(conf, indent, style));
+		while (!open.isEmpty()) {
+			Level l = open.peek();
+			if (l.index == l.entries.size()) {
+				open.pop();
+				if (!open.isEmpty()) {
+					out.append(open.peek().indent).append("}\n");
+				}
+				continue;
+			}
+			Map.Entry<Key, Value> en = l.entries.get(l.index++);
+			if (en.getValue() == null) continue;
+			writeKey(en.getKey(), en.getValue(), style, l.indent, l.width, out);
+			if (en.getValue() instanceof WalnutConfig) {
+				out.append("{\n");
+				open.push(new Level((WalnutConfig)en.getValue(), l.indent+style.getIndentation(), style));
+			} else {
+				out.append(raw(en.getValue())).append('\n');
+			}
+		}
+	}
+
+	/**
+	 * Write a section as a value, from its opening brace to its closing brace,
+	 * given the indentation of the line it starts on.
+	 */
+	static void writeSection(WalnutConfig conf, SerializationStyle style, String indent, Appendable out) throws IOException {
+		out.append("{\n");
+		writePairs(conf, style, indent+style.getIndentation(), out);
+		out.append(indent).append('}');
+	}
+
+	/**
+	 * Write a value, which starts on a line with the given indentation.
+	 */
+	static void writeValue(Value v, SerializationStyle style, String indent, Appendable out) throws IOException {
+		if (v instanceof WalnutConfig) {
+			writeSection((WalnutConfig)v, style, indent, out);
+		} else {
+			out.append(raw(v));
+		}
+	}
+
+	/**
+	 * Write a documentation comment if the key has one, the indentation, the
+	 * key, and the separator that should come before the given value.
+	 *
+	 * @param width the length to pad keys to, when aligning values
+	 */
+	static void writeKey(Key k, Value v, SerializationStyle style, String indent, int width, Appendable out) throws IOException {
+		String key = k.getKey();
+		checkKey(key);
+		if (k.getDocumentation() != null) {
+			// a documentation comment can't hold the end of a comment
+			out.append(indent).append("/**").append(k.getDocumentation().replace("*/", "* /")).append("*/\n");
+		}
+		out.append(indent).append(key);
+		if (v instanceof WalnutConfig) {
+			out.append(style.omitsSeparatorsForSections() ? " " : style.usesColons() ? ": " : " = ");
+			return;
+		}
+		if (style.usesColons()) {
+			out.append(':');
+			pad(out, width-key.length());
+			out.append(' ');
+		} else {
+			pad(out, width-key.length());
+			out.append(" = ");
+		}
+	}
+
+	private static void pad(Appendable out, int n) throws IOException {
+		for (int i = 0; i < n; i++) {
+			out.append(' ');
+		}
+	}
+
+	static String raw(Value v) {
+		String raw = v.getRawValue();
+		if (raw != null) return raw;
+		if (v instanceof StringValue) return quote(((StringValue)v).value);
+		throw new IllegalArgumentException("Cannot write a "+v.getClass().getSimpleName()+" with no raw value");
+	}
+
+	/**
+	 * @return the string as a quoted Walnut string, that parses back to it
+	 */
+	static String quote(String s) {
+		StringBuilder sb = new StringBuilder(s.length()+2);
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' || c == '"') {
+				sb.append('\\').append(c);
+			} else if (c == '\n') {
+				sb.append("\\x0A");
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the key would not parse back as
+	 * 				itself
+	 */
+	static void checkKey(String key) {
+		if (key.isEmpty()) {
+			throw new IllegalArgumentException("Cannot write an empty key");
+		}
+		if (Character.isWhitespace(key.codePointAt(0)) || Character.isWhitespace(key.codePointBefore(key.length()))) {
+			throw new IllegalArgumentException("Cannot write key \""+key+"\", which starts or ends with whitespace");
+		}
+		for (int i = 0; i < key.length(); i++) {
+			char c = key.charAt(i);
+			if (c == ':' || c == '=' || c == '{' || c == '}' || c == '(' || c == '[' || c == '\n'
+					|| (c == '/' && i+1 < key.length() && (key.charAt(i+1) == '/' || key.charAt(i+1) == '*'))) {
+				throw new IllegalArgumentException("Cannot write key \""+key+"\", which contains "+(c == '\n' ? "a newline" : c == '/' ? "a comment" : "'"+c+"'"));
+			}
+		}
+	}
+}
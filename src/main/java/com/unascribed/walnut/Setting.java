@@ -0,0 +1,332 @@
+package com.unascribed.walnut;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.unascribed.walnut.value.BooleanValue;
+import com.unascribed.walnut.value.DoubleValue;
+import com.unascribed.walnut.value.IntValue;
+import com.unascribed.walnut.value.LongValue;
+import com.unascribed.walnut.value.NullValue;
+import com.unascribed.walnut.value.StringValue;
+import com.unascribed.walnut.value.Value;
+
+/**
+ * A live handle to one setting of a config, which keeps the setting's value
+ * in a field so that hot code can read it without looking it up.
+ * <p>
+ * The path is resolved when the handle is created, and again whenever the
+ * config is changed at, above, or below the path through its own methods,
+ * or its contents are replaced with
+ * {@link WalnutConfig#replaceWith(WalnutConfig)}. Reading a handle is a
+ * single volatile read, with no hashing or boxing.
+ * <p>
+ * A missing or null value reads as the handle's default. Paths missing from
+ * the config are looked up in its defaults, as with the get* methods. As
+ * with {@link AccessTracker}, only changes made through the config the
+ * handle was created from are seen; changes made directly on sections
+ * retrieved from it are not, until {@link WalnutConfig#refreshSettings()}
+ * is called.
+ * <p>
+ * A config only keeps weak references to its handles, so handles that are
+ * no longer used don't need to be removed.
+ *
+ * @see WalnutConfig#intSetting(String, int)
+ * @since 0.0.1
+ */
+public abstract class Setting {
+
+	/**
+	 * The live handles of a config.
+	 */
+	static final class Registry {
+		private final List<WeakReference<Setting>> settings = new ArrayList<WeakReference<Setting>>();
+
+		synchronized void add(Setting s) {
+			settings.add(new WeakReference<Setting>(s));
+		}
+
+		/**
+		 * Re-resolve every handle whose value could have been changed by a
+		 * write at the given path, or every handle if the path is null.
+		 */
+		synchronized void refresh(WalnutConfig conf, String changed) {
+			Iterator<WeakReference<Setting>> iter = settings.iterator();
+			while (iter.hasNext()) {
+				Setting s = iter.next().get();
+				if (s == null) {
+					iter.remove();
+				} else if (changed == null || s.affectedBy(changed)) {
+					Value v;
+					try {
+						v = conf.resolveSetting(s.path);
+					} catch (ClassCastException e) {
+						v = null;
+					}
+					s.set(s.accepts(v) ? v : null);
+				}
+			}
+		}
+
+		/**
+		 * @throws ClassCastException if any handle would have the wrong type
+		 * 				in the given config
+		 */
+		synchronized void check(WalnutConfig conf) {
+			for (WeakReference<Setting> ref : settings) {
+				Setting s = ref.get();
+				if (s != null) s.check(conf.resolveSetting(s.path));
+			}
+		}
+	}
+
+	private final String path;
+
+	Setting(String path) {
+		this.path = path;
+	}
+
+	/**
+	 * @return the dotted path this handle reads
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	boolean affectedBy(String changed) {
+		if (path.length() == changed.length()) return path.equals(changed);
+		if (path.length() > changed.length()) return path.startsWith(changed) && path.charAt(changed.length()) == '.';
+		return changed.startsWith(path) && changed.charAt(path.length()) == '.';
+	}
+
+	/**
+	 * @return true if this handle can hold the given value, which may be null
+	 */
+	abstract boolean accepts(Value v);
+
+	/**
+	 * @param v an accepted value, or null to use the default
+	 */
+	abstract void set(Value v);
+
+	abstract String getExpectedType();
+
+	void check(Value v) {
+		if (!accepts(v)) {
+			throw new ClassCastException(v.getClass().getSimpleName()+" cannot be cast to "+getExpectedType());
+		}
+	}
+
+	private static boolean isAbsent(Value v) {
+		return v == null || v instanceof NullValue;
+	}
+
+	public static final class IntSetting extends Setting {
+		private final int defaultValue;
+		private volatile int value;
+
+		IntSetting(String path, int defaultValue) {
+			super(path);
+			this.defaultValue = defaultValue;
+			this.value = defaultValue;
+		}
+
+		public int get() {
+			return value;
+		}
+
+		public int getDefault() {
+			return defaultValue;
+		}
+
+		@Override
+		boolean accepts(Value v) {
+			return isAbsent(v) || v instanceof IntValue;
+		}
+
+		@Override
+		void set(Value v) {
+			value = isAbsent(v) ? defaultValue : ((IntValue)v).value;
+		}
+
+		@Override
+		String getExpectedType() {
+			return "IntValue";
+		}
+
+		@Override
+		public String toString() {
+			return getPath()+" = "+value;
+		}
+	}
+
+	/**
+	 * A handle to a long setting; ints are widened.
+	 */
+	public static final class LongSetting extends Setting {
+		private final long defaultValue;
+		private volatile long value;
+
+		LongSetting(String path, long defaultValue) {
+			super(path);
+			this.defaultValue = defaultValue;
+			this.value = defaultValue;
+		}
+
+		public long get() {
+			return value;
+		}
+
+		public long getDefault() {
+			return defaultValue;
+		}
+
+		@Override
+		boolean accepts(Value v) {
+			return isAbsent(v) || v instanceof LongValue || v instanceof IntValue;
+		}
+
+		@Override
+		void set(Value v) {
+			value = isAbsent(v) ? defaultValue : v instanceof IntValue ? ((IntValue)v).value : ((LongValue)v).value;
+		}
+
+		@Override
+		String getExpectedType() {
+			return "LongValue";
+		}
+
+		@Override
+		public String toString() {
+			return getPath()+" = "+value;
+		}
+	}
+
+	/**
+	 * A handle to a double setting; ints are widened.
+	 */
+	public static final class DoubleSetting extends Setting {
+		private final double defaultValue;
+		private volatile double value;
+
+		DoubleSetting(String path, double defaultValue) {
+			super(path);
+			this.defaultValue = defaultValue;
+			this.value = defaultValue;
+		}
+
+		public double get() {
+			return value;
+		}
+
+		public double getDefault() {
+			return defaultValue;
+		}
+
+		@Override
+		boolean accepts(Value v) {
+			return isAbsent(v) || v instanceof DoubleValue || v instanceof IntValue;
+		}
+
+		@Override
+		void set(Value v) {
+			value = isAbsent(v) ? defaultValue : v instanceof IntValue ? ((IntValue)v).value : ((DoubleValue)v).value;
+		}
+
+		@Override
+		String getExpectedType() {
+			return "DoubleValue";
+		}
+
+		@Override
+		public String toString() {
+			return getPath()+" = "+value;
+		}
+	}
+
+	public static final class BooleanSetting extends Setting {
+		private final boolean defaultValue;
+		private volatile boolean value;
+
+		BooleanSetting(String path, boolean defaultValue) {
+			super(path);
+			this.defaultValue = defaultValue;
+			this.value = defaultValue;
+		}
+
+		public boolean get() {
+			return value;
+		}
+
+		public boolean getDefault() {
+			return defaultValue;
+		}
+
+		@Override
+		boolean accepts(Value v) {
+			return isAbsent(v) || v instanceof BooleanValue;
+		}
+
+		@Override
+		void set(Value v) {
+			value = isAbsent(v) ? defaultValue : ((BooleanValue)v).value;
+		}
+
+		@Override
+		String getExpectedType() {
+			return "BooleanValue";
+		}
+
+		@Override
+		public String toString() {
+			return getPath()+" = "+value;
+		}
+	}
+
+	/**
+	 * A handle to a string setting. As with
+	 * {@link WalnutConfig#getString(String)}, values other than strings are
+	 * read as their raw value; only sections are not accepted.
+	 */
+	public static final class StringSetting extends Setting {
+		private final String defaultValue;
+		private volatile String value;
+
+		StringSetting(String path, String defaultValue) {
+			super(path);
+			this.defaultValue = defaultValue;
+			this.value = defaultValue;
+		}
+
+		public String get() {
+			return value;
+		}
+
+		public String getDefault() {
+			return defaultValue;
+		}
+
+		@Override
+		boolean accepts(Value v) {
+			return !(v instanceof WalnutConfig);
+		}
+
+		@Override
+		void set(Value v) {
+			value = isAbsent(v) ? defaultValue : v instanceof StringValue ? ((StringValue)v).value : v.getRawValue();
+		}
+
+		@Override
+		String getExpectedType() {
+			return "StringValue";
+		}
+
+		@Override
+		public String toString() {
+			return getPath()+" = "+value;
+		}
+	}
+
+}
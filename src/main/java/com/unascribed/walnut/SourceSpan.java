@@ -0,0 +1,87 @@
+package com.unascribed.walnut;
+
+/**
+ * A range of the text a config was parsed from. Offsets count chars from the
+ * start of the input; lines and columns are 1-based, and columns also count
+ * chars, so a character outside the BMP takes up two columns.
+ * <p>
+ * Spans are only recorded if {@link ConfigParser#trackSpans(boolean)} was
+ * enabled for the parse, as they cost two objects per key.
+ *
+ * @see Key#getSpan()
+ * @see Key#getValueSpan()
+ * @since 0.0.1
+ */
+public final class SourceSpan {
+	private final int startOffset;
+	private final int endOffset;
+	private final int startLine;
+	private final int startColumn;
+	private final int endLine;
+	private final int endColumn;
+
+	public SourceSpan(int startOffset, int endOffset, int startLine, int startColumn, int endLine, int endColumn) {
+		this.startOffset = startOffset;
+		this.endOffset = endOffset;
+		this.startLine = startLine;
+		this.startColumn = startColumn;
+		this.endLine = endLine;
+		this.endColumn = endColumn;
+	}
+
+	/**
+	 * @return the offset of the first char in the span
+	 */
+	public int getStartOffset() {
+		return startOffset;
+	}
+
+	/**
+	 * @return the offset just past the last char in the span
+	 */
+	public int getEndOffset() {
+		return endOffset;
+	}
+
+	public int getStartLine() {
+		return startLine;
+	}
+
+	public int getStartColumn() {
+		return startColumn;
+	}
+
+	/**
+	 * @return the line of the position just past the last char in the span
+	 */
+	public int getEndLine() {
+		return endLine;
+	}
+
+	/**
+	 * @return the column of the position just past the last char in the span
+	 */
+	public int getEndColumn() {
+		return endColumn;
+	}
+
+	@Override
+	public String toString() {
+		return startLine+":"+startColumn+"-"+endLine+":"+endColumn;
+	}
+
+	@Override
+	public int hashCode() {
+		return startOffset*31+endOffset;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof SourceSpan)) return false;
+		SourceSpan that = (SourceSpan)obj;
+		return startOffset == that.startOffset && endOffset == that.endOffset
+				&& startLine == that.startLine && startColumn == that.startColumn
+				&& endLine == that.endLine && endColumn == that.endColumn;
+	}
+}
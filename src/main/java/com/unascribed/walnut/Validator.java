@@ -0,0 +1,224 @@
+package com.unascribed.walnut;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.unascribed.walnut.Schema.Rule;
+import com.unascribed.walnut.Schema.Type;
+import com.unascribed.walnut.value.ArrayValue;
+import com.unascribed.walnut.value.BooleanValue;
+import com.unascribed.walnut.value.DoubleValue;
+import com.unascribed.walnut.value.IntValue;
+import com.unascribed.walnut.value.LongValue;
+import com.unascribed.walnut.value.NullValue;
+import com.unascribed.walnut.value.StringValue;
+import com.unascribed.walnut.value.Value;
+
+/**
+ * A compiled {@link Schema}, which checks configs against it.
+ * <p>
+ * Compiling resolves everything that does not depend on the config being
+ * checked up front: the key and full path of every rule, and the set of
+ * known keys at each level. Validating is then a single walk over the
+ * config that only does lookups and comparisons, and never marks sections
+ * of the config as exposed or copies them.
+ * <p>
+ * Validators are immutable and can be shared between threads.
+ *
+ * @see Schema#compile()
+ * @since 0.0.1
+ */
+public final class Validator {
+
+	private static final class Node {
+		final Key[] keys;
+		final String[] paths;
+		final CompiledRule[] rules;
+		final Set<Key> known;
+		final boolean allowUnknown;
+		final String prefix;
+
+		Node(Schema schema, String prefix) {
+			Map<String, Rule> src = schema.getRules();
+			this.keys = new Key[src.size()];
+			this.paths = new String[src.size()];
+			this.rules = new CompiledRule[src.size()];
+			this.allowUnknown = schema.allowsUnknownKeys();
+			this.prefix = prefix;
+			int i = 0;
+			for (Map.Entry<String, Rule> en : src.entrySet()) {
+				keys[i] = new Key(en.getKey(), null);
+				paths[i] = prefix+en.getKey();
+				rules[i] = new CompiledRule(en.getValue(), paths[i]+".");
+				i++;
+			}
+			this.known = allowUnknown ? null : new HashSet<Key>(Arrays.asList(keys));
+		}
+	}
+
+	private static final class CompiledRule {
+		final Type type;
+		final boolean required;
+		final boolean nullable;
+		final boolean ranged;
+		final double min;
+		final double max;
+		final Pattern pattern;
+		final CompiledRule elements;
+		final Node section;
+		final String typeMessage;
+
+		CompiledRule(Rule rule, String prefix) {
+			this.type = rule.getType();
+			this.required = rule.isRequired();
+			this.nullable = rule.isNullable();
+			this.min = rule.getMin();
+			this.max = rule.getMax();
+			this.ranged = min != Double.NEGATIVE_INFINITY || max != Double.POSITIVE_INFINITY;
+			this.pattern = rule.getPattern();
+			this.elements = rule.getElements() == null ? null : new CompiledRule(rule.getElements(), prefix);
+			this.section = rule.getSection() == null ? null : new Node(rule.getSection(), prefix);
+			this.typeMessage = "expected "+(type == Type.ANY ? "any value" : type.getName())+(nullable ? " or null" : "");
+		}
+	}
+
+	private final Node root;
+
+	Validator(Schema schema) {
+		this.root = new Node(schema, "");
+	}
+
+	/**
+	 * Checks the given config against the schema, collecting every violation
+	 * rather than stopping at the first. Defaults are not consulted; a
+	 * required key must be present in the config itself.
+	 *
+	 * @param conf the config to check
+	 * @return the violations found, in the order they were found; empty if
+	 * 				the config is valid
+	 * @since 0.0.1
+	 */
+	public List<Violation> validate(WalnutConfig conf) {
+		List<Violation> out = checkSection(root, conf, null);
+		return out == null ? Collections.<Violation>emptyList() : out;
+	}
+
+	/**
+	 * @return true if the given config has no violations
+	 * @since 0.0.1
+	 */
+	public boolean isValid(WalnutConfig conf) {
+		return validate(conf).isEmpty();
+	}
+
+	// the list is only created once there is something to put in it, as the usual case is a valid config
+
+	private static List<Violation> add(List<Violation> out, String path, String message) {
+		if (out == null) out = new ArrayList<Violation>();
+		out.add(new Violation(path, message));
+		return out;
+	}
+
+	private static List<Violation> checkSection(Node node, WalnutConfig conf, List<Violation> out) {
+		Map<Key, Value> contents = conf.contents();
+		for (int i = 0; i < node.keys.length; i++) {
+			Value v = contents.get(node.keys[i]);
+			CompiledRule rule = node.rules[i];
+			if (v == null) {
+				if (rule.required) out = add(out, node.paths[i], "required key is missing");
+			} else {
+				out = checkValue(rule, v, node.paths[i], out);
+			}
+		}
+		if (node.known != null && contents.size() > 0) {
+			for (Key k : contents.keySet()) {
+				if (!node.known.contains(k)) out = add(out, node.prefix+k.getKey(), "unknown key");
+			}
+		}
+		return out;
+	}
+
+	private static List<Violation> checkValue(CompiledRule rule, Value v, String path, List<Violation> out) {
+		if (v instanceof NullValue) {
+			if (!rule.nullable && rule.type != Type.NULL && rule.type != Type.ANY) out = add(out, path, rule.typeMessage+", got null");
+			return out;
+		}
+		if (!matches(rule.type, v)) {
+			return add(out, path, rule.typeMessage+", got "+typeOf(v).getName());
+		}
+		if (rule.ranged) {
+			// only numbers have a range; NaN fails neither comparison
+			double d;
+			String got;
+			if (v instanceof IntValue) {
+				d = ((IntValue)v).value;
+				got = Integer.toString(((IntValue)v).value);
+			} else if (v instanceof LongValue) {
+				d = ((LongValue)v).value;
+				got = Long.toString(((LongValue)v).value);
+			} else if (v instanceof DoubleValue) {
+				d = ((DoubleValue)v).value;
+				got = Double.toString(d);
+			} else {
+				d = Double.NaN;
+				got = null;
+			}
+			if (d < rule.min || d > rule.max) {
+				out = add(out, path, rangeMessage(rule, got));
+			}
+		}
+		if (rule.pattern != null && v instanceof StringValue) {
+			if (!rule.pattern.matcher(((StringValue)v).value).matches()) {
+				out = add(out, path, "does not match pattern "+rule.pattern.pattern());
+			}
+		}
+		if (rule.elements != null && v instanceof ArrayValue) {
+			Value[] arr = ((ArrayValue)v).get();
+			for (int i = 0; i < arr.length; i++) {
+				out = checkValue(rule.elements, arr[i], path+"["+i+"]", out);
+			}
+		}
+		if (rule.section != null && v instanceof WalnutConfig) {
+			out = checkSection(rule.section, (WalnutConfig)v, out);
+		}
+		return out;
+	}
+
+	private static String rangeMessage(CompiledRule rule, String got) {
+		if (rule.min == Double.NEGATIVE_INFINITY) return "must be at most "+format(rule.max)+", got "+got;
+		if (rule.max == Double.POSITIVE_INFINITY) return "must be at least "+format(rule.min)+", got "+got;
+		return "must be between "+format(rule.min)+" and "+format(rule.max)+", got "+got;
+	}
+
+	private static String format(double d) {
+		if (d == Math.rint(d) && Math.abs(d) < 1e15) return Long.toString((long)d);
+		return Double.toString(d);
+	}
+
+	private static boolean matches(Type type, Value v) {
+		switch (type) {
+			case ANY: return true;
+			case NUMBER: return v instanceof IntValue || v instanceof LongValue || v instanceof DoubleValue;
+			default: return typeOf(v) == type;
+		}
+	}
+
+	private static Type typeOf(Value v) {
+		if (v instanceof StringValue) return Type.STRING;
+		if (v instanceof IntValue) return Type.INT;
+		if (v instanceof LongValue) return Type.LONG;
+		if (v instanceof DoubleValue) return Type.DOUBLE;
+		if (v instanceof BooleanValue) return Type.BOOLEAN;
+		if (v instanceof NullValue) return Type.NULL;
+		if (v instanceof ArrayValue) return Type.ARRAY;
+		if (v instanceof WalnutConfig) return Type.SECTION;
+		return Type.ANY;
+	}
+
+}
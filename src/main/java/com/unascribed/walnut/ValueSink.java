@@ -0,0 +1,21 @@
+package com.unascribed.walnut;
+
+import com.unascribed.walnut.value.Value;
+
+/**
+ * Receives the results of a bulk lookup with
+ * {@link WalnutConfig#getAll(PathSet, ValueSink)}.
+ *
+ * @since 0.0.1
+ */
+public interface ValueSink {
+	/**
+	 * Called once for each path in the set, in no particular order.
+	 * 
+	 * @param index the index of the path in the {@link PathSet}
+	 * @param path the path that was looked up
+	 * @param value the value found at the path, falling back to the defaults,
+	 * 				or null if there is no such value
+	 */
+	void accept(int index, String path, Value value);
+}
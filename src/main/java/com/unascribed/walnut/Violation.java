@@ -0,0 +1,47 @@
+package com.unascribed.walnut;
+
+/**
+ * A way in which a config fails to match a {@link Schema}.
+ *
+ * @see Validator#validate(WalnutConfig)
+ * @since 0.0.1
+ */
+public final class Violation {
+	private final String path;
+	private final String message;
+
+	Violation(String path, String message) {
+		this.path = path;
+		this.message = message;
+	}
+
+	/**
+	 * @return the path of the offending key, with array elements written as
+	 * 				{@code key[index]}
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return path+": "+message;
+	}
+
+	@Override
+	public int hashCode() {
+		return path.hashCode()*31+message.hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof Violation)) return false;
+		Violation that = (Violation)obj;
+		return path.equals(that.path) && message.equals(that.message);
+	}
+}
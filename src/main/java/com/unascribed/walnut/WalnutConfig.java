@@ -6,14 +6,35 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
-import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
 import java.net.URL;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Pattern;
 
+import com.unascribed.walnut.Setting.BooleanSetting;
+import com.unascribed.walnut.Setting.DoubleSetting;
+import com.unascribed.walnut.Setting.IntSetting;
+import com.unascribed.walnut.Setting.LongSetting;
+import com.unascribed.walnut.Setting.StringSetting;
+import com.unascribed.walnut.value.ArrayValue;
 import com.unascribed.walnut.value.BooleanValue;
 import com.unascribed.walnut.value.DoubleValue;
 import com.unascribed.walnut.value.IntValue;
@@ -30,43 +51,270 @@ import com.unascribed.walnut.value.Value;
  * empty config.
  * <p>
  * For convenience, put* and get* methods are supplied for easy conversion to
- * and from Value objects. If you need more control, such as the ability to set
- * the exact serialization string of a value, or the documentation of a key, use
- * the raw {@link #put(Key, Value)} method.
+ * and from Value objects. Both take dotted paths, such as {@code a.b.c}, and
+ * put* methods will create sections along the path as needed. If you need more
+ * control, such as the ability to set the exact serialization string of a
+ * value, or the documentation of a key, use the raw {@link #put(Key, Value)}
+ * method.
  * 
  * @since 0.0.1
  */
 public class WalnutConfig implements Cloneable, Value {
-	private Key keyGoat = new Key(null, null);
+	private static volatile ParseListener parseListener;
+	
 	private WalnutConfig defaults;
-	protected Map<Key, Value> map = new HashMap<Key, Value>();
+	private volatile AccessTracker tracker;
+	/**
+	 * Volatile, along with the two fields below, as reads can copy a shared
+	 * map and mark a config exposed; see {@link #exposeLevel()}.
+	 */
+	protected volatile Map<Key, Value> map = new HashMap<Key, Value>();
+	/**
+	 * True if {@link #map} may also be in use by another config, as a result
+	 * of a {@link #clone()}. It must be copied before it is written to, or
+	 * before any section in it is handed out.
+	 */
+	private volatile boolean mapShared;
+	/**
+	 * True if a section somewhere below this config may be referenced from
+	 * outside the tree, such as by having been returned from a get method.
+	 * Such sections can be written to directly, so clone can't share them.
+	 * Once set, this config's map is never shared again.
+	 */
+	private volatile boolean exposed;
+	/**
+	 * Bumped whenever {@link #map} is written to or replaced, so a
+	 * {@link FlatConfig} can tell whether it is stale.
+	 */
+	private int modCount;
+	/**
+	 * True if {@link #map} itself has been handed out, by
+	 * {@link #entrySet()}, and so may be written to without bumping
+	 * {@link #modCount}.
+	 */
+	private boolean mapHandedOut;
+	private FlatConfig flat;
+	private volatile Setting.Registry settings;
 	
 	////////// INSTANCE
 	
 	public void setDefaults(WalnutConfig defaults) {
 		this.defaults = defaults;
+		settingsChanged(null);
 	}
 	
-	public void putString(String key, String value) {
-		_put(key, new StringValue("\""+value
-			.replace("\\", "\\\\")
-			.replace("\n", "\\n")
-			.replace("\"", "\\\"")+"\"", value));
+	/**
+	 * Start counting lookups made through the get* methods of this config, by
+	 * path. If tracking is already enabled, the existing tracker is returned.
+	 * <p>
+	 * Only lookups made on this config are counted; lookups made directly on
+	 * sections retrieved from it are not. Clones of this config share its
+	 * tracker.
+	 * 
+	 * @return the tracker counting lookups on this config
+	 * @since 0.0.1
+	 */
+	public synchronized AccessTracker enableAccessTracking() {
+		if (tracker == null) {
+			tracker = new AccessTracker();
+		}
+		return tracker;
+	}
+	
+	/**
+	 * Stop counting lookups made on this config.
+	 * 
+	 * @since 0.0.1
+	 */
+	public synchronized void disableAccessTracking() {
+		tracker = null;
 	}
+	
+	/**
+	 * @return the tracker counting lookups on this config, or null if tracking is not enabled
+	 * @since 0.0.1
+	 */
+	public AccessTracker getAccessTracker() {
+		return tracker;
+	}
+	
+	public void putString(String key, String value) { _put(key, new StringValue(Serializer.quote(value), value)); }
 	public void putInt(String key, int value) { _put(key, new IntValue(Integer.toString(value), value)); }
 	public void putLong(String key, long value) { _put(key, new LongValue(Long.toString(value), value)); }
 	public void putDouble(String key, double value) { _put(key, new DoubleValue(Double.toString(value), value)); }
 	public void putBoolean(String key, boolean value) { _put(key, new BooleanValue(Boolean.toString(value), value)); }
 	public void putNull(String key) { _put(key, new NullValue("null")); }
 	
-	private void _put(String key, Value value) {
-		map.put(new Key(key, null), value);
+	/**
+	 * Puts a value at a dotted path, creating sections along the way as
+	 * needed. Any config whose map is shared with a clone is copied first, so
+	 * only the sections on the path to the value are copied.
+	 */
+	void _put(String key, Value value) {
+		WalnutConfig section = this;
+		String[] path = key.split("\\.");
+		for (int i = 0; i < path.length-1; i++) {
+			section.unshare();
+			Key k = new Key(path[i], null);
+			Value v = section.map.get(k);
+			if (v == null) {
+				WalnutConfig created = new WalnutConfig();
+				section.map.put(k, created);
+				section.modCount++;
+				section = created;
+			} else if (v instanceof WalnutConfig) {
+				section = (WalnutConfig) v;
+			} else {
+				throw new ClassCastException("attempt to traverse into non-section "+path[i]+" while resolving "+key);
+			}
+		}
+		section.unshare();
+		section.map.put(new Key(path[path.length-1], null), value);
+		section.modCount++;
+		settingsChanged(key);
+	}
+	
+	/**
+	 * Removes the value at a dotted path. As with putting, only the sections
+	 * on the path to the value are copied if they are shared with a clone.
+	 * 
+	 * @return the value that was removed, or null if there was none
+	 * @since 0.0.1
+	 */
+	public Value remove(String key) {
+		if (lookup(key) == null) return null;
+		WalnutConfig section = this;
+		String[] path = key.split("\\.");
+		for (int i = 0; i < path.length-1; i++) {
+			section.unshare();
+			section = (WalnutConfig) section.map.get(new Key(path[i], null));
+		}
+		section.unshare();
+		section.modCount++;
+		Value v = section.map.remove(new Key(path[path.length-1], null));
+		settingsChanged(key);
+		return v;
 	}
 	public void put(Key key, Value value) {
+		if (value instanceof OverlayConfig) {
+			throw new IllegalArgumentException("An overlay cannot be put into a config");
+		}
+		unshare();
+		if (value instanceof WalnutConfig) {
+			exposed = true;
+		}
 		map.put(key, value);
+		modCount++;
+		settingsChanged(key.getKey());
 	}
 	
 	
+	/**
+	 * Creates a live handle to an int setting, which is kept up to date as
+	 * this config changes, and can be read without looking the path up.
+	 * 
+	 * @param key the dotted path of the setting
+	 * @param defaultValue the value to read while the setting is missing or
+	 * 				null
+	 * @throws ClassCastException if the setting is not currently an int
+	 * @see Setting
+	 * @since 0.0.1
+	 */
+	public IntSetting intSetting(String key, int defaultValue) { return register(new IntSetting(key, defaultValue)); }
+	/**
+	 * @see #intSetting(String, int)
+	 * @since 0.0.1
+	 */
+	public LongSetting longSetting(String key, long defaultValue) { return register(new LongSetting(key, defaultValue)); }
+	/**
+	 * @see #intSetting(String, int)
+	 * @since 0.0.1
+	 */
+	public DoubleSetting doubleSetting(String key, double defaultValue) { return register(new DoubleSetting(key, defaultValue)); }
+	/**
+	 * @see #intSetting(String, int)
+	 * @since 0.0.1
+	 */
+	public BooleanSetting booleanSetting(String key, boolean defaultValue) { return register(new BooleanSetting(key, defaultValue)); }
+	/**
+	 * @see #intSetting(String, int)
+	 * @since 0.0.1
+	 */
+	public StringSetting stringSetting(String key, String defaultValue) { return register(new StringSetting(key, defaultValue)); }
+	
+	private <S extends Setting> S register(S s) {
+		Value v = resolveSetting(s.getPath());
+		s.check(v);
+		s.set(v);
+		Setting.Registry r = settings;
+		if (r == null) {
+			synchronized (this) {
+				r = settings;
+				if (r == null) {
+					r = settings = new Setting.Registry();
+				}
+			}
+		}
+		r.add(s);
+		return s;
+	}
+	
+	/**
+	 * Re-resolve every setting handle created from this config. This is only
+	 * needed after changing a section retrieved from this config directly, as
+	 * changes made through this config update handles as they're made.
+	 * 
+	 * @since 0.0.1
+	 */
+	public void refreshSettings() {
+		settingsChanged(null);
+	}
+	
+	/**
+	 * Update the handles that could be affected by a write at a path, or all
+	 * of them if the path is null.
+	 */
+	void settingsChanged(String path) {
+		Setting.Registry r = settings;
+		if (r != null) r.refresh(this, path);
+	}
+	
+	Value resolveSetting(String path) {
+		return lookupWithDefaults(path);
+	}
+	
+	/**
+	 * Replaces the contents of this config with those of another, such as a
+	 * freshly loaded copy of the same file, so that everything holding on to
+	 * this config sees the new contents. The other config is copied as by
+	 * {@link #clone()}, in constant time. Defaults and access tracking are
+	 * kept, and sections retrieved from this config before are no longer part
+	 * of it.
+	 * <p>
+	 * Every {@link Setting} handle is checked against the new contents first,
+	 * so if any would have the wrong type, this config is left unchanged.
+	 * 
+	 * @param other the config to take the contents of
+	 * @throws ClassCastException if a setting handle has the wrong type in
+	 * 				the new contents
+	 * @since 0.0.1
+	 */
+	public void replaceWith(WalnutConfig other) {
+		if (other instanceof OverlayConfig) {
+			throw new IllegalArgumentException("A config cannot be replaced with an overlay");
+		}
+		WalnutConfig c = other.clone();
+		c.defaults = defaults;
+		Setting.Registry r = settings;
+		if (r != null) r.check(c);
+		map = c.map;
+		mapShared = c.mapShared;
+		exposed = false;
+		mapHandedOut = false;
+		modCount++;
+		settingsChanged(null);
+	}
+	
 	public String getString(String key) {
 		Value v = get(key);
 		if (v instanceof StringValue) {
@@ -80,21 +328,137 @@ public class WalnutConfig implements Cloneable, Value {
 	public int getInt(String key) { return _get(key, IntValue.class).value; }
 	public long getLong(String key) { return _get(key, LongValue.class).value; }
 	
-	public boolean containsKey(String key) { return get(key) != null; }
+	/**
+	 * Reads a string value as a duration, such as {@code 30s}, {@code 1h30m},
+	 * or {@code PT30S}. The units are ns, us, ms, s, m, h, and d.
+	 * <p>
+	 * This and the other unit getters remember their result on the value,
+	 * so reading the same value again doesn't parse it again.
+	 * 
+	 * @return the duration, or null if the value is null
+	 * @throws IllegalArgumentException if the key is missing, or the value
+	 * 				is not a valid duration; the message names the key
+	 * @see StringValue#asDuration()
+	 * @since 0.0.1
+	 */
+	public Duration getDuration(String key) {
+		StringValue v = _get(key, StringValue.class);
+		try {
+			return v == null ? null : v.asDuration();
+		} catch (IllegalArgumentException e) {
+			throw invalid(key, e);
+		}
+	}
+	
+	/**
+	 * Reads a size in bytes, such as {@code 512MB} or {@code 4KiB}. KB, MB,
+	 * etc are powers of 1000, and KiB, MiB, etc and K, M, etc are powers of
+	 * 1024. A number, rather than a string, is a number of bytes.
+	 * 
+	 * @throws IllegalArgumentException if the key is missing, or the value
+	 * 				is null or not a valid size; the message names the key
+	 * @see StringValue#asByteSize()
+	 * @since 0.0.1
+	 */
+	public long getByteSize(String key) {
+		Value v = _get(key, Value.class);
+		if (v instanceof IntValue) return ((IntValue)v).value;
+		if (v instanceof LongValue) return ((LongValue)v).value;
+		if (v == null) {
+			// there's no null long to return
+			throw new IllegalArgumentException("Invalid value for "+key+": null is not a size");
+		}
+		if (!(v instanceof StringValue)) {
+			throw new ClassCastException(v.getClass().getSimpleName()+" cannot be cast to StringValue");
+		}
+		try {
+			return ((StringValue)v).asByteSize();
+		} catch (IllegalArgumentException e) {
+			throw invalid(key, e);
+		}
+	}
+	
+	/**
+	 * Reads a string value as the name of an enum constant, ignoring case and
+	 * treating - as _, so {@code round-robin} reads as {@code ROUND_ROBIN}.
+	 * 
+	 * @return the constant, or null if the value is null
+	 * @throws IllegalArgumentException if the key is missing, or the enum
+	 * 				has no such constant; the message names the key
+	 * @see StringValue#asEnum(Class)
+	 * @since 0.0.1
+	 */
+	public <E extends Enum<E>> E getEnum(String key, Class<E> type) {
+		StringValue v = _get(key, StringValue.class);
+		try {
+			return v == null ? null : v.asEnum(type);
+		} catch (IllegalArgumentException e) {
+			throw invalid(key, e);
+		}
+	}
+	
+	/**
+	 * Reads a string value as a regular expression.
+	 * 
+	 * @return the compiled pattern, or null if the value is null
+	 * @throws IllegalArgumentException if the key is missing, or the value
+	 * 				is not a valid regular expression; the message names the
+	 * 				key
+	 * @see StringValue#asPattern()
+	 * @since 0.0.1
+	 */
+	public Pattern getPattern(String key) {
+		StringValue v = _get(key, StringValue.class);
+		try {
+			return v == null ? null : v.asPattern();
+		} catch (IllegalArgumentException e) {
+			throw invalid(key, e);
+		}
+	}
+	
+	/**
+	 * Reads a string value as a socket address, such as
+	 * {@code example.com:80}, {@code [::1]:8080}, or {@code *:80} for the
+	 * wildcard address. Host names are left unresolved, so no DNS lookup is
+	 * made or remembered.
+	 * 
+	 * @return the address, or null if the value is null
+	 * @throws IllegalArgumentException if the key is missing, or the value
+	 * 				is not a valid address; the message names the key
+	 * @see StringValue#asInetSocketAddress()
+	 * @since 0.0.1
+	 */
+	public InetSocketAddress getInetSocketAddress(String key) {
+		StringValue v = _get(key, StringValue.class);
+		try {
+			return v == null ? null : v.asInetSocketAddress();
+		} catch (IllegalArgumentException e) {
+			throw invalid(key, e);
+		}
+	}
+	
+	private static IllegalArgumentException invalid(String key, IllegalArgumentException e) {
+		return new IllegalArgumentException("Invalid value for "+key+": "+e.getMessage(), e);
+	}
+	
+	public boolean containsKey(String key) { return find(key) != null; }
 	/**
 	 * @return {@code true} if the entry exists and is null, or {@code false} if the entry does not exist or is not null.
 	 */
-	public boolean isNull(String key) { return get(key) instanceof NullValue; }
+	public boolean isNull(String key) { return find(key) instanceof NullValue; }
 	
 	@SuppressWarnings("unchecked") // it IS checked, damn it
 	private <T extends Value> T _get(String key, Class<T> clazz) {
-		Value v = get(key);
+		Value v = lookup(key);
+		AccessTracker t = tracker;
+		if (v == null && defaults != null) {
+			v = defaults.lookupWithDefaults(key);
+			if (t != null) t.record(key, v == null ? AccessTracker.MISS : AccessTracker.DEFAULT_HIT);
+		} else if (t != null) {
+			t.record(key, v == null ? AccessTracker.MISS : AccessTracker.HIT);
+		}
 		if (v == null) {
-			if (defaults == null) {
-				throw new IllegalArgumentException(key);
-			} else {
-				return defaults._get(key, clazz);
-			}
+			throw new IllegalArgumentException(key);
 		}
 		if (v instanceof NullValue) {
 			return null;
@@ -107,48 +471,351 @@ public class WalnutConfig implements Cloneable, Value {
 	}
 	
 	public Value get(String key) {
+		Value v = find(key);
+		if (v instanceof WalnutConfig) {
+			return expose(key);
+		}
+		return v;
+	}
+	
+	/**
+	 * Tracked lookup that never hands out a section.
+	 */
+	private Value find(String key) {
+		Value v = lookup(key);
+		AccessTracker t = tracker;
+		if (t != null) t.record(key, v == null ? AccessTracker.MISS : AccessTracker.HIT);
+		return v;
+	}
+	
+	/**
+	 * Resolve a path to a section that is about to be handed out, making sure
+	 * no config on the way shares its map with a clone.
+	 */
+	WalnutConfig expose(String key) {
+		WalnutConfig section = this;
+		for (String s : key.split("\\.")) {
+			section.exposeLevel();
+			section = (WalnutConfig) section.map.get(new Key(s, null));
+		}
+		return section;
+	}
+	
+	/**
+	 * As {@link #expose(String)}, for a path that has already been split into
+	 * keys.
+	 */
+	WalnutConfig expose(Key[] path) {
+		WalnutConfig section = this;
+		for (Key k : path) {
+			section.exposeLevel();
+			section = (WalnutConfig) section.map.get(k);
+		}
+		return section;
+	}
+	
+	/**
+	 * Looks up every path in a set at once, walking the config a single time.
+	 * Paths that share a prefix only resolve it once, which is much cheaper
+	 * than calling a get method for each path when reading many keys from
+	 * the same sections.
+	 * <p>
+	 * Paths missing from this config are looked up in the defaults, as with
+	 * the typed get methods.
+	 * 
+	 * @param paths the paths to look up
+	 * @return the value at each path, indexed as in {@code paths}, with null
+	 * 				for paths that have no value
+	 * @throws ClassCastException if a path traverses into a non-section
+	 * @since 0.0.1
+	 */
+	public Value[] getAll(PathSet paths) {
+		Value[] out = new Value[paths.size()];
+		getAll(paths, (index, path, value) -> out[index] = value);
+		return out;
+	}
+	
+	/**
+	 * Looks up every path in a set at once, as in {@link #getAll(PathSet)},
+	 * and passes each result to a sink rather than collecting them into an
+	 * array.
+	 * 
+	 * @param paths the paths to look up
+	 * @param sink the sink to pass the value at each path to
+	 * @throws ClassCastException if a path traverses into a non-section
+	 * @since 0.0.1
+	 */
+	public void getAll(PathSet paths, ValueSink sink) {
+		walk(this, paths.root, paths, sink);
+	}
+	
+	private void walk(WalnutConfig section, PathSet.Node node, PathSet paths, ValueSink sink) {
+		for (PathSet.Node child : node.children) {
+			Value v = section == null ? null : section.getLocal(child.key);
+			if (child.index != -1) {
+				deliver(paths.getPath(child.index), child.index, v, sink);
+			}
+			if (child.children.length > 0) {
+				if (v != null && !(v instanceof WalnutConfig)) {
+					throw new ClassCastException("attempt to traverse into non-section "+child.segment+" while resolving "+paths.anyPath(child.children[0]));
+				}
+				// keep going when the section is missing, so the defaults are still checked
+				walk((WalnutConfig)v, child, paths, sink);
+			}
+		}
+	}
+	
+	private void deliver(String path, int index, Value v, ValueSink sink) {
+		AccessTracker t = tracker;
+		if (v instanceof WalnutConfig) {
+			v = expose(path);
+			if (t != null) t.record(path, AccessTracker.HIT);
+		} else if (v == null && defaults != null) {
+			v = defaults.lookupWithDefaults(path);
+			if (t != null) t.record(path, v == null ? AccessTracker.MISS : AccessTracker.DEFAULT_HIT);
+		} else if (t != null) {
+			t.record(path, v == null ? AccessTracker.MISS : AccessTracker.HIT);
+		}
+		sink.accept(index, path, v);
+	}
+	
+	/**
+	 * @return the value for a key at this level only, without handing out sections
+	 */
+	Value getLocal(Key key) {
+		return map.get(key);
+	}
+	
+	private Value lookupWithDefaults(String key) {
+		Value v = lookup(key);
+		if (v == null && defaults != null) {
+			return defaults.lookupWithDefaults(key);
+		}
+		return v;
+	}
+	
+	Value lookup(String key) {
 		WalnutConfig section = this;
 		String[] path = key.split("\\.");
 		for (int i = 0; i < path.length-1; i++) {
-			Value v = section.get(path[i]);
-			if (v instanceof WalnutConfig) {
+			Value v = section.getLocal(new Key(path[i], null));
+			if (v == null) {
+				return null;
+			} else if (v instanceof WalnutConfig) {
 				section = (WalnutConfig) v;
 			} else {
 				throw new ClassCastException("attempt to traverse into non-section "+path[i]+" while resolving "+key);
 			}
 		}
 		if (path.length == 0) return null;
-		keyGoat.key = path[path.length-1];
-		return section.map.get(keyGoat);
+		return section.getLocal(new Key(path[path.length-1], null));
 	}
 	
 	public Value get(Key key) {
-		return map.get(key);
+		Value v = map.get(key);
+		if (v instanceof WalnutConfig) {
+			exposeLevel();
+			v = map.get(key);
+		}
+		return v;
 	}
 	
 	public Set<Map.Entry<Key, Value>> entrySet() {
+		exposeLevel();
+		mapHandedOut = true;
 		return map.entrySet();
 	}
 	
+	/**
+	 * Returns every value in this config, keyed by its full dotted path, in
+	 * sorted order. This is much cheaper than walking {@link #entrySet()}
+	 * for finding every value under a prefix, or exporting a config as flat
+	 * {@code a.b.c = value} pairs, such as for environment variables.
+	 * <p>
+	 * The index is cached, and returned again until this config is changed.
+	 * Checking that it is still current takes time proportional to the
+	 * number of sections, not values. Sections whose {@link #entrySet()} has
+	 * been retrieved can be changed without this config knowing, so while a
+	 * config contains any, it is flattened again on every call. Defaults are
+	 * not included.
+	 * 
+	 * @return an immutable index of the values in this config as it is now
+	 * @since 0.0.1
+	 */
+	public FlatConfig flatten() {
+		FlatConfig f = flat;
+		if (f == null || !f.isCurrent()) {
+			f = FlatConfig.of(this);
+			flat = f;
+		}
+		return f;
+	}
 	
+	/**
+	 * @return a count that changes whenever this level is written to, or -1 if
+	 * 				writes to this level can't be seen
+	 */
+	int modCount() {
+		return mapHandedOut || getClass() != WalnutConfig.class ? -1 : modCount;
+	}
+	
+	/**
+	 * @return the entries at this level, for reading only; unlike
+	 * 				{@link #entrySet()}, this doesn't prevent sharing
+	 */
+	Map<Key, Value> contents() {
+		return map;
+	}
+	
+	
+	/**
+	 * Creates a copy of this config, which can be modified without affecting
+	 * this one, and vice versa.
+	 * <p>
+	 * This is done copy-on-write, so a clone initially shares all of its
+	 * contents with the original, and cloning is constant-time regardless of
+	 * the size of the config. When either is later written to, only the
+	 * sections on the path to the change are copied. Sections that have been
+	 * retrieved from this config, and so may be written to directly, are
+	 * copied when cloning instead.
+	 * <p>
+	 * Values other than sections are immutable, and are shared rather than
+	 * copied. This includes arrays; the array returned by
+	 * {@link ArrayValue#get()} must not be modified.
+	 * <p>
+	 * The clone shares this config's defaults and {@link AccessTracker}.
+	 * <p>
+	 * A config and its clones can be read from any number of threads at once,
+	 * just like a config that was never cloned. As always, writes must not
+	 * happen at the same time as other reads or writes.
+	 */
 	@Override
 	public WalnutConfig clone() {
 		WalnutConfig o;
-		try {
-			o = (WalnutConfig) super.clone();
-		} catch (CloneNotSupportedException e) {
-			throw new AssertionError(e);
+		// exposeLevel must not hand out a section from a map this is sharing
+		synchronized (this) {
+			try {
+				o = (WalnutConfig) super.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new AssertionError(e);
+			}
+			if (exposed) {
+				o.map = copyMap(map);
+				o.mapShared = false;
+				o.exposed = false;
+			} else {
+				mapShared = true;
+				o.mapShared = true;
+			}
 		}
-		o.map = new HashMap<Key, Value>();
-		for (Map.Entry<Key, Value> en : map.entrySet()) {
-			o.map.put(en.getKey(), en.getValue().clone());
+		o.mapHandedOut = false;
+		o.flat = null;
+		o.settings = null;
+		return o;
+	}
+	
+	/**
+	 * Copy this config's map if it is shared with a clone, so that it can be
+	 * written to.
+	 */
+	void unshare() {
+		if (mapShared) {
+			synchronized (this) {
+				if (mapShared) {
+					map = copyMap(map);
+					modCount++;
+					// last, so that seeing it false means seeing the copy
+					mapShared = false;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Unshare this config's map, and mark it exposed, before a section in it
+	 * is handed out. Unlike writes, this happens while reading, so it may
+	 * race with other reads and clones; it is done under this config's lock,
+	 * so every reader gets the same section, and a clone can't start sharing
+	 * the map a section was handed out from.
+	 */
+	void exposeLevel() {
+		if (!exposed) {
+			synchronized (this) {
+				unshare();
+				exposed = true;
+			}
 		}
+	}
+	
+	/**
+	 * @return a new config with the same entries as this one, but which
+	 * 				can be written to without affecting this one; defaults
+	 * 				are not copied
+	 */
+	WalnutConfig copyLevel() {
+		WalnutConfig o = new WalnutConfig();
+		o.map = copyMap(map);
 		return o;
 	}
 	
+	/**
+	 * Shallow copy a map, cloning sections so they are not referenced from two
+	 * maps at once. As sections in a shared map can't be exposed, those clones
+	 * are themselves constant-time. Exposed sections have their own maps
+	 * copied in turn, which is done from a worklist rather than by recursing
+	 * so that any depth of nesting can be copied.
+	 */
+	private static Map<Key, Value> copyMap(Map<Key, Value> map) {
+		Map<Key, Value> root = new HashMap<Key, Value>(map);
+		ArrayDeque<Map<Key, Value>> pending = null;
+		Map<Key, Value> nw = root;
+		while (true) {
+			for (Map.Entry<Key, Value> en : nw.entrySet()) {
+				if (en.getValue() instanceof WalnutConfig) {
+					WalnutConfig c = (WalnutConfig)en.getValue();
+					if (c.exposed && c.getClass() == WalnutConfig.class) {
+						WalnutConfig o;
+						try {
+							o = (WalnutConfig) c.superClone();
+						} catch (CloneNotSupportedException e) {
+							throw new AssertionError(e);
+						}
+						o.map = new HashMap<Key, Value>(c.map);
+						o.mapShared = false;
+						o.exposed = false;
+						o.mapHandedOut = false;
+						o.flat = null;
+						o.settings = null;
+						en.setValue(o);
+						if (pending == null) pending = new ArrayDeque<Map<Key, Value>>();
+						pending.push(o.map);
+					} else {
+						en.setValue(c.clone());
+					}
+				}
+			}
+			if (pending == null || pending.isEmpty()) break;
+			nw = pending.pop();
+		}
+		return root;
+	}
+	
+	private Object superClone() throws CloneNotSupportedException {
+		return super.clone();
+	}
+	
+	/**
+	 * @return this config written as a section value, in braces
+	 */
 	@Override
 	public String getRawValue() {
-		return toString();
+		StringBuilder sb = new StringBuilder();
+		try {
+			Serializer.writeSection(this, SerializationStyle.COLONS_TABS, "", sb);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return sb.toString();
 	}
 	
 	@Override
@@ -156,22 +823,99 @@ public class WalnutConfig implements Cloneable, Value {
 		return equals(v);
 	}
 	
+	/**
+	 * Hashes this config consistently with {@link #equals(Object)}. Like
+	 * equals, this walks the config with a worklist rather than recursing, so
+	 * configs of any depth can be hashed.
+	 */
 	@Override
 	public int hashCode() {
-		return map.hashCode();
+		int h = 0;
+		Value[] values = new Value[16];
+		int[] seeds = new int[16];
+		values[0] = this;
+		int size = 1;
+		while (size > 0) {
+			size--;
+			Value v = values[size];
+			int seed = seeds[size];
+			values[size] = null;
+			if (v instanceof WalnutConfig) {
+				Map<Key, Value> m = ((WalnutConfig)v).contents();
+				h += mix(seed^m.size());
+				for (Map.Entry<Key, Value> en : m.entrySet()) {
+					if (size == values.length) {
+						values = Arrays.copyOf(values, size*2);
+						seeds = Arrays.copyOf(seeds, size*2);
+					}
+					values[size] = en.getValue();
+					seeds[size] = seed*31+en.getKey().hashCode();
+					size++;
+				}
+			} else if (v instanceof ArrayValue) {
+				Value[] arr = ((ArrayValue)v).get();
+				h += mix(seed^~arr.length);
+				if (size+arr.length > values.length) {
+					values = Arrays.copyOf(values, Math.max(size*2, size+arr.length));
+					seeds = Arrays.copyOf(seeds, values.length);
+				}
+				for (int i = 0; i < arr.length; i++) {
+					values[size] = arr[i];
+					seeds[size] = seed*31+i+1;
+					size++;
+				}
+			} else {
+				h += mix(seed^(v == null ? 0 : v.hashCode()));
+			}
+		}
+		return h;
+	}
+	
+	private static int mix(int i) {
+		i *= 0x9E3779B9;
+		return i ^ (i >>> 16);
 	}
 
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) return true;
-		if (obj == null) return false;
-		if (getClass() != obj.getClass()) return false;
-		WalnutConfig other = (WalnutConfig) obj;
-		if (map == null) {
-			if (other.map != null)
+		if (!(obj instanceof WalnutConfig)) return false;
+		// overlays compare equal to plain configs with the same contents
+		// pairs of values still to be compared, walked without recursing
+		ArrayList<Value> pending = new ArrayList<Value>();
+		pending.add(this);
+		pending.add((WalnutConfig)obj);
+		while (!pending.isEmpty()) {
+			Value b = pending.remove(pending.size()-1);
+			Value a = pending.remove(pending.size()-1);
+			if (a == b) continue;
+			if (a == null || b == null) return false;
+			if (a instanceof WalnutConfig) {
+				if (!(b instanceof WalnutConfig)) return false;
+				Map<Key, Value> am = ((WalnutConfig)a).contents();
+				Map<Key, Value> bm = ((WalnutConfig)b).contents();
+				if (am.size() != bm.size()) return false;
+				for (Map.Entry<Key, Value> en : am.entrySet()) {
+					Value bv = bm.get(en.getKey());
+					if (bv == null && !bm.containsKey(en.getKey())) return false;
+					pending.add(en.getValue());
+					pending.add(bv);
+				}
+			} else if (a instanceof ArrayValue) {
+				if (a.getClass() != b.getClass()) return false;
+				String ar = a.getRawValue();
+				if (ar == null ? b.getRawValue() != null : !ar.equals(b.getRawValue())) return false;
+				Value[] aa = ((ArrayValue)a).get();
+				Value[] ba = ((ArrayValue)b).get();
+				if (aa.length != ba.length) return false;
+				for (int i = 0; i < aa.length; i++) {
+					pending.add(aa[i]);
+					pending.add(ba[i]);
+				}
+			} else if (!a.equals(b)) {
 				return false;
-		} else if (!map.equals(other.map))
-			return false;
+			}
+		}
 		return true;
 	}
 	
@@ -201,7 +945,80 @@ public class WalnutConfig implements Cloneable, Value {
 	 * @since 0.0.1
 	 */
 	public String toString(SerializationStyle style) {
-		return map.toString();
+		StringBuilder sb = new StringBuilder();
+		try {
+			Serializer.writePairs(this, style, "", sb);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+		return sb.toString();
+	}
+	
+	
+	/**
+	 * Writes this config to a file as UTF-8 Walnut, replacing the file
+	 * atomically.
+	 * <p>
+	 * The config is streamed to a temporary file in the same directory, which
+	 * is forced to disk and then renamed over the target. If writing fails or
+	 * the machine crashes, the old file is left in place, and readers never
+	 * see a partly written one.
+	 * <p>
+	 * If the file name ends in {@code .gz}, the file is written gzipped, and
+	 * if it ends in {@code .zz} or {@code .deflate}, zlib-compressed, as the
+	 * from* methods would expect.
+	 * 
+	 * @param path the file to write
+	 * @param style a definition of how to style the output
+	 * @throws IOException if the file can't be written
+	 * @see ConfigWriter
+	 * @since 0.0.1
+	 */
+	public void save(Path path, SerializationStyle style) throws IOException {
+		save(path.toFile(), style);
+	}
+	
+	/**
+	 * Writes this config to a file as UTF-8 Walnut, replacing the file
+	 * atomically.
+	 * 
+	 * @see #save(Path, SerializationStyle)
+	 * @since 0.0.1
+	 */
+	public void save(File file, SerializationStyle style) throws IOException {
+		save(file, style, Compression.forName(file.getName()));
+	}
+	
+	/**
+	 * Writes this config to a file as UTF-8 Walnut, compressed with the given
+	 * compression whatever the file's name, replacing the file atomically.
+	 * 
+	 * @param path the file to write
+	 * @param style a definition of how to style the output
+	 * @param compression how to compress the file
+	 * @throws IOException if the file can't be written
+	 * @see #save(Path, SerializationStyle)
+	 * @since 0.0.1
+	 */
+	public void save(Path path, SerializationStyle style, Compression compression) throws IOException {
+		save(path.toFile(), style, compression);
+	}
+	
+	/**
+	 * Writes this config to a file as UTF-8 Walnut, compressed with the given
+	 * compression whatever the file's name, replacing the file atomically.
+	 * 
+	 * @see #save(Path, SerializationStyle, Compression)
+	 * @since 0.0.1
+	 */
+	public void save(File file, SerializationStyle style, Compression compression) throws IOException {
+		if (style == null) throw new IllegalArgumentException("style cannot be null");
+		if (compression == null) throw new IllegalArgumentException("compression cannot be null");
+		AtomicFile.write(file, true, out -> compression.write(out, z -> {
+			Writer w = new OutputStreamWriter(z, StandardCharsets.UTF_8);
+			Serializer.writePairs(this, style, "", w);
+			w.flush();
+		}));
 	}
 	
 	
@@ -232,10 +1049,130 @@ public class WalnutConfig implements Cloneable, Value {
 	 * @since 0.0.1
 	 */
 	public static WalnutConfig fromString(String wlnt, WalnutConfig defaults) throws ParseException {
+		return fromText(ConfigParser.obtain().reset(wlnt, parseListener, "<string>"), defaults);
+	}
+	
+	/**
+	 * Loads a Walnut-format config from a CharSequence, such as a StringBuilder,
+	 * and returns it.
+	 * <p>
+	 * The sequence is indexed directly, and keys and values are sliced out of
+	 * it, so it is never copied as a whole. It must not be modified while it
+	 * is being parsed.
+	 * <p>
+	 * The resulting config will have no defaults.
+	 * 
+	 * @param wlnt a properly formatted Walnut config
+	 * @return a newly created config as represented by the given chars
+	 * @throws ParseException if the chars are not syntatically correct Walnut
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromChars(CharSequence wlnt) throws ParseException {
+		return fromChars(wlnt, null);
+	}
+	
+	/**
+	 * Loads a Walnut-format config from a CharSequence, such as a StringBuilder,
+	 * and returns it.
+	 * <p>
+	 * The sequence is indexed directly, and keys and values are sliced out of
+	 * it, so it is never copied as a whole. It must not be modified while it
+	 * is being parsed.
+	 * <p>
+	 * The resulting config will use the passed config as it's defaults.
+	 * 
+	 * @param wlnt a properly formatted Walnut config
+	 * @param defaults a config containing default values, which are to be used if a mapping is missing
+	 * @return a newly created config as represented by the given chars
+	 * @throws ParseException if the chars are not syntatically correct Walnut
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromChars(CharSequence wlnt, WalnutConfig defaults) throws ParseException {
+		if (wlnt instanceof CharBuffer) {
+			return fromChars((CharBuffer)wlnt, defaults);
+		}
+		return fromText(ConfigParser.obtain().reset(wlnt, parseListener, "<chars>"), defaults);
+	}
+	
+	/**
+	 * Loads a Walnut-format config from a slice of a char array, and returns it.
+	 * <p>
+	 * The array is indexed directly, and keys and values are sliced out of
+	 * it, so it is never copied as a whole. It must not be modified while it
+	 * is being parsed.
+	 * <p>
+	 * The resulting config will have no defaults.
+	 * 
+	 * @param wlnt an array containing a properly formatted Walnut config
+	 * @param offset the index of the first char of the config
+	 * @param length the number of chars in the config
+	 * @return a newly created config as represented by the given chars
+	 * @throws ParseException if the chars are not syntatically correct Walnut
+	 * @throws IndexOutOfBoundsException if the slice is not within the array
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromChars(char[] wlnt, int offset, int length) throws ParseException {
+		return fromChars(wlnt, offset, length, null);
+	}
+	
+	/**
+	 * Loads a Walnut-format config from a slice of a char array, and returns it.
+	 * <p>
+	 * The array is indexed directly, and keys and values are sliced out of
+	 * it, so it is never copied as a whole. It must not be modified while it
+	 * is being parsed.
+	 * <p>
+	 * The resulting config will use the passed config as it's defaults.
+	 * 
+	 * @param wlnt an array containing a properly formatted Walnut config
+	 * @param offset the index of the first char of the config
+	 * @param length the number of chars in the config
+	 * @param defaults a config containing default values, which are to be used if a mapping is missing
+	 * @return a newly created config as represented by the given chars
+	 * @throws ParseException if the chars are not syntatically correct Walnut
+	 * @throws IndexOutOfBoundsException if the slice is not within the array
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromChars(char[] wlnt, int offset, int length, WalnutConfig defaults) throws ParseException {
+		return fromText(ConfigParser.obtain().reset(wlnt, offset, length, parseListener, "<chars>"), defaults);
+	}
+	
+	/**
+	 * Loads a Walnut-format config from the remaining chars of a CharBuffer,
+	 * and returns it. The buffer's position is not changed.
+	 * <p>
+	 * The buffer is indexed directly, through its backing array if it has
+	 * one, and keys and values are sliced out of it, so it is never copied as
+	 * a whole. It must not be modified while it is being parsed.
+	 * <p>
+	 * The resulting config will use the passed config as it's defaults.
+	 * 
+	 * @param wlnt a buffer containing a properly formatted Walnut config
+	 * @param defaults a config containing default values, which are to be used if a mapping is missing
+	 * @return a newly created config as represented by the given chars
+	 * @throws ParseException if the chars are not syntatically correct Walnut
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromChars(CharBuffer wlnt, WalnutConfig defaults) throws ParseException {
+		if (wlnt.hasArray()) {
+			return fromChars(wlnt.array(), wlnt.arrayOffset()+wlnt.position(), wlnt.remaining(), defaults);
+		}
+		return fromText(ConfigParser.obtain().reset((CharSequence)wlnt.slice(), parseListener, "<chars>"), defaults);
+	}
+	
+	/**
+	 * Run a pooled parser that has been reset onto text in memory; small
+	 * inputs then allocate little beyond the result.
+	 */
+	private static WalnutConfig fromText(ConfigParser p, WalnutConfig defaults) throws ParseException {
 		try {
-			return fromReader(new StringReader(wlnt), defaults, true);
+			WalnutConfig conf = p.prepare().parse();
+			conf.setDefaults(defaults);
+			return conf;
 		} catch (IOException e) {
-			throw (ParseException)new ParseException("Unexpected IOException from StringReader", 0).initCause(e);
+			throw (ParseException)new ParseException("Unexpected IOException while parsing text", 0).initCause(e);
+		} finally {
+			p.release();
 		}
 	}
 	
@@ -282,6 +1219,12 @@ public class WalnutConfig implements Cloneable, Value {
 	 * will be thrown.
 	 * 
 	 * If {@code writeDefaults} is false, behaves identically to {@link #fromFile(File, WalnutConfig)}.
+	 * <p>
+	 * The file may be compressed with gzip or zlib, as described in {@link Compression}; it is
+	 * decompressed as it is parsed.
+	 * <p>
+	 * If a {@link ConfigCache#getDefault() default cache} is set, it will be used to avoid
+	 * reparsing the file if it is unchanged since it was last loaded.
 	 * 
 	 * @param file a path to a file, whose contents are a properly formatted UTF-8 Walnut config
 	 * @param defaults a config containing default values, which are to be used if a mapping is missing
@@ -294,10 +1237,16 @@ public class WalnutConfig implements Cloneable, Value {
 	 */
 	public static WalnutConfig fromFile(File file, WalnutConfig defaults, boolean writeDefaults) throws IOException, ParseException {
 		if (file.exists()) {
-			return fromStream(new FileInputStream(file), defaults, true);
+			ConfigCache cache = ConfigCache.getDefault();
+			if (cache != null) {
+				WalnutConfig conf = cache.load(file);
+				conf.setDefaults(defaults);
+				return conf;
+			}
+			return fromStream(new FileInputStream(file), defaults, true, file.getPath());
 		} else {
-			if (writeDefaults) {
-				//defaults.toFile(file); TODO
+			if (writeDefaults && defaults != null) {
+				defaults.save(file, SerializationStyle.COLONS_TABS);
 				return defaults.clone();
 			} else {
 				throw new FileNotFoundException();
@@ -306,6 +1255,155 @@ public class WalnutConfig implements Cloneable, Value {
 	}
 	
 	
+	/**
+	 * Loads a config from several Walnut-format fragment files, and merges
+	 * them into one.
+	 * <p>
+	 * The files are read and parsed concurrently on the common fork-join
+	 * pool, then deep-merged in the order given, with conflicts resolved by
+	 * {@code policy}.
+	 * <p>
+	 * The resulting config will have no defaults.
+	 * 
+	 * @param files the fragments to load, in the order to merge them
+	 * @param policy what to do when two fragments set the same path
+	 * @return a newly created config, merged from the contents of the given files
+	 * @throws IOException if an IO error occurs reading a fragment; the message names the file
+	 * @throws ParseException if a fragment is not syntatically correct Walnut, or if fragments
+	 * 				conflict under {@link MergePolicy#FAIL}; the message names the files
+	 * @see #fromFiles(List, MergePolicy, WalnutConfig, Executor)
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromFiles(List<File> files, MergePolicy policy) throws IOException, ParseException {
+		return fromFiles(files, policy, null, null);
+	}
+	
+	/**
+	 * Loads a config from several Walnut-format fragment files, and merges
+	 * them into one.
+	 * <p>
+	 * Each file is loaded as if by {@link #fromFile(File)}, so the default
+	 * {@link ConfigCache} is used if there is one. The files are read and
+	 * parsed concurrently as tasks on {@code executor}, such as one that runs
+	 * each task on a virtual thread. Once all are parsed, they are
+	 * deep-merged in the order given: sections are merged key by key, and
+	 * anything else set by more than one fragment is resolved by
+	 * {@code policy}. The result is the same whatever order the files finish
+	 * parsing in. If more than one file fails to load, the error for the
+	 * first of them in the list is thrown.
+	 * <p>
+	 * The resulting config will use the passed config as it's defaults.
+	 * 
+	 * @param files the fragments to load, in the order to merge them
+	 * @param policy what to do when two fragments set the same path
+	 * @param defaults a config containing default values, which are to be used if a mapping is missing
+	 * @param executor the executor to read and parse fragments on, or null to use the common
+	 * 				fork-join pool
+	 * @return a newly created config, merged from the contents of the given files
+	 * @throws IOException if an IO error occurs reading a fragment; the message names the file
+	 * @throws ParseException if a fragment is not syntatically correct Walnut, or if fragments
+	 * 				conflict under {@link MergePolicy#FAIL}; the message names the files
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromFiles(List<File> files, MergePolicy policy, WalnutConfig defaults, Executor executor) throws IOException, ParseException {
+		if (policy == null) throw new IllegalArgumentException("policy cannot be null");
+		Executor exec = executor == null ? ForkJoinPool.commonPool() : executor;
+		List<CompletableFuture<WalnutConfig>> futures = new ArrayList<CompletableFuture<WalnutConfig>>(files.size());
+		for (File file : files) {
+			futures.add(CompletableFuture.supplyAsync(() -> {
+				try {
+					return fromFile(file);
+				} catch (IOException | ParseException e) {
+					throw new CompletionException(e);
+				}
+			}, exec));
+		}
+		ConfigMerger merger = new ConfigMerger(policy);
+		for (int i = 0; i < files.size(); i++) {
+			File file = files.get(i);
+			WalnutConfig conf;
+			try {
+				conf = futures.get(i).join();
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof ParseException) {
+					throw (ParseException)new ParseException(file.getPath()+": "+cause.getMessage(), ((ParseException)cause).getErrorOffset()).initCause(cause);
+				} else if (cause instanceof IOException) {
+					throw new IOException(file.getPath()+": "+cause.getMessage(), cause);
+				} else if (cause instanceof RuntimeException) {
+					throw (RuntimeException)cause;
+				} else if (cause instanceof Error) {
+					throw (Error)cause;
+				}
+				throw e;
+			}
+			merger.merge(conf, file);
+		}
+		WalnutConfig conf = merger.getResult();
+		conf.setDefaults(defaults);
+		return conf;
+	}
+	
+	/**
+	 * Loads a config from every Walnut-format fragment file in a directory,
+	 * and merges them into one, as in {@link #fromFiles(List, MergePolicy)}.
+	 * <p>
+	 * Files whose names end in {@code .wlnt} or {@code .wlnt.gz} are loaded, and merged in order
+	 * of their names, so fragments can be ordered with a numeric prefix such
+	 * as {@code 00-base.wlnt} and {@code 50-region.wlnt}. Subdirectories are
+	 * not searched.
+	 * <p>
+	 * The resulting config will have no defaults.
+	 * 
+	 * @param dir the directory to load fragments from
+	 * @param policy what to do when two fragments set the same path
+	 * @return a newly created config, merged from the contents of the fragments
+	 * @throws IOException if the directory can't be listed, or an IO error occurs reading
+	 * 				a fragment; the message names the file
+	 * @throws ParseException if a fragment is not syntatically correct Walnut, or if fragments
+	 * 				conflict under {@link MergePolicy#FAIL}; the message names the files
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromDirectory(File dir, MergePolicy policy) throws IOException, ParseException {
+		return fromDirectory(dir, policy, null, null);
+	}
+	
+	/**
+	 * Loads a config from every Walnut-format fragment file in a directory,
+	 * and merges them into one, as in
+	 * {@link #fromFiles(List, MergePolicy, WalnutConfig, Executor)}.
+	 * <p>
+	 * Files whose names end in {@code .wlnt} or {@code .wlnt.gz} are loaded, and merged in order
+	 * of their names, so fragments can be ordered with a numeric prefix such
+	 * as {@code 00-base.wlnt} and {@code 50-region.wlnt}. Subdirectories are
+	 * not searched.
+	 * <p>
+	 * The resulting config will use the passed config as it's defaults.
+	 * 
+	 * @param dir the directory to load fragments from
+	 * @param policy what to do when two fragments set the same path
+	 * @param defaults a config containing default values, which are to be used if a mapping is missing
+	 * @param executor the executor to read and parse fragments on, or null to use the common
+	 * 				fork-join pool
+	 * @return a newly created config, merged from the contents of the fragments
+	 * @throws IOException if the directory can't be listed, or an IO error occurs reading
+	 * 				a fragment; the message names the file
+	 * @throws ParseException if a fragment is not syntatically correct Walnut, or if fragments
+	 * 				conflict under {@link MergePolicy#FAIL}; the message names the files
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig fromDirectory(File dir, MergePolicy policy, WalnutConfig defaults, Executor executor) throws IOException, ParseException {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(".wlnt") || name.endsWith(".wlnt.gz"));
+		if (files == null) throw new IOException("Could not list directory "+dir);
+		Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+		List<File> li = new ArrayList<File>(files.length);
+		for (File f : files) {
+			if (f.isFile()) li.add(f);
+		}
+		return fromFiles(li, policy, defaults, executor);
+	}
+	
+	
 	/**
 	 * Loads a Walnut-format config from the classpath, and returns it.
 	 * <p>
@@ -344,7 +1442,7 @@ public class WalnutConfig implements Cloneable, Value {
 	 * @since 0.0.1
 	 */
 	public static WalnutConfig fromClasspath(String path, WalnutConfig defaults) throws IOException, ParseException {
-		return fromStream(ClassLoader.getSystemResourceAsStream(path), defaults, true);
+		return fromStream(ClassLoader.getSystemResourceAsStream(path), defaults, true, "classpath:"+path);
 	}
 	
 	
@@ -354,11 +1452,104 @@ public class WalnutConfig implements Cloneable, Value {
 	}
 	
 	public static WalnutConfig fromUrl(URL url, WalnutConfig defaults) throws IOException, ParseException {
-		return fromStream(url.openStream(), defaults, true);
+		return fromStream(url.openStream(), defaults, true, url.toString());
 	}
 	
 	
 	
+	/**
+	 * Loads a config from a file without blocking the calling thread. One
+	 * task on the executor reads and decodes the file in chunks, while
+	 * another parses the chunks as they arrive, so waiting on the disk
+	 * overlaps with parsing.
+	 * <p>
+	 * Both tasks block while waiting, on I/O and on each other, so to load
+	 * many configs at once without tying up platform threads, pass an
+	 * executor that runs each task on a virtual thread, such as
+	 * {@code Executors.newVirtualThreadPerTaskExecutor()} on Java 21 and
+	 * later. Any executor works, including one that runs a task at a time.
+	 * <p>
+	 * If a {@link ConfigCache#getDefault() default cache} is set, it is used
+	 * as with {@link #fromFile(File, WalnutConfig)}.
+	 * 
+	 * @param file a path to a file, whose contents are a properly formatted UTF-8 Walnut config
+	 * @param defaults a config containing default values, which are to be used if a mapping is missing
+	 * @param executor the executor to read and parse on, or null to use
+	 * 				the common ForkJoinPool, or a thread per task if the
+	 * 				common pool only has one thread
+	 * @return a future of the config, which completes exceptionally with
+	 * 				an IOException or ParseException if loading fails
+	 * @since 0.0.1
+	 */
+	public static CompletableFuture<WalnutConfig> fromFileAsync(File file, WalnutConfig defaults, Executor executor) {
+		Executor exec = asyncExecutor(executor);
+		ConfigCache cache = ConfigCache.getDefault();
+		if (cache != null) {
+			return CompletableFuture.supplyAsync(() -> {
+				try {
+					return fromFile(file, defaults);
+				} catch (IOException | ParseException e) {
+					throw new CompletionException(e);
+				}
+			}, exec);
+		}
+		return AsyncLoader.load(() -> new FileInputStream(file), true, file.getPath(), defaults, exec);
+	}
+	
+	/**
+	 * @return the executor to load on, given the one passed to an async
+	 * 				method; as with CompletableFuture, the common pool is used
+	 * 				only if it can run more than one task at a time, as the
+	 * 				read and parse stages are meant to run at the same time
+	 */
+	private static Executor asyncExecutor(Executor executor) {
+		if (executor != null) return executor;
+		if (ForkJoinPool.getCommonPoolParallelism() > 1) return ForkJoinPool.commonPool();
+		return r -> new Thread(r).start();
+	}
+	
+	/**
+	 * @see #fromFileAsync(File, WalnutConfig, Executor)
+	 * @since 0.0.1
+	 */
+	public static CompletableFuture<WalnutConfig> fromFileAsync(File file) {
+		return fromFileAsync(file, null, null);
+	}
+	
+	/**
+	 * Loads a config from a URL without blocking the calling thread, reading
+	 * and parsing at the same time as in
+	 * {@link #fromFileAsync(File, WalnutConfig, Executor)}.
+	 * 
+	 * @since 0.0.1
+	 */
+	public static CompletableFuture<WalnutConfig> fromUrlAsync(URL url, WalnutConfig defaults, Executor executor) {
+		Executor exec = asyncExecutor(executor);
+		return AsyncLoader.load(url::openStream, true, url.toString(), defaults, exec);
+	}
+	
+	/**
+	 * Loads a config from a stream without blocking the calling thread,
+	 * reading and parsing at the same time as in
+	 * {@link #fromFileAsync(File, WalnutConfig, Executor)}. The stream must
+	 * not be used by anything else until the future completes.
+	 * 
+	 * @param close true to close the stream once it has been read
+	 * @since 0.0.1
+	 */
+	public static CompletableFuture<WalnutConfig> fromStreamAsync(InputStream in, WalnutConfig defaults, boolean close, Executor executor) {
+		Executor exec = asyncExecutor(executor);
+		return AsyncLoader.load(() -> in, close, "<stream>", defaults, exec);
+	}
+	
+	/**
+	 * @see #fromStreamAsync(InputStream, WalnutConfig, boolean, Executor)
+	 * @since 0.0.1
+	 */
+	public static CompletableFuture<WalnutConfig> fromStreamAsync(InputStream in) {
+		return fromStreamAsync(in, null, false, null);
+	}
+	
 	public static WalnutConfig fromStream(InputStream in) throws IOException, ParseException {
 		return fromStream(in, null, false);
 	}
@@ -368,7 +1559,16 @@ public class WalnutConfig implements Cloneable, Value {
 	}
 	
 	public static WalnutConfig fromStream(InputStream in, WalnutConfig defaults, boolean close) throws IOException, ParseException {
-		return fromReader(new InputStreamReader(in, "UTF-8"), defaults, close);
+		return fromStream(in, defaults, close, "<stream>");
+	}
+	
+	private static WalnutConfig fromStream(InputStream in, WalnutConfig defaults, boolean close, String source) throws IOException, ParseException {
+		ParseListener listener = parseListener;
+		MeteredInputStream meter = null;
+		if (listener != null) {
+			in = meter = new MeteredInputStream(in);
+		}
+		return fromReader(new InputStreamReader(Compression.decompress(in, source), "UTF-8"), defaults, close, source, listener, meter);
 	}
 	
 	
@@ -382,8 +1582,150 @@ public class WalnutConfig implements Cloneable, Value {
 	}
 	
 	public static WalnutConfig fromReader(Reader r, WalnutConfig defaults, boolean close) throws IOException, ParseException {
-		WalnutConfig conf = new ConfigParser(r).prepare().parse();
-		conf.setDefaults(defaults);
+		return fromReader(r, defaults, close, "<reader>", parseListener, null);
+	}
+	
+	private static WalnutConfig fromReader(Reader r, WalnutConfig defaults, boolean close, String source,
+			ParseListener listener, MeteredInputStream meter) throws IOException, ParseException {
+		ConfigParser p = ConfigParser.obtain().reset(r, listener, source, meter);
+		try {
+			WalnutConfig conf = p.prepare().parse();
+			conf.setDefaults(defaults);
+			return conf;
+		} finally {
+			p.release();
+			if (close) r.close();
+		}
+	}
+	
+	
+	
+	/**
+	 * Parses a Walnut-format config from a String, recovering from errors
+	 * rather than stopping at the first, so every problem in it can be
+	 * reported at once.
+	 * 
+	 * @param wlnt a string, which should contain a Walnut config
+	 * @return the config that could be parsed, and a diagnostic for each problem
+	 * @see ConfigParser#parseRecovering()
+	 * @since 0.0.1
+	 */
+	public static ParseResult parseRecovering(String wlnt) {
+		ConfigParser p = ConfigParser.obtain().reset(wlnt, parseListener, "<string>");
+		try {
+			return p.parseRecovering(true);
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		} finally {
+			p.release();
+		}
+	}
+	
+	/**
+	 * Parses a Walnut-format config from a UTF-8 File, recovering from errors
+	 * rather than stopping at the first, so every problem in it can be
+	 * reported at once. Diagnostics name the file's path as their source.
+	 * 
+	 * @param file a path to a file, which should contain a Walnut config
+	 * @return the config that could be parsed, and a diagnostic for each problem
+	 * @throws IOException if an IO error occurs on an underlying stream
+	 * @see ConfigParser#parseRecovering()
+	 * @since 0.0.1
+	 */
+	public static ParseResult parseRecovering(File file) throws IOException {
+		ParseListener listener = parseListener;
+		InputStream in = new FileInputStream(file);
+		MeteredInputStream meter = null;
+		if (listener != null) {
+			in = meter = new MeteredInputStream(in);
+		}
+		Reader r = new InputStreamReader(Compression.decompress(in, file.getPath()), "UTF-8");
+		ConfigParser p = ConfigParser.obtain().reset(r, listener, file.getPath(), meter);
+		try {
+			return p.parseRecovering(true);
+		} finally {
+			p.release();
+			r.close();
+		}
+	}
+	
+	
+	
+	/**
+	 * Sets a listener to be notified of every parse done by the from* methods,
+	 * including parses done on behalf of {@link ConfigCache}.
+	 * 
+	 * @param listener the listener to notify, or null to disable instrumentation
+	 * @since 0.0.1
+	 */
+	public static void setParseListener(ParseListener listener) {
+		parseListener = listener;
+	}
+	
+	/**
+	 * @return the listener set with {@link #setParseListener(ParseListener)}, or null
+	 * @since 0.0.1
+	 */
+	public static ParseListener getParseListener() {
+		return parseListener;
+	}
+	
+	/**
+	 * Parses an edited version of a config, reusing the parts of a previously
+	 * parsed version that the edit did not touch.
+	 * <p>
+	 * Only the pairs whose source text overlaps the edit are parsed again; if
+	 * the edit is entirely inside a section, the same is done within that
+	 * section. Every other value, including whole sections, is shared with
+	 * {@code previous} copy-on-write, as with {@link #clone()}, so either can
+	 * be modified without affecting the other. If the source is unchanged,
+	 * {@code previous} itself is returned.
+	 * <p>
+	 * The resulting config will use the defaults of {@code previous}.
+	 * 
+	 * @param previous the config that was parsed from {@code previousSource}
+	 * @param previousSource the source {@code previous} was parsed from
+	 * @param newSource the edited source
+	 * @return a config as represented by {@code newSource}
+	 * @throws ParseException if {@code newSource} is not syntatically correct Walnut
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig reparse(WalnutConfig previous, String previousSource, String newSource) throws ParseException {
+		WalnutConfig conf = IncrementalParser.reparse(previous, previousSource, newSource);
+		conf.setDefaults(previous.defaults);
+		return conf;
+	}
+	
+	/**
+	 * Creates a config that reads through to {@code base}, and keeps anything
+	 * put into it to itself. This is meant for applying a few overrides to a
+	 * large shared config, such as per-tenant or per-request settings.
+	 * <p>
+	 * Creating an overlay takes constant time, whatever the size of the base.
+	 * Only the overridden paths are stored, and looking up a path costs at
+	 * most one extra probe on top of looking it up in the base, as long as
+	 * the overrides are all at the same depth. Lookups are section-aware:
+	 * putting {@code a.b} overrides only {@code a.b}, and the rest of
+	 * {@code a} still comes from the base. Putting a value at {@code a}
+	 * replaces the base's {@code a} section entirely.
+	 * <p>
+	 * The overlay is a live view of the base, so changes to the base are
+	 * visible through it, and overlays can be stacked. Sections retrieved from
+	 * the overlay are also overlays, and writes to them are kept in the
+	 * overlay they came from. {@link #entrySet()} returns a snapshot of the
+	 * merged entries, which can't be modified. An overlay can't be put into
+	 * another config as a section.
+	 * <p>
+	 * The overlay uses the defaults of {@code base}.
+	 * 
+	 * @param base the config to read through to
+	 * @return a new, empty overlay of {@code base}
+	 * @since 0.0.1
+	 */
+	public static WalnutConfig overlay(WalnutConfig base) {
+		if (base == null) throw new IllegalArgumentException("base cannot be null");
+		WalnutConfig conf = new OverlayConfig(base);
+		conf.setDefaults(base.defaults);
 		return conf;
 	}
 
@@ -1,7 +1,10 @@
 package com.unascribed.walnut.value;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
+import com.unascribed.walnut.WalnutConfig;
+
 public class ArrayValue extends BaseValue<ArrayValue> {
 	private final Value[] value;
 	public ArrayValue(String rawValue, Value[] value) {
@@ -9,18 +12,82 @@ public class ArrayValue extends BaseValue<ArrayValue> {
 		this.value = value;
 	}
 
+	/**
+	 * Compares nested arrays from a worklist rather than recursively, so
+	 * arrays of any depth can be compared. Sections are compared by
+	 * {@link WalnutConfig#equals(Object)}, which doesn't recurse either.
+	 */
 	@Override
 	protected boolean valuesEqual(ArrayValue that) {
-		return Arrays.deepEquals(value, that.value);
+		ArrayList<Value[]> pending = new ArrayList<Value[]>();
+		pending.add(value);
+		pending.add(that.value);
+		while (!pending.isEmpty()) {
+			Value[] b = pending.remove(pending.size()-1);
+			Value[] a = pending.remove(pending.size()-1);
+			if (a.length != b.length) return false;
+			for (int i = 0; i < a.length; i++) {
+				Value av = a[i];
+				Value bv = b[i];
+				if (av == bv) continue;
+				if (av == null || bv == null) return false;
+				if (av instanceof ArrayValue) {
+					if (av.getClass() != bv.getClass()) return false;
+					String ar = av.getRawValue();
+					if (ar == null ? bv.getRawValue() != null : !ar.equals(bv.getRawValue())) return false;
+					pending.add(((ArrayValue)av).value);
+					pending.add(((ArrayValue)bv).value);
+				} else if (!av.equals(bv)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int hashCode() {
+		int h = rawValue == null ? 0 : rawValue.hashCode();
+		ArrayList<Value[]> pending = new ArrayList<Value[]>();
+		pending.add(value);
+		while (!pending.isEmpty()) {
+			Value[] a = pending.remove(pending.size()-1);
+			h = h*31+a.length;
+			for (Value v : a) {
+				if (v instanceof ArrayValue) {
+					pending.add(((ArrayValue)v).value);
+				} else {
+					h = h*31+(v == null ? 0 : v.hashCode());
+				}
+			}
+		}
+		return h;
 	}
 
+	/**
+	 * Nested arrays are copied from a worklist rather than recursively, so
+	 * arrays of any depth can be cloned.
+	 */
 	@Override
 	public ArrayValue clone() {
-		Value[] nw = new Value[value.length];
-		for (int i = 0; i < value.length; i++) {
-			nw[i] = value[i].clone();
+		Value[] root = value.clone();
+		ArrayList<Value[]> pending = new ArrayList<Value[]>();
+		pending.add(root);
+		while (!pending.isEmpty()) {
+			Value[] nw = pending.remove(pending.size()-1);
+			for (int i = 0; i < nw.length; i++) {
+				Value v = nw[i];
+				if (v instanceof ArrayValue && v.getClass() == ArrayValue.class) {
+					ArrayValue av = (ArrayValue)v;
+					Value[] copy = av.value.clone();
+					nw[i] = new ArrayValue(av.rawValue, copy);
+					pending.add(copy);
+				} else if (v != null) {
+					nw[i] = v.clone();
+				}
+			}
 		}
-		return new ArrayValue(rawValue, nw);
+		return new ArrayValue(rawValue, root);
 	}
 
 	@Override
@@ -28,4 +95,11 @@ public class ArrayValue extends BaseValue<ArrayValue> {
 		return value;
 	}
 	
+	@Override
+	public String toString() {
+		// the elements are already in the raw value, and printing them here
+		// would recurse and include the identity hash of the array
+		return getClass().getSimpleName()+"["+value.length+" values]\n"+rawValue;
+	}
+	
 }
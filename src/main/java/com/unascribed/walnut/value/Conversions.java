@@ -0,0 +1,192 @@
+package com.unascribed.walnut.value;
+
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parsers for the unit values that {@link StringValue} can be read as.
+ * Each throws IllegalArgumentException with a description of the problem
+ * if the string is malformed.
+ */
+final class Conversions {
+	private static final String[] DURATION_UNITS = {"ns", "us", "\u00B5s", "ms", "s", "m", "h", "d"};
+	private static final long[] DURATION_NANOS = {
+			1L, 1000L, 1000L, 1000_000L, 1000_000_000L, 60_000_000_000L, 3600_000_000_000L, 86400_000_000_000L
+	};
+
+	private static final String[] SIZE_PREFIXES = {"k", "m", "g", "t", "p", "e"};
+
+	private Conversions() {}
+
+	/**
+	 * Parse a duration, as one or more amounts with units, such as
+	 * {@code 30s} or {@code 1h30m}, or in ISO-8601 form, such as
+	 * {@code PT30S}. The units are ns, us, ms, s, m, h, and d.
+	 */
+	static Duration parseDuration(String s) {
+		if (s.startsWith("P") || s.startsWith("p")) {
+			try {
+				return Duration.parse(s);
+			} catch (DateTimeParseException e) {
+				throw new IllegalArgumentException("\""+s+"\" is not a valid ISO-8601 duration");
+			}
+		}
+		if (s.isEmpty()) throw new IllegalArgumentException("an empty string is not a duration");
+		Duration total = Duration.ZERO;
+		int i = 0;
+		while (i < s.length()) {
+			int start = i;
+			while (i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9') i++;
+			if (i == start) throw new IllegalArgumentException("\""+s+"\" is not a duration, such as 30s or 1h30m");
+			long amount;
+			try {
+				amount = Long.parseLong(s.substring(start, i));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("\""+s+"\" is too long a duration");
+			}
+			int unitStart = i;
+			while (i < s.length() && (s.charAt(i) < '0' || s.charAt(i) > '9')) i++;
+			String unit = s.substring(unitStart, i);
+			int u = indexOf(DURATION_UNITS, unit);
+			if (u == -1) {
+				throw new IllegalArgumentException(unit.isEmpty() ? "\""+s+"\" is missing a unit, such as s or ms"
+						: "\""+unit+"\" in \""+s+"\" is not a unit of time; expected one of ns, us, ms, s, m, h, d");
+			}
+			try {
+				total = total.plus(Duration.ofNanos(Math.multiplyExact(amount, DURATION_NANOS[u])));
+			} catch (ArithmeticException e) {
+				throw new IllegalArgumentException("\""+s+"\" is too long a duration");
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Parse a size in bytes, such as {@code 512MB} or {@code 1.5 GiB}. SI
+	 * prefixes (KB, MB, ...) are powers of 1000, and binary prefixes (KiB,
+	 * MiB, ...) and bare letters (K, M, ...) are powers of 1024. Units are
+	 * case-insensitive, and a number with no unit is a number of bytes.
+	 */
+	static long parseByteSize(String s) {
+		int i = 0;
+		while (i < s.length() && (s.charAt(i) >= '0' && s.charAt(i) <= '9' || s.charAt(i) == '.')) i++;
+		if (i == 0) throw new IllegalArgumentException("\""+s+"\" is not a size, such as 512MB or 4KiB");
+		BigDecimal amount;
+		try {
+			amount = new BigDecimal(s.substring(0, i));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("\""+s+"\" is not a size, such as 512MB or 4KiB");
+		}
+		String unit = s.substring(i).trim().toLowerCase(Locale.ROOT);
+		BigDecimal multiplier;
+		if (unit.isEmpty() || unit.equals("b")) {
+			multiplier = BigDecimal.ONE;
+		} else {
+			int p = unit.length() <= 3 ? indexOf(SIZE_PREFIXES, unit.substring(0, 1)) : -1;
+			String suffix = unit.substring(1);
+			if (p == -1 || !(suffix.isEmpty() || suffix.equals("b") || suffix.equals("ib"))) {
+				throw new IllegalArgumentException("\""+s.substring(i).trim()+"\" in \""+s+"\" is not a unit of size; expected one of B, KB, KiB, MB, MiB, GB, GiB, TB, TiB");
+			}
+			multiplier = BigDecimal.valueOf(suffix.equals("b") ? 1000 : 1024).pow(p+1);
+		}
+		try {
+			return amount.multiply(multiplier).longValueExact();
+		} catch (ArithmeticException e) {
+			throw new IllegalArgumentException("\""+s+"\" is not a whole number of bytes that fits in a long");
+		}
+	}
+
+	/**
+	 * Find an enum constant by name, ignoring case, and treating - as _, so
+	 * {@code round-robin} finds {@code ROUND_ROBIN}.
+	 */
+	static <E extends Enum<E>> E parseEnum(String s, Class<E> type) {
+		String name = s.replace('-', '_');
+		E[] constants = type.getEnumConstants();
+		for (E e : constants) {
+			if (e.name().equalsIgnoreCase(name)) return e;
+		}
+		StringBuilder sb = new StringBuilder();
+		for (E e : constants) {
+			if (sb.length() > 0) sb.append(", ");
+			sb.append(e.name().toLowerCase(Locale.ROOT).replace('_', '-'));
+		}
+		throw new IllegalArgumentException("\""+s+"\" is not one of "+sb);
+	}
+
+	static Pattern parsePattern(String s) {
+		try {
+			return Pattern.compile(s);
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException("\""+s+"\" is not a valid regular expression: "+e.getDescription()+" near index "+e.getIndex());
+		}
+	}
+
+	/**
+	 * Parse a socket address, as {@code host:port}, {@code [ipv6]:port}, or
+	 * {@code *:port} or {@code :port} for the wildcard address. IP addresses
+	 * are returned resolved; host names are returned unresolved, so reading
+	 * a config never waits on DNS.
+	 */
+	static InetSocketAddress parseInetSocketAddress(String s) {
+		int colon = s.lastIndexOf(':');
+		if (colon == -1) throw new IllegalArgumentException("\""+s+"\" is missing a port, as in host:port");
+		String host = s.substring(0, colon);
+		int port;
+		try {
+			port = Integer.parseInt(s.substring(colon+1));
+		} catch (NumberFormatException e) {
+			port = -1;
+		}
+		if (port < 0 || port > 65535) throw new IllegalArgumentException("\""+s.substring(colon+1)+"\" in \""+s+"\" is not a port number");
+		if (host.isEmpty() || host.equals("*")) return new InetSocketAddress(port);
+		boolean bracketed = host.startsWith("[") && host.endsWith("]");
+		if (bracketed) {
+			host = host.substring(1, host.length()-1);
+			if (host.indexOf(':') == -1) throw new IllegalArgumentException("\""+host+"\" in \""+s+"\" is not a valid IPv6 address");
+		} else if (host.indexOf(':') != -1 || host.indexOf('[') != -1 || host.indexOf(']') != -1) {
+			throw new IllegalArgumentException("\""+s+"\" has an IPv6 address that isn't in brackets, as in [::1]:"+port);
+		}
+		if (bracketed || isIPv4(host)) {
+			try {
+				// a literal address is parsed, not looked up
+				return new InetSocketAddress(InetAddress.getByName(host), port);
+			} catch (UnknownHostException e) {
+				throw new IllegalArgumentException("\""+host+"\" in \""+s+"\" is not a valid IP address");
+			}
+		}
+		return InetSocketAddress.createUnresolved(host, port);
+	}
+
+	/**
+	 * @return true if the host is a dotted quad, which InetAddress will
+	 * 				parse rather than look up
+	 */
+	private static boolean isIPv4(String host) {
+		String[] parts = host.split("\\.", -1);
+		if (parts.length != 4) return false;
+		for (String part : parts) {
+			if (part.isEmpty() || part.length() > 3) return false;
+			for (int i = 0; i < part.length(); i++) {
+				if (part.charAt(i) < '0' || part.charAt(i) > '9') return false;
+			}
+			if (Integer.parseInt(part) > 255) return false;
+		}
+		return true;
+	}
+
+	private static int indexOf(String[] arr, String s) {
+		for (int i = 0; i < arr.length; i++) {
+			if (arr[i].equals(s)) return i;
+		}
+		return -1;
+	}
+
+}
@@ -1,7 +1,18 @@
 package com.unascribed.walnut.value;
 
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.regex.Pattern;
+
 public final class StringValue extends BaseValue<StringValue> {
 	public final String value;
+	/**
+	 * The result of the last as* conversion, so that reading the same value
+	 * as the same type again doesn't parse it again. Every type converted to
+	 * is immutable, and a StringValue can only be converted to one value of
+	 * each type, so this can be shared by every reader.
+	 */
+	private volatile Object converted;
 
 	public StringValue(String rawValue, String value) {
 		super(rawValue);
@@ -23,4 +34,74 @@ public final class StringValue extends BaseValue<StringValue> {
 	public String get() {
 		return value;
 	}
+	
+	/**
+	 * @return this string as a duration, such as {@code 30s}, {@code 1h30m},
+	 * 				or {@code PT30S}; the units are ns, us, ms, s, m, h, and d
+	 * @throws IllegalArgumentException if this is not a valid duration
+	 */
+	public Duration asDuration() {
+		Object c = converted;
+		if (c instanceof Duration) return (Duration)c;
+		Duration d = Conversions.parseDuration(value);
+		converted = d;
+		return d;
+	}
+	
+	/**
+	 * @return this string as a number of bytes, such as {@code 512MB} or
+	 * 				{@code 4KiB}; KB, MB, etc are powers of 1000, and KiB, MiB,
+	 * 				etc and K, M, etc are powers of 1024
+	 * @throws IllegalArgumentException if this is not a valid size
+	 */
+	public long asByteSize() {
+		Object c = converted;
+		if (c instanceof Long) return (Long)c;
+		long l = Conversions.parseByteSize(value);
+		converted = l;
+		return l;
+	}
+	
+	/**
+	 * @return the constant of the given enum with this name, ignoring case
+	 * 				and treating - as _, so {@code round-robin} is
+	 * 				{@code ROUND_ROBIN}
+	 * @throws IllegalArgumentException if the enum has no such constant
+	 */
+	public <E extends Enum<E>> E asEnum(Class<E> type) {
+		Object c = converted;
+		if (type.isInstance(c)) return type.cast(c);
+		E e = Conversions.parseEnum(value, type);
+		converted = e;
+		return e;
+	}
+	
+	/**
+	 * @return this string compiled as a regular expression
+	 * @throws IllegalArgumentException if this is not a valid regular
+	 * 				expression
+	 */
+	public Pattern asPattern() {
+		Object c = converted;
+		if (c instanceof Pattern) return (Pattern)c;
+		Pattern p = Conversions.parsePattern(value);
+		converted = p;
+		return p;
+	}
+	
+	/**
+	 * @return this string as a socket address, such as
+	 * 				{@code example.com:80}, {@code [::1]:8080}, or {@code *:80}
+	 * 				for the wildcard address. IP addresses are resolved, as
+	 * 				they can be without a lookup, but host names are left
+	 * 				unresolved, so no DNS lookup is made or cached.
+	 * @throws IllegalArgumentException if this is not a valid address
+	 */
+	public InetSocketAddress asInetSocketAddress() {
+		Object c = converted;
+		if (c instanceof InetSocketAddress) return (InetSocketAddress)c;
+		InetSocketAddress a = Conversions.parseInetSocketAddress(value);
+		converted = a;
+		return a;
+	}
 }
\ No newline at end of file
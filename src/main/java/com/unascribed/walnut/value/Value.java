@@ -25,6 +25,11 @@ abstract class BaseValue<T extends BaseValue<?>> implements Value {
 		T that = (T)obj;
 		return (this.rawValue == null ? that.rawValue == null : this.rawValue.equals(that.rawValue)) && valuesEqual((T)obj);
 	}
+	@Override
+	public int hashCode() {
+		Object v = get();
+		return (rawValue == null ? 0 : rawValue.hashCode())*31+(v == null ? 0 : v.hashCode());
+	}
 	protected abstract boolean valuesEqual(T that);
 	public abstract T clone();
 	public abstract Object get();
@@ -0,0 +1,1005 @@
+package com.unascribed.walnut.test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Test;
+
+import com.unascribed.walnut.AccessSnapshot;
+import com.unascribed.walnut.AccessTracker;
+import com.unascribed.walnut.Compression;
+import com.unascribed.walnut.ConfigCache;
+import com.unascribed.walnut.ConfigEditor;
+import com.unascribed.walnut.ConfigWriter;
+import com.unascribed.walnut.FlatConfig;
+import com.unascribed.walnut.Key;
+import com.unascribed.walnut.Linter;
+import com.unascribed.walnut.MergePolicy;
+import com.unascribed.walnut.PathQuery;
+import com.unascribed.walnut.PathSet;
+import com.unascribed.walnut.Schema;
+import com.unascribed.walnut.Schema.Rule;
+import com.unascribed.walnut.Schema.Type;
+import com.unascribed.walnut.SerializationStyle;
+import com.unascribed.walnut.Setting.IntSetting;
+import com.unascribed.walnut.Setting.LongSetting;
+import com.unascribed.walnut.Setting.StringSetting;
+import com.unascribed.walnut.Validator;
+import com.unascribed.walnut.Violation;
+import com.unascribed.walnut.WalnutConfig;
+import com.unascribed.walnut.value.StringValue;
+import com.unascribed.walnut.value.Value;
+
+public class ConfigTests {
+	private static String resource(String name) throws IOException {
+		try (InputStream in = ClassLoader.getSystemResourceAsStream(name)) {
+			byte[] buf = new byte[8192];
+			StringBuilder sb = new StringBuilder();
+			int len;
+			while ((len = in.read(buf)) != -1) {
+				sb.append(new String(buf, 0, len, StandardCharsets.UTF_8));
+			}
+			return sb.toString();
+		}
+	}
+
+	private static File write(File f, String s) throws IOException {
+		try (OutputStream out = new FileOutputStream(f)) {
+			out.write(s.getBytes(StandardCharsets.UTF_8));
+		}
+		return f;
+	}
+
+	@Test
+	public void testCache() throws Exception {
+		File dir = Files.createTempDirectory("walnut-cache").toFile();
+		File src = write(File.createTempFile("complex", ".wlnt"), resource("complex.wlnt"));
+		try {
+			ConfigCache cache = new ConfigCache(dir, ConfigCache.DEFAULT_MAX_SIZE);
+			WalnutConfig control = WalnutConfig.fromString(resource("complex.wlnt"));
+			assertEquals(control, cache.load(src));
+			assertEquals(1, dir.listFiles().length);
+			assertEquals(control, cache.load(src));
+
+			write(src, "hello: \"walnut\"");
+			assertEquals(WalnutConfig.fromString("hello: \"walnut\""), cache.load(src));
+		} finally {
+			src.delete();
+			for (File f : dir.listFiles()) f.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testReparse() throws Exception {
+		String src = resource("sections.wlnt");
+		WalnutConfig conf = WalnutConfig.fromString(src);
+		
+		String edited = src.replace("no-more: true", "no-more: false");
+		WalnutConfig reparsed = WalnutConfig.reparse(conf, src, edited);
+		assertEquals(WalnutConfig.fromString(edited), reparsed);
+		assertSame(conf.get("this-is-a.section"), reparsed.get("this-is-a.section"));
+		assertSame(conf.get("another-section.nested-section.mixed-whitespace"), reparsed.get("another-section.nested-section.mixed-whitespace"));
+		
+		edited = src.replace("this-is-a {", "this-is-not-a {");
+		reparsed = WalnutConfig.reparse(conf, src, edited);
+		assertEquals(WalnutConfig.fromString(edited), reparsed);
+		assertSame(conf.get("deep-nesting.we.have.to.go.deeper.no-more"), reparsed.get("deep-nesting.we.have.to.go.deeper.no-more"));
+		
+		reparsed.putBoolean("deep-nesting.we.have.to.go.deeper.no-more", false);
+		assertTrue(conf.getBoolean("deep-nesting.we.have.to.go.deeper.no-more"));
+		
+		edited = src+"\nappended: 5";
+		assertEquals(WalnutConfig.fromString(edited), WalnutConfig.reparse(conf, src, edited));
+		
+		// a section's documentation is its own, and not its first pair's, however it's parsed
+		src = "/** a */\na {\n\tb: 1\n\t/** c */\n\tc {\n\t\td: 1\n\t}\n}\ne: [{ f: 1 }]\n";
+		conf = WalnutConfig.fromString(src);
+		for (String[] edit : new String[][] { { "b: 1", "b: 2" }, { "d: 1", "d: 2" }, { "f: 1", "f: 2" }, { "/** a */", "/** x */" } }) {
+			edited = src.replace(edit[0], edit[1]);
+			reparsed = WalnutConfig.reparse(conf, src, edited);
+			WalnutConfig full = WalnutConfig.fromString(edited);
+			assertEquals(full, reparsed);
+			assertEquals(documentation(full), documentation(reparsed));
+		}
+		assertEquals(Arrays.asList("a.b=null", "a.c.d=null", "a.c= c ", "a= a ", "e=null"), documentation(conf));
+	}
+	
+	/**
+	 * @return each key's path and documentation, sorted
+	 */
+	private static List<String> documentation(WalnutConfig conf) {
+		List<String> out = new ArrayList<String>();
+		documentation(conf, "", out);
+		Collections.sort(out);
+		return out;
+	}
+	
+	private static void documentation(WalnutConfig conf, String prefix, List<String> out) {
+		for (Map.Entry<Key, Value> en : conf.entrySet()) {
+			out.add(prefix+en.getKey().getKey()+"="+en.getKey().getDocumentation());
+			if (en.getValue() instanceof WalnutConfig) {
+				documentation((WalnutConfig)en.getValue(), prefix+en.getKey().getKey()+".", out);
+			}
+		}
+	}
+	
+	@Test
+	public void testCopyOnWrite() throws Exception {
+		WalnutConfig conf = WalnutConfig.fromString(resource("sections.wlnt"));
+		WalnutConfig control = WalnutConfig.fromString(resource("sections.wlnt"));
+		
+		WalnutConfig clone = conf.clone();
+		assertEquals(conf, clone);
+		clone.putString("this-is-a.section", "?");
+		clone.putInt("a.new.section", 4);
+		assertEquals(control, conf);
+		assertEquals("?", clone.getString("this-is-a.section"));
+		assertEquals(4, clone.getInt("a.new.section"));
+		assertSame(conf.get("another-section.nested-section.mixed-whitespace"), clone.get("another-section.nested-section.mixed-whitespace"));
+		
+		// sections that have been handed out can be written to directly
+		WalnutConfig section = (WalnutConfig)conf.get("deep-nesting.we");
+		clone = conf.clone();
+		section.putBoolean("have.to.go.deeper.no-more", false);
+		assertFalse(conf.getBoolean("deep-nesting.we.have.to.go.deeper.no-more"));
+		assertTrue(clone.getBoolean("deep-nesting.we.have.to.go.deeper.no-more"));
+		
+		try {
+			clone.putInt("this-is-a.section.deeper", 1);
+			fail();
+		} catch (ClassCastException e) {}
+		
+		// reading a section unshares, so it races with other reads and clones
+		ExecutorService exec = Executors.newFixedThreadPool(4);
+		try {
+			for (int i = 0; i < 200; i++) {
+				WalnutConfig base = WalnutConfig.fromString("a { b { c: 1 } }").clone();
+				List<Future<WalnutConfig>> sections = new ArrayList<Future<WalnutConfig>>();
+				List<Future<WalnutConfig>> clones = new ArrayList<Future<WalnutConfig>>();
+				for (int j = 0; j < 2; j++) {
+					sections.add(exec.submit(() -> (WalnutConfig)base.get("a.b")));
+					clones.add(exec.submit(() -> base.clone()));
+				}
+				WalnutConfig b = sections.get(0).get();
+				assertSame(b, sections.get(1).get());
+				WalnutConfig[] cloned = { clones.get(0).get(), clones.get(1).get() };
+				// the section is part of the config, and of none of its clones
+				b.putInt("c", 2);
+				assertEquals(2, base.getInt("a.b.c"));
+				for (WalnutConfig c : cloned) {
+					assertEquals(1, c.getInt("a.b.c"));
+				}
+			}
+		} finally {
+			exec.shutdown();
+		}
+	}
+	
+	@Test
+	public void testOverlay() throws Exception {
+		WalnutConfig base = WalnutConfig.fromString(resource("sections.wlnt"));
+		WalnutConfig control = WalnutConfig.fromString(resource("sections.wlnt"));
+		WalnutConfig overlay = WalnutConfig.overlay(base);
+		assertEquals(base, overlay);
+		
+		overlay.putString("another-section.nested-section.mixed-whitespace", "overridden");
+		overlay.putInt("this-is-a.count", 3);
+		assertEquals("overridden", overlay.getString("another-section.nested-section.mixed-whitespace"));
+		assertEquals(3, overlay.getInt("this-is-a.count"));
+		assertEquals("!", overlay.getString("this-is-a.section"));
+		assertEquals(control, base);
+		
+		// sections are views of the overlay, not the base
+		WalnutConfig section = (WalnutConfig)overlay.get("deep-nesting.we.have");
+		section.putBoolean("to.go.deeper.no-more", false);
+		assertFalse(overlay.getBoolean("deep-nesting.we.have.to.go.deeper.no-more"));
+		assertTrue(base.getBoolean("deep-nesting.we.have.to.go.deeper.no-more"));
+		
+		WalnutConfig expected = control.clone();
+		expected.putString("another-section.nested-section.mixed-whitespace", "overridden");
+		expected.putInt("this-is-a.count", 3);
+		expected.putBoolean("deep-nesting.we.have.to.go.deeper.no-more", false);
+		assertEquals(expected, overlay);
+		
+		// replacing a section hides everything beneath it in the base
+		overlay.put(new Key("deep-nesting", null), new WalnutConfig());
+		assertFalse(overlay.containsKey("deep-nesting.we"));
+		assertTrue(base.containsKey("deep-nesting.we"));
+		
+		WalnutConfig stacked = WalnutConfig.overlay(overlay);
+		stacked.putString("this-is-a.section", "?");
+		assertEquals("?", stacked.getString("this-is-a.section"));
+		assertEquals(3, stacked.getInt("this-is-a.count"));
+		assertEquals("!", overlay.getString("this-is-a.section"));
+	}
+	
+	@Test
+	public void testOverlayRemove() throws Exception {
+		WalnutConfig base = WalnutConfig.fromString(resource("sections.wlnt"));
+		WalnutConfig control = WalnutConfig.fromString(resource("sections.wlnt"));
+		WalnutConfig overlay = WalnutConfig.overlay(base);
+		WalnutConfig expected = control.clone();
+		
+		// an override is removed, and doesn't reveal anything in the base
+		overlay.putString("this-is-a.section", "?");
+		assertEquals("?", ((StringValue)overlay.remove("this-is-a.section")).value);
+		assertFalse(overlay.containsKey("this-is-a.section"));
+		expected.remove("this-is-a.section");
+		
+		// a nested value that is only in the base
+		assertEquals("this is bad practice, but it works", ((StringValue)overlay.remove("another-section.nested-section.mixed-whitespace")).value);
+		assertFalse(overlay.containsKey("another-section.nested-section.mixed-whitespace"));
+		assertTrue(overlay.containsKey("another-section.nested-section"));
+		expected.remove("another-section.nested-section.mixed-whitespace");
+		
+		// a section, removed through a section of the overlay
+		WalnutConfig removed = (WalnutConfig)((WalnutConfig)overlay.get("deep-nesting")).remove("we");
+		assertEquals(control.get("deep-nesting.we"), removed);
+		assertFalse(overlay.containsKey("deep-nesting.we.have"));
+		expected.remove("deep-nesting.we");
+		
+		assertNull(overlay.remove("deep-nesting.we"));
+		assertNull(overlay.remove("no-such.key"));
+		assertEquals(expected, overlay);
+		assertEquals(control, base);
+		
+		// putting beneath a removed section creates it anew, without the base's contents
+		overlay.putInt("deep-nesting.we.count", 1);
+		expected.putInt("deep-nesting.we.count", 1);
+		assertEquals(1, overlay.getInt("deep-nesting.we.count"));
+		assertFalse(overlay.containsKey("deep-nesting.we.have"));
+		// ...and removing from it removes from the new section
+		overlay.putInt("deep-nesting.we.other", 2);
+		overlay.remove("deep-nesting.we.other");
+		assertEquals(expected, overlay);
+		
+		// removing from a copy leaves the original alone
+		WalnutConfig copy = overlay.clone();
+		copy.remove("no-whitespace");
+		assertTrue(overlay.containsKey("no-whitespace.this-is"));
+		assertFalse(copy.containsKey("no-whitespace.this-is"));
+		assertEquals(control, base);
+		
+		// a section created by putting beneath it
+		overlay = WalnutConfig.overlay(WalnutConfig.fromString("x: 1"));
+		overlay.putInt("svc.port", 80);
+		assertTrue(overlay.containsKey("svc"));
+		((WalnutConfig)overlay.get("svc")).putInt("host.id", 2);
+		assertEquals(2, overlay.getInt("svc.host.id"));
+		assertEquals(WalnutConfig.fromString("x: 1\nsvc {\n\tport: 80\n\thost { id: 2 }\n}"), overlay);
+		copy = overlay.clone();
+		assertEquals(WalnutConfig.fromString("port: 80\nhost { id: 2 }"), overlay.remove("svc"));
+		assertFalse(overlay.containsKey("svc"));
+		assertFalse(overlay.containsKey("svc.port"));
+		assertEquals(WalnutConfig.fromString("x: 1"), overlay);
+		assertEquals(80, copy.getInt("svc.port"));
+		copy.remove("svc.port");
+		copy.remove("svc.host");
+		assertEquals(WalnutConfig.fromString("x: 1\nsvc {\n}"), copy);
+		
+		// a section implied by overrides, after the base's section is removed
+		base = WalnutConfig.fromString("svc { port: 1 }");
+		overlay = WalnutConfig.overlay(base);
+		overlay.putInt("svc.port", 80);
+		base.remove("svc");
+		assertTrue(overlay.containsKey("svc"));
+		assertEquals(80, overlay.getInt("svc.port"));
+		((WalnutConfig)overlay.get("svc")).putInt("host", 2);
+		assertEquals(WalnutConfig.fromString("svc {\n\tport: 80\n\thost: 2\n}"), overlay);
+		assertEquals(WalnutConfig.fromString("port: 80\nhost: 2"), overlay.remove("svc"));
+		assertFalse(overlay.containsKey("svc.port"));
+		assertEquals(new WalnutConfig(), overlay);
+	}
+	
+	@Test
+	public void testGetAll() throws Exception {
+		WalnutConfig defaults = WalnutConfig.fromString("fallback: 7");
+		WalnutConfig conf = WalnutConfig.fromString(resource("sections.wlnt"), defaults);
+		PathSet paths = PathSet.of(
+				"deep-nesting.we.have.to.go.deeper.no-more",
+				"this-is-a.section",
+				"this-is-a",
+				"missing.entirely",
+				"fallback",
+				"this-is-a.section");
+		assertEquals(5, paths.size());
+		assertEquals(1, paths.indexOf("this-is-a.section"));
+		Value[] values = conf.getAll(paths);
+		for (int i = 0; i < paths.size(); i++) {
+			assertEquals(paths.getPath(i), conf.get(paths.getPath(i)) == null ? defaults.get(paths.getPath(i)) : conf.get(paths.getPath(i)), values[i]);
+		}
+		assertNull(values[3]);
+		
+		WalnutConfig overlay = WalnutConfig.overlay(conf);
+		overlay.putString("this-is-a.section", "?");
+		assertEquals("?", ((StringValue)overlay.getAll(paths)[1]).value);
+		
+		try {
+			conf.getAll(PathSet.of("this-is-a.section.deeper"));
+			fail();
+		} catch (ClassCastException e) {}
+	}
+	
+	@Test
+	public void testFromDirectory() throws Exception {
+		File dir = Files.createTempDirectory("walnut-fragments").toFile();
+		try {
+			write(new File(dir, "00-base.wlnt"), "db {\n\thost: \"localhost\"\n\tport: 5432\n}\nregion: \"none\"");
+			write(new File(dir, "50-region.wlnt"), "region: \"eu\"\ndb { host: \"eu.example\" }");
+			write(new File(dir, "90-host.wlnt"), "db { pool: 8 }");
+			write(new File(dir, "ignored.txt"), "not walnut {");
+			
+			WalnutConfig conf = WalnutConfig.fromDirectory(dir, MergePolicy.OVERRIDE);
+			assertEquals(WalnutConfig.fromString("db { host: \"eu.example\"\nport: 5432\npool: 8 }\nregion: \"eu\""), conf);
+			
+			ExecutorService exec = Executors.newFixedThreadPool(2);
+			try {
+				conf = WalnutConfig.fromDirectory(dir, MergePolicy.KEEP_FIRST, null, exec);
+			} finally {
+				exec.shutdown();
+			}
+			assertEquals("localhost", conf.getString("db.host"));
+			assertEquals("none", conf.getString("region"));
+			assertEquals(8, conf.getInt("db.pool"));
+			
+			try {
+				WalnutConfig.fromDirectory(dir, MergePolicy.FAIL);
+				fail();
+			} catch (ParseException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("00-base.wlnt"));
+				assertTrue(e.getMessage(), e.getMessage().contains("50-region.wlnt"));
+			}
+			
+			write(new File(dir, "95-broken.wlnt"), "a: [1, 2");
+			try {
+				WalnutConfig.fromDirectory(dir, MergePolicy.OVERRIDE);
+				fail();
+			} catch (IOException | ParseException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("95-broken.wlnt"));
+			}
+		} finally {
+			for (File f : dir.listFiles()) f.delete();
+			dir.delete();
+		}
+	}
+	
+	@Test
+	public void testSchema() throws Exception {
+		Schema built = Schema.builder()
+				.key("port", Rule.of(Type.INT).withRequired(true).withRange(1, 65535))
+				.key("name", Rule.of(Type.STRING).withPattern("[a-z-]+"))
+				.key("tags", Rule.arrayOf(Rule.of(Type.STRING)))
+				.key("database", Rule.section(Schema.builder()
+						.key("host", Rule.of(Type.STRING).withRequired(true))
+						.allowUnknownKeys(false)
+						.build()))
+				.allowUnknownKeys(false)
+				.build();
+		Schema parsed = Schema.fromConfig(WalnutConfig.fromString(
+				"keys {\n"
+				+ "	port {\n type: \"int\"\n required: true\n min: 1\n max: 65535\n }\n"
+				+ "	name {\n type: \"string\"\n pattern: \"[a-z-]+\"\n }\n"
+				+ "	tags {\n type: \"array\"\n elements { type: \"string\" }\n }\n"
+				+ "	database {\n type: \"section\"\n unknown-keys: false\n keys {\n host {\n type: \"string\"\n required: true\n }\n }\n }\n"
+				+ "}\n"
+				+ "unknown-keys: false"));
+		for (Schema schema : Arrays.asList(built, parsed)) {
+			Validator v = schema.compile();
+			assertTrue(v.validate(WalnutConfig.fromString(
+					"port: 8080\nname: \"walnut\"\ntags: [\"a\", \"b\"]\ndatabase {\n host: \"localhost\"\n}")).isEmpty());
+			List<Violation> violations = v.validate(WalnutConfig.fromString(
+					"port: 70000\nname: \"Walnut\"\ntags: [\"a\", 2]\ndatabase {\n user: \"root\"\n}\nextra: true"));
+			assertEquals(new HashSet<String>(Arrays.asList(
+					"port: must be between 1 and 65535, got 70000",
+					"name: does not match pattern [a-z-]+",
+					"tags[1]: expected string, got int",
+					"database.host: required key is missing",
+					"database.user: unknown key",
+					"extra: unknown key")), toStrings(violations));
+			assertEquals(Collections.singleton("port: required key is missing"), toStrings(v.validate(new WalnutConfig())));
+		}
+		try {
+			Schema.fromConfig(WalnutConfig.fromString("keys {\n port {\n type: \"integer\"\n }\n}"));
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("keys.port.type: unknown type integer", e.getMessage());
+		}
+		// in Turkish, "INT" lowercases to a dotless \u0131nt
+		Locale locale = Locale.getDefault();
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			Validator v = Schema.fromConfig(WalnutConfig.fromString(
+					"keys {\n port { type: \"int\" }\n name { type: \"string\" }\n database { type: \"section\" }\n}")).compile();
+			assertEquals(Collections.singleton("port: expected int, got string"),
+					toStrings(v.validate(WalnutConfig.fromString("port: \"x\"\nname: \"walnut\"\ndatabase {\n}"))));
+		} finally {
+			Locale.setDefault(locale);
+		}
+	}
+	
+	private static HashSet<String> toStrings(List<Violation> violations) {
+		HashSet<String> out = new HashSet<String>();
+		for (Violation v : violations) {
+			out.add(v.toString());
+		}
+		return out;
+	}
+	
+	@Test
+	public void testLint() throws Exception {
+		File dir = Files.createTempDirectory("walnut-lint").toFile();
+		File nested = new File(dir, "nested");
+		nested.mkdir();
+		try {
+			write(new File(dir, "good.wlnt"), "a: 1\nsection {\n\tb: \"x\"\n}\n");
+			write(new File(nested, "style.wlnt"), "a : 1\nsection: {\n    b:\"x\"\n}\n");
+			write(new File(nested, "broken.wlnt"), "a: 1\na: 2\nb: potato\n");
+			write(new File(dir, "ignored.txt"), "not walnut");
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			ByteArrayOutputStream err = new ByteArrayOutputStream();
+			String broken = new File(nested, "broken.wlnt").getPath();
+			String style = new File(nested, "style.wlnt").getPath();
+			assertEquals(1, Linter.run(new String[] { "--threads", "2", "--style", "colons-tabs", dir.getPath() },
+					new PrintStream(out, true, "UTF-8"), new PrintStream(err, true, "UTF-8")));
+			List<String> lines = Arrays.asList(new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+			assertEquals(Arrays.asList(
+					broken+":2:1: warning: duplicate key a; only the last value is kept",
+					broken+":3:4: Cannot parse unknown value type",
+					style+":1:1: warning: expected \": \" between key and value",
+					style+":2:1: warning: expected no separator before a section, found ':'",
+					style+":3:5: warning: indented with 4 spaces, expected 1 tab",
+					style+":3:5: warning: expected \": \" between key and value"), lines.subList(0, 6));
+			assertTrue(lines.get(6), lines.get(6).startsWith("Checked 3 files"));
+			assertEquals("1 errors, 5 warnings in 2 files", lines.get(7));
+			
+			PrintStream devNull = new PrintStream(new ByteArrayOutputStream());
+			assertEquals(0, Linter.run(new String[] { "--style", "colons-tabs", new File(dir, "good.wlnt").getPath() }, devNull, devNull));
+			assertEquals(0, Linter.run(new String[] { style }, devNull, devNull));
+			assertEquals(1, Linter.run(new String[] { "--strict", "--style", "colons-4spaces", style }, devNull, devNull));
+			assertEquals(2, Linter.run(new String[] { "--style", "potato", style }, devNull, devNull));
+			assertEquals(2, Linter.run(new String[0], devNull, devNull));
+		} finally {
+			for (File f : nested.listFiles()) f.delete();
+			nested.delete();
+			for (File f : dir.listFiles()) f.delete();
+			dir.delete();
+		}
+	}
+	
+	@Test
+	public void testAccessTracking() throws Exception {
+		WalnutConfig defaults = WalnutConfig.fromString("fallback: 7");
+		WalnutConfig conf = WalnutConfig.fromString("a { b: 1 }\nc: 2\nunused: 3", defaults);
+		AccessTracker tracker = conf.enableAccessTracking();
+		conf.getInt("a.b");
+		conf.getInt("a.b");
+		conf.getInt("fallback");
+		assertFalse(conf.containsKey("missing"));
+		
+		AccessSnapshot snap = tracker.snapshot();
+		assertEquals(2, snap.get("a.b").getHits());
+		assertEquals(1, snap.get("fallback").getDefaultHits());
+		assertEquals(1, snap.get("missing").getMisses());
+		assertNull(snap.get("a"));
+		List<String> neverRead = snap.getNeverRead(conf);
+		Collections.sort(neverRead);
+		assertEquals(Arrays.asList("c", "unused"), neverRead);
+	}
+	
+	@Test
+	public void testEditor() throws Exception {
+		String doc = "// deployment settings, edited by hand\n"
+				+ "name: \"walnut\"\n"
+				+ "\n"
+				+ "/** turn off in production */\n"
+				+ "debug: true // for now\n"
+				+ "server {\n"
+				+ "    // the port to listen on\n"
+				+ "    port: 8080\n"
+				+ "    hosts: [\"a\", \"b\"]\n"
+				+ "}\n"
+				+ "limits { soft: 1 }\n";
+		ConfigEditor editor = new ConfigEditor(doc);
+		editor.putInt("server.port", 9090);
+		editor.remove("debug");
+		editor.putString("server.bind", "0.0.0.0");
+		editor.putInt("limits.hard", 2);
+		editor.putString("logging.level", "warn");
+		editor.putBoolean("logging.color", false);
+		String expected = "// deployment settings, edited by hand\n"
+				+ "name: \"walnut\"\n"
+				+ "\n"
+				+ "server {\n"
+				+ "    // the port to listen on\n"
+				+ "    port: 9090\n"
+				+ "    hosts: [\"a\", \"b\"]\n"
+				+ "    bind: \"0.0.0.0\"\n"
+				+ "}\n"
+				+ "limits { soft: 1\n"
+				+ "    hard: 2\n"
+				+ "}\n";
+		String edited = editor.toString();
+		assertTrue(edited, edited.startsWith(expected));
+		// a new section's pairs are in map order
+		assertTrue(edited.endsWith("}\n"));
+		assertEquals(editor.getConfig(), WalnutConfig.fromString(edited));
+		assertEquals("warn", WalnutConfig.fromString(edited).getString("logging.level"));
+		
+		// a section replaced by a scalar needs a separator
+		editor.putInt("limits", 5);
+		assertTrue(editor.toString().contains("\nlimits: 5\n"));
+		editor.remove("limits");
+		assertFalse(editor.toString().contains("limits"));
+		
+		try {
+			editor.putInt("bad: key", 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Cannot write key \"bad: key\", which contains ':'", e.getMessage());
+		}
+		
+		File file = File.createTempFile("walnut-edit", ".wlnt");
+		try {
+			Files.write(file.toPath(), doc.getBytes(StandardCharsets.UTF_8));
+			ConfigEditor fromFile = ConfigEditor.open(file);
+			fromFile.putInt("server.port", 1);
+			fromFile.save();
+			assertEquals(doc.replace("8080", "1"), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		} finally {
+			file.delete();
+		}
+		
+		// serializing keeps documentation comments and parses back to the same config
+		WalnutConfig conf = WalnutConfig.fromString(doc);
+		assertEquals(conf, WalnutConfig.fromString(conf.toString()));
+		assertEquals("a = {\n  b = 1\n}\n", WalnutConfig.fromString("a { b: 1 }").toString(SerializationStyle.EQUALS_2SPACES.withOmitSeparatorsForSections(false)));
+	}
+	
+	@Test
+	public void testEditorDetection() throws Exception {
+		// the first pairs in the document decide the style, whatever the keys are called
+		for (int i = 0; i < 64; i++) {
+			String doc = "k"+i+" = 1\n"
+					+ "s"+i+" {\n  a"+i+" = 1\n}\n"
+					+ "other"+i+": 2\n"
+					+ "t"+i+": {\n\tb"+i+": 1\n\tc"+i+": 1\n}\n";
+			ConfigEditor editor = new ConfigEditor(doc);
+			editor.putInt("new.x", 1);
+			assertTrue(editor.toString(), editor.toString().endsWith("\nnew {\n  x = 1\n}\n"));
+			// as do the first pairs in a section
+			editor = new ConfigEditor(doc.replace("\tc"+i, "    c"+i));
+			editor.putInt("t"+i+".d", 1);
+			assertTrue(editor.toString(), editor.toString().contains("\n\td = 1\n}"));
+		}
+		
+		// CRLF documents are edited with CRLF
+		String doc = "name: \"walnut\"\r\n"
+				+ "/** doc */\r\n"
+				+ "debug: true // for now\r\n"
+				+ "server {\r\n"
+				+ "\tport: 8080 // default\r\n"
+				+ "\thost: \"a\"\r\n"
+				+ "}\r\n";
+		ConfigEditor editor = new ConfigEditor(doc);
+		editor.remove("debug");
+		editor.remove("server.port");
+		editor.putString("server.bind", "0.0.0.0");
+		editor.putInt("limits.hard", 2);
+		assertEquals("name: \"walnut\"\r\n"
+				+ "server {\r\n"
+				+ "\thost: \"a\"\r\n"
+				+ "\tbind: \"0.0.0.0\"\r\n"
+				+ "}\r\n"
+				+ "limits {\r\n"
+				+ "\thard: 2\r\n"
+				+ "}\r\n", editor.toString());
+		assertEquals(editor.getConfig(), WalnutConfig.fromString(editor.toString()));
+		// a pair sharing its line keeps the line ending after it
+		editor = new ConfigEditor("a: 1 b: 2 // c\r\nd: 3\r\n");
+		editor.remove("b");
+		assertEquals("a: 1 \r\nd: 3\r\n", editor.toString());
+	}
+	
+	@Test
+	public void testWriter() throws Exception {
+		File dir = Files.createTempDirectory("walnut-write").toFile();
+		File file = new File(dir, "settings.wlnt");
+		try {
+			WalnutConfig defaults = WalnutConfig.fromString("/** how loud */\nvolume: 5\naudio {\n\tmuted: false\n}");
+			WalnutConfig conf = WalnutConfig.fromFile(file, defaults, true);
+			assertEquals(defaults, WalnutConfig.fromFile(file));
+			
+			ConfigWriter writer = new ConfigWriter(conf, file, SerializationStyle.COLONS_TABS, 1, TimeUnit.HOURS);
+			for (int i = 0; i < 1000; i++) {
+				writer.putInt("volume", i);
+				writer.putBoolean("audio.muted", i % 2 == 0);
+			}
+			assertEquals(0, writer.getWriteCount());
+			writer.flush();
+			assertEquals(1, writer.getWriteCount());
+			writer.flush();
+			assertEquals(1, writer.getWriteCount());
+			WalnutConfig saved = WalnutConfig.fromFile(file);
+			assertEquals(999, saved.getInt("volume"));
+			assertFalse(saved.getBoolean("audio.muted"));
+			assertEquals(writer.snapshot(), saved);
+			assertEquals(" how loud ", key(saved, "volume").getDocumentation());
+			writer.close();
+			try {
+				writer.putInt("volume", 1);
+				fail();
+			} catch (IllegalStateException e) {}
+			
+			ConfigWriter background = new ConfigWriter(saved, file, SerializationStyle.EQUALS_4SPACES, 200, TimeUnit.MILLISECONDS);
+			for (int i = 0; i < 100; i++) {
+				background.putInt("volume", i);
+			}
+			long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(5);
+			while (background.getWriteCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(1, background.getWriteCount());
+			assertEquals(99, WalnutConfig.fromFile(file).getInt("volume"));
+			background.close();
+			
+			saved.save(file.toPath(), SerializationStyle.COLONS_TABS);
+			assertEquals(saved, WalnutConfig.fromFile(file));
+			assertEquals(Collections.singletonList(file), Arrays.asList(dir.listFiles()));
+			
+			// a failed background write is retried without another change, and still reported
+			File later = new File(dir, "later");
+			File target = new File(later, "settings.wlnt");
+			ConfigWriter retrying = new ConfigWriter(saved, target, SerializationStyle.COLONS_TABS, 50, TimeUnit.MILLISECONDS);
+			retrying.putInt("volume", 7);
+			Thread.sleep(500);
+			assertEquals(0, retrying.getWriteCount());
+			assertTrue(later.mkdir());
+			deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(5);
+			while (retrying.getWriteCount() == 0 && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(1, retrying.getWriteCount());
+			assertEquals(7, WalnutConfig.fromFile(target).getInt("volume"));
+			try {
+				retrying.flush();
+				fail();
+			} catch (IOException e) {}
+			retrying.flush();
+			retrying.close();
+			target.delete();
+			later.delete();
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+	
+	@Test
+	public void testFlatten() throws Exception {
+		WalnutConfig conf = WalnutConfig.fromString("services {\n\tweb { port: 80\n\thosts: [\"a\"] }\n\tdb { port: 5432 }\n}\nservicesx: 1\nname: \"n\"\nempty {}");
+		FlatConfig flat = conf.flatten();
+		assertEquals(Arrays.asList("name", "services.db.port", "services.web.hosts", "services.web.port", "servicesx"), new ArrayList<String>(flat.keySet()));
+		assertEquals("80", flat.get("services.web.port").getRawValue());
+		assertNull(flat.get("services.web"));
+		FlatConfig services = flat.withPrefix("services");
+		assertEquals(Arrays.asList("services.db.port", "services.web.hosts", "services.web.port"), new ArrayList<String>(services.keySet()));
+		assertEquals(Arrays.asList("services.web.hosts", "services.web.port"), new ArrayList<String>(services.withPrefix("services.web").keySet()));
+		assertTrue(flat.withPrefix("nothing").isEmpty());
+		assertEquals("services.db.port", services.firstKey());
+		assertEquals(1, flat.tailMap("servicesx").size());
+		try {
+			flat.put("x", null);
+			fail();
+		} catch (UnsupportedOperationException e) {}
+		
+		// cached until a change, including a change made through a retrieved section
+		assertSame(flat, conf.flatten());
+		conf.putInt("services.db.port", 1);
+		FlatConfig changed = conf.flatten();
+		assertNotSame(flat, changed);
+		assertEquals("5432", flat.get("services.db.port").getRawValue());
+		assertEquals("1", changed.get("services.db.port").getRawValue());
+		WalnutConfig web = (WalnutConfig)conf.get("services.web");
+		assertSame(changed, conf.flatten());
+		web.putInt("port", 8080);
+		assertEquals("8080", conf.flatten().get("services.web.port").getRawValue());
+		WalnutConfig clone = conf.clone();
+		clone.remove("name");
+		assertTrue(conf.flatten().containsKey("name"));
+		assertFalse(clone.flatten().containsKey("name"));
+		conf.entrySet();
+		assertNotSame(conf.flatten(), conf.flatten());
+	}
+	
+	@Test
+	public void testPathQuery() throws Exception {
+		WalnutConfig conf = WalnutConfig.fromString("services {\n"
+				+ "\tweb { port: 80\n\tbackends: [{ port: 81 }, { port: 82 }] }\n"
+				+ "\tdb { port: 5432 }\n"
+				+ "\tcache { host: \"c\" }\n"
+				+ "}\n"
+				+ "port: 1\n"
+				+ "matrix: [[1, 2], [3, 4]]");
+		assertEquals(set("80", "5432"), raw(PathQuery.compile("services.*.port").collect(conf, new ArrayList<Value>())));
+		assertEquals(set("1", "80", "81", "82", "5432"), raw(PathQuery.compile("**.port").collect(conf, new ArrayList<Value>())));
+		assertEquals(set("81", "82"), raw(PathQuery.compile("services.**.backends[*].port").collect(conf, new ArrayList<Value>())));
+		assertEquals(set("82"), raw(PathQuery.compile("services.web.backends[-1].port").collect(conf, new ArrayList<Value>())));
+		assertEquals(set("2", "4"), raw(PathQuery.compile("matrix[*][1]").collect(conf, new ArrayList<Value>())));
+		assertEquals(Collections.emptyList(), PathQuery.compile("services.*.port.x").collect(conf, new ArrayList<Value>()));
+		// a value that can be matched more than one way is still matched once
+		assertEquals(4, PathQuery.compile("**.*.**.port").stream(conf).count());
+		assertEquals(5, PathQuery.compile("**.**.port").stream(conf).count());
+		assertEquals(3, PathQuery.compile("services.*").stream(conf).count());
+		
+		// matched sections can be written to without affecting clones
+		WalnutConfig clone = conf.clone();
+		for (Value v : PathQuery.compile("services.*").collect(conf, new ArrayList<Value>())) {
+			((WalnutConfig)v).putInt("port", 0);
+		}
+		assertEquals(0, conf.getInt("services.cache.port"));
+		assertFalse(clone.containsKey("services.cache.port"));
+		
+		for (String bad : new String[] {"", "a..b", "a*", "**[0]", "a[x]", "a[0", "a[0]b"}) {
+			try {
+				PathQuery.compile(bad);
+				fail(bad);
+			} catch (IllegalArgumentException e) {}
+		}
+	}
+	
+	@Test
+	public void testSettings() throws Exception {
+		WalnutConfig defaults = WalnutConfig.fromString("limits { timeout: 30 }");
+		WalnutConfig conf = WalnutConfig.fromString("limits { max-conn: 10 }\nname: \"a\"", defaults);
+		IntSetting maxConn = conf.intSetting("limits.max-conn", 100);
+		IntSetting timeout = conf.intSetting("limits.timeout", 5);
+		LongSetting big = conf.longSetting("limits.max-conn", 0);
+		StringSetting name = conf.stringSetting("name", "none");
+		assertEquals(10, maxConn.get());
+		assertEquals(30, timeout.get());
+		assertEquals(10, big.get());
+		assertEquals("a", name.get());
+		
+		conf.putInt("limits.max-conn", 20);
+		assertEquals(20, maxConn.get());
+		conf.remove("limits");
+		assertEquals(100, maxConn.get());
+		assertEquals(30, timeout.get());
+		conf.putInt("limits.timeout", 1);
+		assertEquals(1, timeout.get());
+		// a value of the wrong type written later reads as the default
+		conf.putString("limits.max-conn", "many");
+		assertEquals(100, maxConn.get());
+		
+		conf.replaceWith(WalnutConfig.fromString("limits { max-conn: 50 }\nname: \"b\""));
+		assertEquals(50, maxConn.get());
+		assertEquals(30, timeout.get());
+		assertEquals("b", name.get());
+		try {
+			conf.replaceWith(WalnutConfig.fromString("limits { max-conn: true }"));
+			fail();
+		} catch (ClassCastException e) {
+			assertEquals("BooleanValue cannot be cast to IntValue", e.getMessage());
+		}
+		assertEquals(50, conf.getInt("limits.max-conn"));
+		assertEquals(50, maxConn.get());
+		try {
+			conf.intSetting("name", 0);
+			fail();
+		} catch (ClassCastException e) {}
+		
+		// changes made directly on a section are seen once refreshed
+		((WalnutConfig)conf.get("limits")).putInt("max-conn", 60);
+		conf.refreshSettings();
+		assertEquals(60, maxConn.get());
+		// clones don't update the original's handles
+		conf.clone().putInt("limits.max-conn", 70);
+		assertEquals(60, maxConn.get());
+	}
+	
+	@Test
+	public void testAsync() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			sb.append("section-").append(i).append(" {\n\tkey: \"value \u00e9 ").append(i).append("\"\n\tn: ").append(i+1).append("\n}\n");
+		}
+		String text = sb.toString();
+		WalnutConfig expected = WalnutConfig.fromString(text);
+		File file = File.createTempFile("walnut-async", ".wlnt");
+		ExecutorService single = Executors.newSingleThreadExecutor();
+		try {
+			write(file, text);
+			assertEquals(expected, WalnutConfig.fromFileAsync(file).get(10, TimeUnit.SECONDS));
+			// both stages on one thread, in either order, still completes
+			assertEquals(expected, WalnutConfig.fromFileAsync(file, null, single).get(10, TimeUnit.SECONDS));
+			assertEquals(expected, WalnutConfig.fromFileAsync(file, null, Runnable::run).get(10, TimeUnit.SECONDS));
+			
+			// a stream that trickles in a few bytes at a time
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			InputStream slow = new InputStream() {
+				int pos;
+				@Override
+				public int read() {
+					return pos == bytes.length ? -1 : bytes[pos++] & 0xFF;
+				}
+				@Override
+				public int read(byte[] b, int off, int len) {
+					if (pos == bytes.length) return -1;
+					int n = Math.min(Math.min(len, 7), bytes.length-pos);
+					System.arraycopy(bytes, pos, b, off, n);
+					pos += n;
+					return n;
+				}
+			};
+			WalnutConfig defaults = WalnutConfig.fromString("extra: 1");
+			WalnutConfig conf = WalnutConfig.fromStreamAsync(slow, defaults, true, null).get(10, TimeUnit.SECONDS);
+			assertEquals(expected, conf);
+			assertEquals(1, conf.getInt("extra"));
+			
+			try {
+				WalnutConfig.fromFileAsync(new File(file.getPath()+".missing")).get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof FileNotFoundException);
+			}
+			write(file, text+"broken: 1foo");
+			try {
+				WalnutConfig.fromFileAsync(file).get(10, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof ParseException);
+			}
+		} finally {
+			single.shutdown();
+			file.delete();
+		}
+	}
+	
+	enum Balance { ROUND_ROBIN, LEAST_CONN }
+	
+	@Test
+	public void testUnitValues() throws Exception {
+		WalnutConfig conf = WalnutConfig.fromString("timeout: \"1h30m\"\niso: \"PT2S\"\nbuffer: \"512MB\"\npage: \"4 KiB\"\nraw: 100\n"
+				+ "balance: \"round-robin\"\nmatch: \"a+b\"\nlisten: \"*:8080\"\nupstream: \"example.com:443\"\nlocal: \"[::1]:1\"\n"
+				+ "bad-timeout: \"30x\"\nbad-balance: \"random\"");
+		assertEquals(Duration.ofMinutes(90), conf.getDuration("timeout"));
+		assertSame(conf.getDuration("timeout"), conf.getDuration("timeout"));
+		assertEquals(Duration.ofSeconds(2), conf.getDuration("iso"));
+		assertEquals(512_000_000L, conf.getByteSize("buffer"));
+		assertEquals(4096, conf.getByteSize("page"));
+		assertEquals(100, conf.getByteSize("raw"));
+		assertEquals(Balance.ROUND_ROBIN, conf.getEnum("balance", Balance.class));
+		assertTrue(conf.getPattern("match").matcher("aab").matches());
+		assertSame(conf.getPattern("match"), conf.getPattern("match"));
+		assertEquals(8080, conf.getInetSocketAddress("listen").getPort());
+		assertTrue(conf.getInetSocketAddress("listen").getAddress().isAnyLocalAddress());
+		assertTrue(conf.getInetSocketAddress("upstream").isUnresolved());
+		assertEquals("example.com", conf.getInetSocketAddress("upstream").getHostString());
+		assertTrue(conf.getInetSocketAddress("local").getAddress().isLoopbackAddress());
+		try {
+			conf.getDuration("bad-timeout");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid value for bad-timeout: \"x\" in \"30x\" is not a unit of time; expected one of ns, us, ms, s, m, h, d", e.getMessage());
+		}
+		try {
+			conf.getEnum("bad-balance", Balance.class);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid value for bad-balance: \"random\" is not one of round-robin, least-conn", e.getMessage());
+		}
+		for (String bad : new String[] {"1.5B", "12QB", "-1MB"}) {
+			try {
+				WalnutConfig.fromString("size: \""+bad+"\"").getByteSize("size");
+				fail(bad);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid value for size: "));
+			}
+		}
+		
+		// a null value reads as null, except as a size, which can't be null
+		WalnutConfig nulls = WalnutConfig.fromString("s: null");
+		assertNull(nulls.getDuration("s"));
+		assertNull(nulls.getEnum("s", Balance.class));
+		assertNull(nulls.getPattern("s"));
+		assertNull(nulls.getInetSocketAddress("s"));
+		try {
+			nulls.getByteSize("s");
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("Invalid value for s: null is not a size", e.getMessage());
+		}
+	}
+	
+	private static HashSet<String> set(String... strings) {
+		return new HashSet<String>(Arrays.asList(strings));
+	}
+	
+	private static HashSet<String> raw(List<Value> values) {
+		return values.stream().map(Value::getRawValue).collect(Collectors.toCollection(HashSet::new));
+	}
+	
+	private static Key key(WalnutConfig conf, String name) {
+		for (Map.Entry<Key, Value> en : conf.entrySet()) {
+			if (en.getKey().getKey().equals(name)) return en.getKey();
+		}
+		return null;
+	}
+	
+	@Test
+	public void testCompressed() throws Exception {
+		WalnutConfig expected = WalnutConfig.fromString(resource("complex.wlnt"));
+		File dir = Files.createTempDirectory("walnut-compressed").toFile();
+		File gz = new File(dir, "complex.wlnt.gz");
+		File zz = new File(dir, "complex.wlnt");
+		File ambiguous = new File(dir, "ambiguous.wlnt");
+		try {
+			// the extension picks the compression when saving
+			expected.save(gz, SerializationStyle.COLONS_TABS);
+			byte[] bytes = Files.readAllBytes(gz.toPath());
+			assertEquals(0x1F, bytes[0] & 0xFF);
+			assertEquals(0x8B, bytes[1] & 0xFF);
+			assertEquals(expected, WalnutConfig.fromFile(gz));
+			assertEquals(expected, WalnutConfig.fromFileAsync(gz).get(10, TimeUnit.SECONDS));
+			assertEquals(expected, WalnutConfig.fromStream(new ByteArrayInputStream(bytes)));
+			assertEquals(expected, WalnutConfig.fromDirectory(dir, MergePolicy.FAIL));
+			
+			// zlib is found by its magic bytes, whatever the name
+			expected.save(zz, SerializationStyle.COLONS_TABS, Compression.DEFLATE);
+			assertEquals(0x78, Files.readAllBytes(zz.toPath())[0] & 0xFF);
+			assertEquals(expected, WalnutConfig.fromFile(zz));
+			assertEquals(expected, WalnutConfig.parseRecovering(zz).getConfig());
+			
+			// ...unless they could be text
+			write(ambiguous, "x^: 1");
+			assertEquals(1, WalnutConfig.fromFile(ambiguous).getInt("x^"));
+			File fast = new File(dir, "fast.zz");
+			try (OutputStream out = new DeflaterOutputStream(new FileOutputStream(fast), new Deflater(3))) {
+				out.write("x^: 1".getBytes(StandardCharsets.UTF_8));
+			}
+			assertEquals('^', Files.readAllBytes(fast.toPath())[1]);
+			assertEquals(1, WalnutConfig.fromFile(fast).getInt("x^"));
+			
+			expected.save(gz, SerializationStyle.COLONS_TABS, Compression.NONE);
+			assertEquals(expected, WalnutConfig.fromFile(gz));
+			write(gz, "");
+			assertEquals(WalnutConfig.fromString(""), WalnutConfig.fromFile(gz));
+		} finally {
+			for (File f : dir.listFiles()) {
+				f.delete();
+			}
+			dir.delete();
+		}
+	}
+	
+}
@@ -3,12 +3,26 @@ package com.unascribed.walnut.test;
 import static org.junit.Assert.*;
 
 import java.io.EOFException;
+import java.io.Reader;
 import java.io.StringReader;
+import java.nio.CharBuffer;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
+import com.unascribed.walnut.ConfigMetrics;
 import com.unascribed.walnut.ConfigParser;
+import com.unascribed.walnut.Diagnostic;
 import com.unascribed.walnut.Key;
+import com.unascribed.walnut.Linter;
+import com.unascribed.walnut.ParseListener;
+import com.unascribed.walnut.ParseResult;
+import com.unascribed.walnut.SerializationStyle;
+import com.unascribed.walnut.SourceSpan;
 import com.unascribed.walnut.WalnutConfig;
 import com.unascribed.walnut.value.ArrayValue;
 import com.unascribed.walnut.value.BooleanValue;
@@ -214,4 +228,354 @@ public class ParserTests {
 		assertEquals(control, parser(s).prepare().readValue());
 		assertEquals(new WalnutConfig(), parser("{}").prepare().readValue());
 	}
+	
+	@Test
+	public void testListener() throws Exception {
+		final ConfigMetrics[] result = new ConfigMetrics[1];
+		ParseListener listener = new ParseListener() {
+			@Override
+			public void parseStarted(String source) {
+				assertEquals("test", source);
+			}
+			@Override
+			public void parseFinished(String source, ConfigMetrics metrics) {
+				result[0] = metrics;
+			}
+			@Override
+			public void parseFailed(String source, ConfigMetrics metrics, Exception cause) {
+				fail("parse failed");
+			}
+		};
+		String s = "a: 1 /* comment */\nb {\n\tc: [1, 2]\n}";
+		new ConfigParser(new StringReader(s), listener, "test").prepare().parse();
+		ConfigMetrics m = result[0];
+		assertNotNull(m);
+		assertEquals(s.length(), m.getCodePointsRead());
+		assertEquals(3, m.getKeys());
+		assertEquals(1, m.getSections());
+		assertEquals(1, m.getArrays());
+		assertEquals(1, m.getComments());
+	}
+	
+	@Test
+	public void testPooled() throws Exception {
+		ConfigParser p = ConfigParser.obtain(new StringReader("a: (\n\tspanning\n)\nb: [1, 2]"), null, null);
+		WalnutConfig first = p.prepare().parse();
+		p.release();
+		ConfigParser p2 = ConfigParser.obtain(new StringReader("/** doc */\nc: \"quoted\""), null, null);
+		assertSame(p, p2);
+		WalnutConfig second = p2.prepare().parse();
+		p2.release();
+		assertEquals(WalnutConfig.fromString("a: (\n\tspanning\n)\nb: [1, 2]"), first);
+		assertEquals("quoted", second.getString("c"));
+		assertEquals(" doc ", second.entrySet().iterator().next().getKey().getDocumentation());
+		assertEquals("spanning\n", first.getString("a"));
+	}
+	
+	@Test
+	public void testFromChars() throws Exception {
+		String s = "/** doc */\nkey /* split */ name: \"plain\"\nesc: \"a\\\"b\"\nnum: 1/*c*/\nsec {\n\tspan: (\n\t\tx\n\t)\n\tarr: [1, \"\uD83D\uDC31\"]\n}";
+		WalnutConfig expected = WalnutConfig.fromReader(new StringReader(s));
+		assertEquals(expected, WalnutConfig.fromString(s));
+		assertEquals(expected, WalnutConfig.fromChars(new StringBuilder(s)));
+		char[] padded = ("}}"+s+"{{").toCharArray();
+		assertEquals(expected, WalnutConfig.fromChars(padded, 2, s.length()));
+		CharBuffer buf = CharBuffer.wrap(padded, 2, s.length());
+		assertEquals(expected, WalnutConfig.fromChars(buf, null));
+		assertEquals(2, buf.position());
+		assertEquals(expected, WalnutConfig.fromChars(CharBuffer.wrap(new StringBuilder(s))));
+		
+		WalnutConfig conf = WalnutConfig.fromChars(padded, 2, s.length());
+		assertEquals("plain", conf.getString("key  name"));
+		assertEquals("\"plain\"", conf.get("key  name").getRawValue());
+		assertEquals("a\"b", conf.getString("esc"));
+		assertEquals(1, conf.getInt("num"));
+	}
+	
+	@Test
+	public void testSourcePositions() throws Exception {
+		String s = "first: 1\n/** doc */\nsec {\n\tinner: \"\uD83D\uDC31x\"\n}\nlast: [1, 2]";
+		for (ConfigParser p : new ConfigParser[] { parser(s), ConfigParser.obtain(new StringReader(s), null, null) }) {
+			WalnutConfig conf = p.trackSpans(true).prepare().parse();
+			Key first = key(conf, "first");
+			assertEquals(new SourceSpan(0, 5, 1, 1, 1, 6), first.getSpan());
+			assertEquals(new SourceSpan(7, 8, 1, 8, 1, 9), first.getValueSpan());
+			Key sec = key(conf, "sec");
+			assertEquals(" doc ", sec.getDocumentation());
+			assertEquals("3:1-3:4", sec.getSpan().toString());
+			assertEquals("3:5-5:2", sec.getValueSpan().toString());
+			Key inner = key((WalnutConfig)conf.get("sec"), "inner");
+			assertEquals("4:2-4:7", inner.getSpan().toString());
+			assertEquals("4:9-4:14", inner.getValueSpan().toString());
+			assertEquals("6:7-6:13", key(conf, "last").getValueSpan().toString());
+		}
+		assertNull(key(WalnutConfig.fromString(s), "first").getSpan());
+		
+		// a duplicate key keeps the last value, but the first documentation, either way
+		s = "/** one */\na: 1\n/** two */\na: 2\nb: 1\n/** three */\nb: 2";
+		for (boolean spans : new boolean[] { false, true }) {
+			WalnutConfig conf = parser(s).trackSpans(spans).prepare().parse();
+			assertEquals(2, conf.getInt("a"));
+			assertEquals(" one ", key(conf, "a").getDocumentation());
+			assertNull(key(conf, "b").getDocumentation());
+			if (spans) assertEquals("4:1-4:2", key(conf, "a").getSpan().toString());
+		}
+		
+		try {
+			WalnutConfig.fromString("a: 1\nb: [1 2]");
+			fail();
+		} catch (ParseException e) {
+			assertEquals("Expected comma, but was 2 at line 2, column 7", e.getMessage());
+			assertEquals(11, e.getErrorOffset());
+		}
+		try {
+			WalnutConfig.fromReader(new StringReader("a: 1\n\tb: potato\n"));
+			fail();
+		} catch (ParseException e) {
+			assertEquals("Cannot parse unknown value type at line 2, column 5", e.getMessage());
+			assertEquals(9, e.getErrorOffset());
+		}
+	}
+	
+	/**
+	 * A Reader that hands out at most a few chars per read, so that runs
+	 * cross the end of the parser's buffer.
+	 */
+	private static final class ChunkedReader extends Reader {
+		private final String s;
+		private final int chunk;
+		private int pos;
+		
+		ChunkedReader(String s, int chunk) {
+			this.s = s;
+			this.chunk = chunk;
+		}
+		
+		@Override
+		public int read(char[] cbuf, int off, int len) {
+			if (pos == s.length()) return -1;
+			int n = Math.min(Math.min(len, chunk), s.length()-pos);
+			s.getChars(pos, pos+n, cbuf, off);
+			pos += n;
+			return n;
+		}
+		
+		@Override
+		public void close() {}
+	}
+	
+	/**
+	 * @return the config parsed from each kind of input the parser reads
+	 * 				runs from: a CharSequence, a char[], and Readers whose
+	 * 				buffer ends at a variety of places
+	 */
+	private static List<WalnutConfig> parseEveryWay(String s) throws Exception {
+		return Arrays.asList(WalnutConfig.fromString(s),
+				WalnutConfig.fromChars(s.toCharArray(), 0, s.length()),
+				WalnutConfig.fromReader(new StringReader(s)),
+				WalnutConfig.fromReader(new ChunkedReader(s, 1)),
+				WalnutConfig.fromReader(new ChunkedReader(s, 7)));
+	}
+	
+	private static void assertErrorEveryWay(String s, String message) throws Exception {
+		for (int i = 0; i < 5; i++) {
+			try {
+				switch (i) {
+					case 0: WalnutConfig.fromString(s); break;
+					case 1: WalnutConfig.fromChars(s.toCharArray(), 0, s.length()); break;
+					case 2: WalnutConfig.fromReader(new StringReader(s)); break;
+					case 3: WalnutConfig.fromReader(new ChunkedReader(s, 1)); break;
+					default: WalnutConfig.fromReader(new ChunkedReader(s, 7)); break;
+				}
+				fail();
+			} catch (ParseException e) {
+				assertEquals(message, e.getMessage());
+			}
+		}
+	}
+	
+	private static String repeat(String s, int n) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < n; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+	
+	@Test
+	public void testSkippedRuns() throws Exception {
+		// runs far longer than the 8192-char Reader buffer
+		String ws = repeat("\t \n", 3000);
+		String line = "// "+repeat("x", 9000)+"\n";
+		String block = "/* "+repeat("y \n", 3000)+" */";
+		String s = "a: 1\n"+ws+"b: 2"+line+block+"\nc: 3\n";
+		for (WalnutConfig conf : parseEveryWay(s)) {
+			assertEquals(1, conf.getInt("a"));
+			assertEquals(2, conf.getInt("b"));
+			assertEquals(3, conf.getInt("c"));
+		}
+		// lines and columns are counted across skipped runs
+		assertErrorEveryWay("a: 1\n"+ws+"  c: potato",
+				"Cannot parse unknown value type at line 3002, column 6");
+		assertErrorEveryWay(line+block+"\n\t\tc: potato",
+				"Cannot parse unknown value type at line 3003, column 6");
+		
+		// documentation comments, next to and containing runs
+		String doc = "/**"+repeat(" doc ", 2000)+"\n * with * stars **/";
+		s = "\n\n   "+doc+"\n\t\n  a: 1\n"
+				+ "// not documentation\n/** b */  \t\n b: 2\n";
+		for (WalnutConfig conf : parseEveryWay(s)) {
+			assertEquals(repeat(" doc ", 2000)+"\n * with * stars *", key(conf, "a").getDocumentation());
+			assertEquals(" b ", key(conf, "b").getDocumentation());
+		}
+		
+		// non-ASCII whitespace, and non-ASCII chars and surrogates in comments
+		s = "\u2003a:\u3000\u2003 1\n\u2028b: 2 // \u00fcn\u00efc\u00f6d\u00e9 \uD83D\uDC31\n"
+				+ "/* \u2003\uD83D\uDC31\u3000 */ c: 3\n/** \uD83D\uDC31 */ d: 4";
+		for (WalnutConfig conf : parseEveryWay(s)) {
+			assertEquals(1, conf.getInt("a"));
+			assertEquals(2, conf.getInt("b"));
+			assertEquals(3, conf.getInt("c"));
+			assertEquals(4, conf.getInt("d"));
+			assertEquals(" \uD83D\uDC31 ", key(conf, "d").getDocumentation());
+		}
+		assertErrorEveryWay("/* \uD83D\uDC31 */\u3000\u3000c: potato",
+				"Cannot parse unknown value type at line 1, column 14");
+	}
+	
+	@Test
+	public void testRecovering() throws Exception {
+		String s = "a: 1\n"
+				+ "b: potato\n"
+				+ "c: [1 2, {x: 1}]\n"
+				+ "d: \"unterminated\n"
+				+ "sec {\n"
+				+ "\tbad: \"\\q\" [\n"
+				+ "\tgood: true\n"
+				+ "\tworse: 0x\n"
+				+ "}\n"
+				+ "e: \"fine\"\n"
+				+ "f {\n"
+				+ "\tg: 2\n";
+		ParseResult result = WalnutConfig.parseRecovering(s);
+		assertFalse(result.isClean());
+		List<String> diagnostics = new ArrayList<String>();
+		for (Diagnostic d : result.getDiagnostics()) {
+			diagnostics.add(d.toString());
+		}
+		assertEquals(Arrays.asList(
+				"<string>:2:4: Cannot parse unknown value type",
+				"<string>:3:7: Expected comma, but was 2",
+				"<string>:4:4: String extends into infinity",
+				"<string>:6:8: Unknown escape q",
+				"<string>:8:9: Invalid number: 0x",
+				"<string>:11:3: section was not closed before EOF"), diagnostics);
+		WalnutConfig expected = WalnutConfig.fromString("a: 1\nsec {\n\tgood: true\n}\ne: \"fine\"\nf {\n\tg: 2\n}");
+		assertEquals(expected, result.getConfig());
+		
+		ParseResult clean = WalnutConfig.parseRecovering("a: 1\nb {\n\tc: [1, 2]\n}");
+		assertTrue(clean.isClean());
+		assertEquals(WalnutConfig.fromString("a: 1\nb {\n\tc: [1, 2]\n}"), clean.getConfig());
+		
+		try {
+			WalnutConfig.fromString("a: \"\\xZZ\"");
+			fail();
+		} catch (ParseException e) {
+			assertEquals("Invalid escape ZZ at line 1, column 5", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testDeepNesting() throws Throwable {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) sb.append("a { ");
+		sb.append("b: 1");
+		for (int i = 0; i < 100000; i++) sb.append(" }");
+		final String sections = sb.toString();
+		// every array keeps its own raw text, so these are kept shallower
+		sb.setLength(0);
+		sb.append("a: ");
+		for (int i = 0; i < 500; i++) sb.append("[{ b: ");
+		sb.append("1");
+		for (int i = 0; i < 500; i++) sb.append(" }]");
+		final String arrays = sb.toString();
+		// every line is indented, so the text grows with the square of the depth
+		sb.setLength(0);
+		for (int i = 0; i < 5000; i++) sb.append("a { ");
+		sb.append("b: 1");
+		for (int i = 0; i < 5000; i++) sb.append(" }");
+		final String written = sb.toString();
+		final Throwable[] thrown = new Throwable[1];
+		// a small stack would overflow long before this depth if anything recursed
+		Thread t = new Thread(null, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (String s : new String[] { sections, arrays }) {
+						WalnutConfig a = parser(s).maxDepth(Integer.MAX_VALUE).prepare().parse();
+						WalnutConfig b = parser(s).maxDepth(Integer.MAX_VALUE).prepare().parse();
+						assertEquals(a, b);
+						assertEquals(a.hashCode(), b.hashCode());
+						WalnutConfig c = a.clone();
+						c.putInt("x", 1);
+						assertEquals(b, a);
+						assertFalse(c.equals(a));
+					}
+					for (String s : new String[] { written, arrays }) {
+						WalnutConfig a = parser(s).maxDepth(Integer.MAX_VALUE).prepare().parse();
+						assertFalse(a.toString().isEmpty());
+						assertEquals(a, parser(a.toString()).maxDepth(Integer.MAX_VALUE).prepare().parse());
+					}
+				} catch (Throwable e) {
+					thrown[0] = e;
+				}
+			}
+		}, "small-stack", 128*1024);
+		t.start();
+		t.join();
+		if (thrown[0] != null) throw thrown[0];
+		
+		try {
+			parser("a: [[[1]]]").maxDepth(2).prepare().parse();
+			fail();
+		} catch (ParseException e) {
+			assertEquals("Sections and arrays are nested deeper than the maximum of 2 at line 1, column 6", e.getMessage());
+		}
+		assertEquals(WalnutConfig.fromString("a { b { c: 1 } }"), parser("a { b { c: 1 } }").maxDepth(2).prepare().parse());
+		try {
+			StringBuilder deep = new StringBuilder("a: ");
+			for (int i = 0; i <= ConfigParser.DEFAULT_MAX_DEPTH; i++) deep.append('[');
+			WalnutConfig.fromString(deep.toString());
+			fail();
+		} catch (ParseException e) {
+			assertTrue(e.getMessage().startsWith("Sections and arrays are nested deeper than the maximum of 1000"));
+		}
+	}
+	
+	@Test
+	public void testSectionsInArrays() throws Exception {
+		// keys like these can't be written back out, but can still be read
+		for (String s : new String[] { "a: [{ foo\nbar: 1 }]", "a: [{ : 1 }]", "a: [{ x}y: 1 }]", "a: [{ b: [{ c: 1 }, 2] }, {}]" }) {
+			String raw = s.substring(3);
+			for (WalnutConfig conf : parseEveryWay(s)) {
+				assertEquals(raw, conf.get("a").getRawValue());
+				assertEquals(WalnutConfig.fromString(s), conf);
+			}
+			assertTrue(WalnutConfig.parseRecovering(s).isClean());
+			assertEquals(WalnutConfig.fromString(s), WalnutConfig.reparse(WalnutConfig.fromString("a: 1"), "a: 1", s));
+			assertEquals(new ArrayList<Diagnostic>(), new Linter(SerializationStyle.COLONS_TABS).lint(s, null));
+		}
+		// the text of a section is kept as it's read, across the Reader's buffer
+		String s = "a: [{ b: \"" + repeat("x", 20000) + "\" }, { c: [1" + repeat(" ", 20000) + "] }]";
+		for (WalnutConfig conf : parseEveryWay(s)) {
+			assertEquals(s.substring(3), conf.get("a").getRawValue());
+		}
+	}
+	
+	private static Key key(WalnutConfig conf, String name) {
+		for (Map.Entry<Key, Value> en : conf.entrySet()) {
+			if (en.getKey().getKey().equals(name)) return en.getKey();
+		}
+		return null;
+	}
 }